@@ -0,0 +1,76 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import com.mieszkostelmach.stxwatchface.render.WatchFaceRenderer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Scaling the face background to the surface size and compositing the static layers, i.e. the
+ * work done whenever the face, the surface size or the mode changes. Uses the real face drawables
+ * from the wear module (the {@code stx.res} system property points at its res directory).
+ *
+ * @author Mieszko Stelmach
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackgroundScalingBenchmark {
+    @Param({"280", "320", "400"})
+    public int size;
+
+    @Param({"superhero", "superhero_alpha"})
+    public String face;
+
+    private final WatchFaceRenderer mRenderer = new WatchFaceRenderer();
+    private Graphics2DDrawTarget mTarget;
+    private BufferedImage mBackground;
+    private BufferedImage mScaled;
+
+    @Setup
+    public void setUp() throws IOException {
+        File res = new File(System.getProperty("stx.res", "../wear/src/main/res"));
+        this.mBackground = ImageIO.read(new File(res, "drawable-hdpi/" + face + ".png"));
+        this.mScaled = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        mRenderer.setSurfaceSize(size, size);
+        this.mTarget = new Graphics2DDrawTarget(mRenderer);
+        mTarget.setBackground(mBackground);
+    }
+
+    @Benchmark
+    public BufferedImage scaleBackground() {
+        mTarget.begin(mScaled);
+        mTarget.drawBackground();
+        mTarget.end();
+        return mScaled;
+    }
+
+    @Benchmark
+    public BufferedImage interactiveStaticLayer() {
+        return mTarget.renderStaticLayer(WatchFaceRenderer.LAYER_INTERACTIVE);
+    }
+
+    @Benchmark
+    public BufferedImage ambientStaticLayer() {
+        return mTarget.renderStaticLayer(WatchFaceRenderer.LAYER_AMBIENT);
+    }
+}
@@ -0,0 +1,70 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import com.mieszkostelmach.stxwatchface.clock.WatchClock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of day lookup done at the start of every frame. {@code android.text.format.Time} isn't
+ * available on a plain JVM, so {@link Calendar}, which recomputes all of the calendar fields the
+ * same way {@code Time.setToNow()} does, stands in for it.
+ *
+ * @author Mieszko Stelmach
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClockBenchmark {
+    @Param({"Europe/Warsaw"})
+    public String timeZone;
+
+    private WatchClock mClock;
+    private Calendar mCalendar;
+    private long mTime;
+
+    @Setup
+    public void setUp() {
+        mClock = new WatchClock(TimeZone.getTimeZone(timeZone));
+        mCalendar = Calendar.getInstance(TimeZone.getTimeZone(timeZone));
+        mTime = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public int watchClock() {
+        // A 60 fps frame apart.
+        long time = mTime += 17;
+        mClock.set(time);
+        return mClock.hour + mClock.minute + mClock.second + mClock.millis;
+    }
+
+    @Benchmark
+    public int calendar() {
+        long time = mTime += 17;
+        mCalendar.setTimeInMillis(time);
+        return mCalendar.get(Calendar.HOUR_OF_DAY) + mCalendar.get(Calendar.MINUTE)
+                + mCalendar.get(Calendar.SECOND) + mCalendar.get(Calendar.MILLISECOND);
+    }
+
+    @Benchmark
+    public int watchClockSetToNow() {
+        mClock.setToNow();
+        return mClock.hour + mClock.minute + mClock.second + mClock.millis;
+    }
+}
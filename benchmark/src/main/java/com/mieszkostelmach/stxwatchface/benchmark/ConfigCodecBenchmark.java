@@ -0,0 +1,94 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import com.mieszkostelmach.stxwatchface.config.WatchFaceConfig;
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigCodec;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigSchema;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigState;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of a config change, in the binary protocol and in the string keyed format
+ * of a DataMap (see {@link StringKeyedConfigFormat}). The encoded sizes are compared by
+ * {@code ConfigEncodingSizeTest}.
+ *
+ * @author Mieszko Stelmach
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigCodecBenchmark {
+    private final ConfigState mDelta = new ConfigState();
+    private final ConfigState mDecoded = new ConfigState();
+    private final byte[] mBuffer = new byte[ConfigCodec.MAX_ENCODED_SIZE];
+    private final Map<String, Object> mDataMap = new HashMap<>();
+    private byte[] mEncodedDelta;
+    private byte[] mEncodedDataMap;
+
+    @Setup
+    public void setUp() {
+        mDelta.setRevision(1420070400000L);
+        mDelta.set(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERWHERO_ALPHA);
+        mEncodedDelta = ConfigCodec.encode(mDelta);
+
+        mDataMap.put(WatchFaceConfig.KEY_WATCH_FACE, "superwhero_alpha");
+        mDataMap.put(WatchFaceConfig.KEY_SWEEP_FPS, 0);
+        mEncodedDataMap = StringKeyedConfigFormat.encode(mDataMap);
+    }
+
+    @Benchmark
+    public byte[] encodeDelta() {
+        return ConfigCodec.encode(mDelta);
+    }
+
+    @Benchmark
+    public int encodeDeltaIntoBuffer() {
+        return ConfigCodec.encode(mDelta, mBuffer);
+    }
+
+    @Benchmark
+    public int decodeDelta() {
+        ConfigCodec.decode(mEncodedDelta, mDecoded);
+        return mDecoded.get(ConfigSchema.FIELD_FACE, FaceRegistry.DEFAULT_FACE);
+    }
+
+    /**
+     * The whole path of a config message on the watch, up to the face to draw.
+     */
+    @Benchmark
+    public Object decodeAndValidateDelta() {
+        ConfigCodec.decode(mEncodedDelta, mDecoded);
+        if (!WatchFaceConfig.isValid(mDecoded)) {
+            return null;
+        }
+        return FaceRegistry.get(mDecoded.get(ConfigSchema.FIELD_FACE, FaceRegistry.DEFAULT_FACE));
+    }
+
+    @Benchmark
+    public byte[] encodeDataMap() {
+        return StringKeyedConfigFormat.encode(mDataMap);
+    }
+
+    @Benchmark
+    public int decodeDataMap() {
+        Map<String, Object> config = StringKeyedConfigFormat.decode(mEncodedDataMap);
+        return WatchFaceConfig.parseFace((String) config.get(WatchFaceConfig.KEY_WATCH_FACE));
+    }
+}
@@ -0,0 +1,38 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import com.mieszkostelmach.stxwatchface.config.WatchFaceConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Face selection parsing done by {@code setUpSettings} on every config update.
+ *
+ * @author Mieszko Stelmach
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigParsingBenchmark {
+    private final String[] mFaces = {"superhero", "superwhero", "superhero_alpha", "superwhero_alpha", null, "unknown"};
+    private int mNext;
+
+    @Benchmark
+    public int parseFace() {
+        String face = mFaces[mNext];
+        mNext = (mNext + 1) % mFaces.length;
+        return WatchFaceConfig.parseFace(face);
+    }
+}
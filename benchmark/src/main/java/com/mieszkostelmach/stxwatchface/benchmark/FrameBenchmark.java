@@ -0,0 +1,63 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import com.mieszkostelmach.stxwatchface.render.WatchFaceRenderer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one steady-state frame of {@link WatchFaceRenderer#drawFrame} in each mode, drawn on a
+ * {@link RecordingDrawTarget}. One operation is one frame, so the score is ns/frame and the GC
+ * profiler's gc.alloc.rate.norm is bytes allocated per frame.
+ *
+ * @author Mieszko Stelmach
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBenchmark {
+    @Param({"320"})
+    public int size;
+
+    @Param({"interactive", "sweep", "ambient", "burn_in"})
+    public String mode;
+
+    private final WatchFaceRenderer mRenderer = new WatchFaceRenderer();
+    private final RecordingDrawTarget mTarget = new RecordingDrawTarget();
+    private int mSecondOfDay;
+    private int mMillis;
+
+    @Setup
+    public void setUp() {
+        mRenderer.setSurfaceSize(size, size);
+        mRenderer.setAmbient(!"interactive".equals(mode) && !"sweep".equals(mode));
+        mRenderer.setSweep("sweep".equals(mode));
+        mRenderer.setBurnInProtection("burn_in".equals(mode));
+    }
+
+    @Benchmark
+    public int frame() {
+        int secondOfDay = mSecondOfDay;
+        mSecondOfDay = (secondOfDay + 1) % (24 * 60 * 60);
+        // A 60 fps sweep frame apart.
+        int millis = mMillis;
+        mMillis = (millis + 17) % 1000;
+        mTarget.reset();
+        mRenderer.drawFrame(mTarget, secondOfDay / 3600, (secondOfDay / 60) % 60, secondOfDay % 60, millis);
+        return mTarget.getOpCount();
+    }
+}
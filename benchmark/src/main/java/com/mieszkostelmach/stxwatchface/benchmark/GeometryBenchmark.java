@@ -0,0 +1,97 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import com.mieszkostelmach.stxwatchface.render.HandGeometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tick and hand endpoints of one frame, computed with {@link Math} the way {@code onDraw} used
+ * to, compared to the {@link HandGeometry} lookup tables.
+ *
+ * @author Mieszko Stelmach
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark {
+    private static final int SIZE = 320;
+
+    private final HandGeometry mGeometry = new HandGeometry(SIZE, SIZE);
+    private int mSecondOfDay;
+
+    @Benchmark
+    public float math() {
+        int secondOfDay = nextSecondOfDay();
+        int hour = secondOfDay / 3600;
+        int minutes = (secondOfDay / 60) % 60;
+        int second = secondOfDay % 60;
+        float centerX = SIZE / 2f;
+        float centerY = SIZE / 2f;
+        float sum = 0;
+
+        float innerTickRadius = centerX - 15;
+        float outerTickRadius = centerX;
+        for (int tickIndex = 0; tickIndex < 12; tickIndex++) {
+            float tickRot = (float) (tickIndex * Math.PI * 2 / 12);
+            sum += centerX + (float) Math.sin(tickRot) * innerTickRadius;
+            sum += centerY + (float) -Math.cos(tickRot) * innerTickRadius;
+            sum += centerX + (float) Math.sin(tickRot) * outerTickRadius;
+            sum += centerY + (float) -Math.cos(tickRot) * outerTickRadius;
+        }
+
+        float minRot = minutes / 30f * (float) Math.PI;
+        float hrRot = ((hour + (minutes / 60f)) / 6f) * (float) Math.PI;
+        float secRot = second / 30f * (float) Math.PI;
+        sum += centerX + (float) Math.sin(hrRot) * (centerX - 80);
+        sum += centerY + (float) -Math.cos(hrRot) * (centerX - 80);
+        sum += centerX + (float) Math.sin(minRot) * (centerX - 40);
+        sum += centerY + (float) -Math.cos(minRot) * (centerX - 40);
+        sum += centerX + (float) Math.sin(secRot) * (centerX - 20);
+        sum += centerY + (float) -Math.cos(secRot) * (centerX - 20);
+        return sum;
+    }
+
+    @Benchmark
+    public float tables() {
+        int secondOfDay = nextSecondOfDay();
+        int minutes = (secondOfDay / 60) % 60;
+        int second = secondOfDay % 60;
+        HandGeometry geometry = mGeometry;
+        float sum = 0;
+
+        for (int tick = 0; tick < HandGeometry.TICK_COUNT; tick++) {
+            sum += geometry.tickInnerX(tick);
+            sum += geometry.tickInnerY(tick);
+            sum += geometry.tickOuterX(tick);
+            sum += geometry.tickOuterY(tick);
+        }
+
+        int hrIndex = HandGeometry.hourIndex(secondOfDay / 3600, minutes);
+        sum += geometry.hourX(hrIndex);
+        sum += geometry.hourY(hrIndex);
+        sum += geometry.minuteX(minutes);
+        sum += geometry.minuteY(minutes);
+        sum += geometry.secondX(second);
+        sum += geometry.secondY(second);
+        return sum;
+    }
+
+    private int nextSecondOfDay() {
+        int secondOfDay = mSecondOfDay;
+        mSecondOfDay = (secondOfDay + 1) % (24 * 60 * 60);
+        return secondOfDay;
+    }
+}
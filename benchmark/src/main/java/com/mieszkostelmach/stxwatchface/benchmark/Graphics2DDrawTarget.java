@@ -0,0 +1,158 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import com.mieszkostelmach.stxwatchface.render.DirtyRect;
+import com.mieszkostelmach.stxwatchface.render.DrawTarget;
+import com.mieszkostelmach.stxwatchface.render.HandGeometry;
+import com.mieszkostelmach.stxwatchface.render.WatchFaceRenderer;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * {@link DrawTarget} rasterizing with Java2D into a {@link BufferedImage}, so the pixel work of the
+ * watch face (background scaling, static layers) can be measured on a plain JVM. Paints are
+ * configured with {@link #setPaint}, mirroring the Android {@code Paint}s of the engine.
+ *
+ * @author Mieszko Stelmach
+ */
+public class Graphics2DDrawTarget implements DrawTarget {
+    private final WatchFaceRenderer mRenderer;
+    private final Color[] mColors = new Color[PAINT_COUNT];
+    private final BasicStroke[] mStrokes = new BasicStroke[PAINT_COUNT];
+    private final boolean[] mFill = new boolean[PAINT_COUNT];
+    private final BufferedImage[] mStaticLayers = new BufferedImage[WatchFaceRenderer.LAYER_COUNT];
+    private final Line2D.Float mLine = new Line2D.Float();
+    private final Ellipse2D.Float mOval = new Ellipse2D.Float();
+
+    private BufferedImage mBackground;
+    private BufferedImage mImage;
+    private Graphics2D mGraphics;
+
+    public Graphics2DDrawTarget(WatchFaceRenderer renderer) {
+        this.mRenderer = renderer;
+        for (int paint = 0; paint < PAINT_COUNT; paint++) {
+            setPaint(paint, 0xff000000, 1f, false);
+        }
+    }
+
+    public void setPaint(int paint, int color, float strokeWidth, boolean fill) {
+        mColors[paint] = new Color(color, true);
+        mStrokes[paint] = new BasicStroke(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_MITER);
+        mFill[paint] = fill;
+    }
+
+    public void setBackground(BufferedImage background) {
+        this.mBackground = background;
+        invalidateStaticLayers();
+    }
+
+    public void invalidateStaticLayers() {
+        for (int layer = 0; layer < WatchFaceRenderer.LAYER_COUNT; layer++) {
+            mStaticLayers[layer] = null;
+        }
+    }
+
+    /**
+     * Starts drawing into the given image. Must be paired with {@link #end()}.
+     */
+    public void begin(BufferedImage image) {
+        this.mImage = image;
+        this.mGraphics = image.createGraphics();
+        mGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        mGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    }
+
+    /**
+     * Limits the drawing to the given area, like a partial redraw on the watch.
+     */
+    public void clip(DirtyRect dirty) {
+        mGraphics.clipRect(dirty.left, dirty.top, dirty.right - dirty.left, dirty.bottom - dirty.top);
+    }
+
+    public void end() {
+        mGraphics.dispose();
+        this.mGraphics = null;
+        this.mImage = null;
+    }
+
+    /**
+     * Renders the static layer into a new image, bypassing the cache.
+     */
+    public BufferedImage renderStaticLayer(int layer) {
+        HandGeometry geometry = mRenderer.getGeometry();
+        BufferedImage image = new BufferedImage(geometry.getWidth(), geometry.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        BufferedImage surfaceImage = mImage;
+        Graphics2D surfaceGraphics = mGraphics;
+        begin(image);
+        try {
+            mRenderer.drawStaticLayer(this, layer);
+        } finally {
+            end();
+            this.mImage = surfaceImage;
+            this.mGraphics = surfaceGraphics;
+        }
+        return image;
+    }
+
+    @Override
+    public void drawColor(int color) {
+        mGraphics.setComposite(AlphaComposite.Src);
+        mGraphics.setColor(new Color(color, true));
+        mGraphics.fillRect(0, 0, mImage.getWidth(), mImage.getHeight());
+        mGraphics.setComposite(AlphaComposite.SrcOver);
+    }
+
+    @Override
+    public void drawBackground() {
+        mGraphics.drawImage(mBackground, 0, 0, mImage.getWidth(), mImage.getHeight(), null);
+    }
+
+    @Override
+    public void drawStaticLayer(int layer) {
+        if (mStaticLayers[layer] == null) {
+            mStaticLayers[layer] = renderStaticLayer(layer);
+        }
+        mGraphics.drawImage(mStaticLayers[layer], 0, 0, null);
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+        mLine.setLine(startX, startY, stopX, stopY);
+        mGraphics.setColor(mColors[paint]);
+        mGraphics.setStroke(mStrokes[paint]);
+        mGraphics.draw(mLine);
+    }
+
+    @Override
+    public void drawLines(float[] points, int offset, int count, int paint) {
+        mGraphics.setColor(mColors[paint]);
+        mGraphics.setStroke(mStrokes[paint]);
+        for (int i = offset; i + 4 <= offset + count; i += 4) {
+            mLine.setLine(points[i], points[i + 1], points[i + 2], points[i + 3]);
+            mGraphics.draw(mLine);
+        }
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, int paint) {
+        mOval.setFrame(left, top, right - left, bottom - top);
+        fillOrStroke(mOval, paint);
+    }
+
+    private void fillOrStroke(Shape shape, int paint) {
+        mGraphics.setColor(mColors[paint]);
+        if (mFill[paint]) {
+            mGraphics.fill(shape);
+        } else {
+            mGraphics.setStroke(mStrokes[paint]);
+            mGraphics.draw(shape);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import com.mieszkostelmach.stxwatchface.face.Face;
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+import com.mieszkostelmach.stxwatchface.render.DirtyRect;
+import com.mieszkostelmach.stxwatchface.render.DrawTarget;
+import com.mieszkostelmach.stxwatchface.render.HandGeometry;
+import com.mieszkostelmach.stxwatchface.render.LowBitAmbientRenderer;
+import com.mieszkostelmach.stxwatchface.render.WatchFaceRenderer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One ambient tick of a low-bit display: the frame of the next minute drawn from the sprites of
+ * {@link LowBitAmbientRenderer}, compared to the general ambient frame rasterized by Java2D. Also
+ * the one-off cost of building the sprites.
+ *
+ * @author Mieszko Stelmach
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LowBitAmbientBenchmark {
+    @Param({"320"})
+    public int size;
+
+    private final Face mFace = FaceRegistry.get(FaceRegistry.DEFAULT_FACE);
+    private final WatchFaceRenderer mRenderer = new WatchFaceRenderer();
+    private final DirtyRect mDirty = new DirtyRect();
+    private LowBitAmbientRenderer mLowBitRenderer;
+    private Graphics2DDrawTarget mTarget;
+    private BufferedImage mImage;
+    private int mMinuteOfDay;
+
+    @Setup
+    public void setUp() {
+        mRenderer.setSurfaceSize(size, size);
+        mRenderer.setAmbient(true);
+        this.mLowBitRenderer = new LowBitAmbientRenderer(mRenderer.getGeometry(), mFace);
+        this.mImage = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        this.mTarget = new Graphics2DDrawTarget(mRenderer);
+        mTarget.setPaint(DrawTarget.PAINT_HOUR, mFace.ambientHourColor, mFace.hourWidth, false);
+        mTarget.setPaint(DrawTarget.PAINT_MINUTE, mFace.ambientMinuteColor, mFace.minuteWidth, false);
+        mTarget.setPaint(DrawTarget.PAINT_TICK, mFace.ambientTickColor, mFace.tickWidth, false);
+        mTarget.setPaint(DrawTarget.PAINT_CENTER, mFace.ambientCenterColor, 2f, true);
+    }
+
+    @Benchmark
+    public int sprites() {
+        int minuteOfDay = nextMinuteOfDay();
+        mLowBitRenderer.draw(minuteOfDay / 60, minuteOfDay % 60, mDirty);
+        return mDirty.right - mDirty.left;
+    }
+
+    @Benchmark
+    public BufferedImage graphics2D() {
+        int minuteOfDay = nextMinuteOfDay();
+        mTarget.begin(mImage);
+        try {
+            mRenderer.drawFrame(mTarget, minuteOfDay / 60, minuteOfDay % 60, 0);
+        } finally {
+            mTarget.end();
+        }
+        return mImage;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public LowBitAmbientRenderer build() {
+        return new LowBitAmbientRenderer(new HandGeometry(size, size), mFace);
+    }
+
+    private int nextMinuteOfDay() {
+        int minuteOfDay = mMinuteOfDay;
+        mMinuteOfDay = (minuteOfDay + 1) % (24 * 60);
+        return minuteOfDay;
+    }
+}
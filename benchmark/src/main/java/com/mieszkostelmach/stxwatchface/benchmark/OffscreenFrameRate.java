@@ -0,0 +1,61 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Reports how many frames per second {@link OffscreenRenderer} draws in each mode, a quick check of
+ * the render path which, unlike the JMH benchmarks, includes the rasterization. Each frame moves
+ * the time by a minute and a second, so that every hand moves in every mode.
+ * <p/>
+ * Arguments: the report file, optionally followed by the lowest acceptable frame rate, below which
+ * it exits with an error.
+ *
+ * @author Mieszko Stelmach
+ */
+public class OffscreenFrameRate {
+    private static final int SIZE = 320;
+    private static final int WARMUP_FRAMES = 500;
+    private static final int FRAMES = 2000;
+
+    public static void main(String[] args) throws IOException {
+        File report = new File(args.length > 0 ? args[0] : "offscreen-fps.txt");
+        double minFps = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+
+        OffscreenRenderer renderer = new OffscreenRenderer(SIZE);
+        renderer.setFace(FaceRegistry.get(FaceRegistry.DEFAULT_FACE));
+        boolean tooSlow = false;
+        PrintWriter writer = new PrintWriter(new FileWriter(report));
+        try {
+            for (int mode = 0; mode < OffscreenRenderer.MODE_COUNT; mode++) {
+                renderer.setMode(mode);
+                render(renderer, WARMUP_FRAMES);
+                long startNanos = System.nanoTime();
+                render(renderer, FRAMES);
+                double fps = FRAMES * 1e9 / (System.nanoTime() - startNanos);
+                String line = String.format(Locale.US, "%-12s %10.1f fps", OffscreenRenderer.getModeName(mode), fps);
+                System.out.println(line);
+                writer.println(line);
+                tooSlow |= fps < minFps;
+            }
+        } finally {
+            writer.close();
+        }
+        if (tooSlow) {
+            System.err.println("Below " + minFps + " fps");
+            System.exit(1);
+        }
+    }
+
+    private static void render(OffscreenRenderer renderer, int frames) {
+        for (int frame = 0; frame < frames; frame++) {
+            int secondOfDay = (frame * 61) % (24 * 60 * 60);
+            renderer.render(secondOfDay / 3600, (secondOfDay / 60) % 60, secondOfDay % 60, 0);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import com.mieszkostelmach.stxwatchface.face.Face;
+import com.mieszkostelmach.stxwatchface.render.DirtyRect;
+import com.mieszkostelmach.stxwatchface.render.DrawTarget;
+import com.mieszkostelmach.stxwatchface.render.HandGeometry;
+import com.mieszkostelmach.stxwatchface.render.LowBitAmbientRenderer;
+import com.mieszkostelmach.stxwatchface.render.WatchFaceRenderer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders watch face frames offscreen, on a plain JVM, for any time, mode and face: the
+ * {@link WatchFaceRenderer} on a {@link Graphics2DDrawTarget} set up with the paints the engine
+ * uses, or the {@link LowBitAmbientRenderer} for the low-bit ambient mode. The face drawables are
+ * read from the wear module resources (the {@code stx.res} system property).
+ * <p/>
+ * The frames are drawn into one image, which is only valid until the next {@link #render}.
+ *
+ * @author Mieszko Stelmach
+ */
+public class OffscreenRenderer {
+    public static final int MODE_INTERACTIVE = 0;
+    public static final int MODE_AMBIENT = 1;
+    public static final int MODE_LOW_BIT_AMBIENT = 2;
+    public static final int MODE_BURN_IN = 3;
+    public static final int MODE_COUNT = 4;
+
+    private static final String[] MODE_NAMES = {"interactive", "ambient", "low_bit", "burn_in"};
+
+    private final int mSize;
+    private final File mRes;
+    private final WatchFaceRenderer mRenderer = new WatchFaceRenderer();
+    private final Graphics2DDrawTarget mTarget;
+    private final BufferedImage mImage;
+    private final DirtyRect mDirty = new DirtyRect();
+    private final Map<String, BufferedImage> mBackgrounds = new HashMap<>();
+
+    private Face mFace;
+    private int mMode = MODE_INTERACTIVE;
+    private LowBitAmbientRenderer mLowBitRenderer;
+    /**
+     * Whether the image holds the last low-bit frame.
+     */
+    private boolean mLowBitDrawn;
+
+    public OffscreenRenderer(int size) {
+        this(size, new File(System.getProperty("stx.res", "../wear/src/main/res")));
+    }
+
+    public OffscreenRenderer(int size, File res) {
+        this.mSize = size;
+        this.mRes = res;
+        mRenderer.setSurfaceSize(size, size);
+        this.mTarget = new Graphics2DDrawTarget(mRenderer);
+        this.mImage = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    public static String getModeName(int mode) {
+        return MODE_NAMES[mode];
+    }
+
+    public WatchFaceRenderer getRenderer() {
+        return mRenderer;
+    }
+
+    public void setFace(Face face) throws IOException {
+        if (mFace == face) {
+            return;
+        }
+        BufferedImage background = mBackgrounds.get(face.background);
+        if (background == null) {
+            background = ImageIO.read(new File(mRes, "drawable-hdpi/" + face.background + ".png"));
+            if (background == null) {
+                throw new IOException("Can't read the background of " + face);
+            }
+            mBackgrounds.put(face.background, background);
+        }
+        this.mFace = face;
+        mRenderer.setFace(face);
+        this.mLowBitRenderer = null;
+        this.mLowBitDrawn = false;
+        mTarget.setBackground(background);
+        applyStyle();
+    }
+
+    public void setMode(int mode) {
+        this.mMode = mode;
+        mRenderer.setAmbient(mode != MODE_INTERACTIVE);
+        mRenderer.setBurnInProtection(mode == MODE_BURN_IN);
+        if (mFace != null) {
+            applyStyle();
+        }
+    }
+
+    public void setSweep(boolean sweep) {
+        mRenderer.setSweep(sweep);
+    }
+
+    /**
+     * Draws the frame for the time and returns it.
+     */
+    public BufferedImage render(int hour, int minute, int second, int millis) {
+        if (mMode == MODE_LOW_BIT_AMBIENT) {
+            if (mLowBitRenderer == null) {
+                this.mLowBitRenderer = new LowBitAmbientRenderer(mRenderer.getGeometry(), mFace);
+            }
+            if (!mLowBitRenderer.draw(hour, minute, mDirty) && mLowBitDrawn) {
+                return mImage;
+            }
+            // Copy the rows that changed, as the engine uploads them into its bitmap. The image
+            // may have been drawn over in another mode since, in which case it's copied whole.
+            int[] pixels = mLowBitRenderer.getPixels();
+            int[] imagePixels = ((DataBufferInt) mImage.getRaster().getDataBuffer()).getData();
+            int left = mLowBitDrawn ? mDirty.left : 0;
+            int top = mLowBitDrawn ? mDirty.top : 0;
+            int right = mLowBitDrawn ? mDirty.right : mSize;
+            int bottom = mLowBitDrawn ? mDirty.bottom : mSize;
+            for (int y = top; y < bottom; y++) {
+                System.arraycopy(pixels, y * mSize + left, imagePixels, y * mSize + left, right - left);
+            }
+            mLowBitDrawn = true;
+            return mImage;
+        }
+        mLowBitDrawn = false;
+        mTarget.begin(mImage);
+        try {
+            mRenderer.drawFrame(mTarget, hour, minute, second, millis);
+        } finally {
+            mTarget.end();
+        }
+        return mImage;
+    }
+
+    /**
+     * Same paints as {@code STXEngine.applyFaceStyle} sets up for the mode.
+     */
+    private void applyStyle() {
+        Face face = mFace;
+        HandGeometry geometry = mRenderer.getGeometry();
+        boolean ambient = mMode != MODE_INTERACTIVE;
+        boolean outlined = mMode == MODE_BURN_IN;
+        mTarget.setPaint(DrawTarget.PAINT_HOUR, ambient ? face.ambientHourColor : face.hourColor,
+                geometry.scale(outlined ? face.hourOutlineWidth : face.hourWidth), false);
+        mTarget.setPaint(DrawTarget.PAINT_MINUTE, ambient ? face.ambientMinuteColor : face.minuteColor,
+                geometry.scale(outlined ? face.minuteOutlineWidth : face.minuteWidth), false);
+        mTarget.setPaint(DrawTarget.PAINT_SECOND, face.secondColor, geometry.scale(face.secondWidth), false);
+        mTarget.setPaint(DrawTarget.PAINT_TICK, ambient ? face.ambientTickColor : face.tickColor,
+                geometry.scale(face.tickWidth), false);
+        mTarget.setPaint(DrawTarget.PAINT_CENTER, ambient ? face.ambientCenterColor : face.centerColor,
+                2f, !outlined);
+        mTarget.setPaint(DrawTarget.PAINT_CENTER_BLACK, 0xff000000, 2f, true);
+        mTarget.invalidateStaticLayers();
+    }
+}
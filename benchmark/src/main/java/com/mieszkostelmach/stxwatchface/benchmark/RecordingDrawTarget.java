@@ -0,0 +1,104 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import com.mieszkostelmach.stxwatchface.render.DrawTarget;
+
+/**
+ * {@link DrawTarget} standing in for the Android Canvas. Records the draw calls of a frame into a
+ * preallocated buffer, so it doesn't add any allocations of its own to the measurements.
+ *
+ * @author Mieszko Stelmach
+ */
+public class RecordingDrawTarget implements DrawTarget {
+    public static final int OP_COLOR = 0;
+    public static final int OP_BACKGROUND = 1;
+    public static final int OP_STATIC_LAYER = 2;
+    public static final int OP_LINE = 3;
+    public static final int OP_LINES = 4;
+    public static final int OP_OVAL = 5;
+
+    private static final int MAX_OPS = 64;
+    private static final int OP_SIZE = 9;
+
+    private final float[] mOps = new float[MAX_OPS * OP_SIZE];
+    private int mOpCount;
+
+    /**
+     * Forgets the recorded calls, typically at the start of a frame.
+     */
+    public void reset() {
+        mOpCount = 0;
+    }
+
+    public int getOpCount() {
+        return mOpCount;
+    }
+
+    public int getOp(int index) {
+        return (int) mOps[index * OP_SIZE];
+    }
+
+    /**
+     * Returns the argument of the recorded call, in the order of the {@link DrawTarget} method
+     * parameters.
+     */
+    public float getArg(int index, int arg) {
+        return mOps[index * OP_SIZE + 1 + arg];
+    }
+
+    private int record(int op) {
+        int offset = (mOpCount++ % MAX_OPS) * OP_SIZE;
+        mOps[offset] = op;
+        return offset + 1;
+    }
+
+    @Override
+    public void drawColor(int color) {
+        mOps[record(OP_COLOR)] = color;
+    }
+
+    @Override
+    public void drawBackground() {
+        record(OP_BACKGROUND);
+    }
+
+    @Override
+    public void drawStaticLayer(int layer) {
+        mOps[record(OP_STATIC_LAYER)] = layer;
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+        int offset = record(OP_LINE);
+        mOps[offset] = startX;
+        mOps[offset + 1] = startY;
+        mOps[offset + 2] = stopX;
+        mOps[offset + 3] = stopY;
+        mOps[offset + 4] = paint;
+    }
+
+    /**
+     * Records the offset, the count and the paint, followed by the first segment only, the points
+     * may not fit in a recorded call.
+     */
+    @Override
+    public void drawLines(float[] points, int offset, int count, int paint) {
+        int op = record(OP_LINES);
+        mOps[op] = offset;
+        mOps[op + 1] = count;
+        mOps[op + 2] = paint;
+        mOps[op + 3] = points[offset];
+        mOps[op + 4] = points[offset + 1];
+        mOps[op + 5] = points[offset + 2];
+        mOps[op + 6] = points[offset + 3];
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, int paint) {
+        int offset = record(OP_OVAL);
+        mOps[offset] = left;
+        mOps[offset + 1] = top;
+        mOps[offset + 2] = right;
+        mOps[offset + 3] = bottom;
+        mOps[offset + 4] = paint;
+    }
+}
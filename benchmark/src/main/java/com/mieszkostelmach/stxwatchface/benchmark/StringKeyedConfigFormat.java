@@ -0,0 +1,66 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stand-in for {@code DataMap.toByteArray()} and {@code DataMap.fromByteArray()}, which need Play
+ * Services. Like a DataMap it writes every entry with its key name and a type tag and reads it back
+ * into a map of boxed values, so it costs about the same in bytes and allocations.
+ *
+ * @author Mieszko Stelmach
+ */
+public final class StringKeyedConfigFormat {
+    private static final int TYPE_STRING = 1;
+    private static final int TYPE_INT = 2;
+
+    private StringKeyedConfigFormat() {
+    }
+
+    public static byte[] encode(Map<String, Object> config) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(config.size());
+            for (Map.Entry<String, Object> entry : config.entrySet()) {
+                out.writeUTF(entry.getKey());
+                Object value = entry.getValue();
+                if (value instanceof String) {
+                    out.writeByte(TYPE_STRING);
+                    out.writeUTF((String) value);
+                } else {
+                    out.writeByte(TYPE_INT);
+                    out.writeInt((Integer) value);
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Map<String, Object> decode(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            int size = in.readInt();
+            Map<String, Object> config = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                String key = in.readUTF();
+                if (in.readByte() == TYPE_STRING) {
+                    config.put(key, in.readUTF());
+                } else {
+                    config.put(key, in.readInt());
+                }
+            }
+            return config;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import com.mieszkostelmach.stxwatchface.config.WatchFaceConfig;
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigCodec;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigSchema;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigState;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Size of the config messages in the binary protocol against the string keyed DataMap format.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ConfigEncodingSizeTest {
+    @Test
+    public void deltaIsSmallerThanDataMap() {
+        ConfigState delta = new ConfigState();
+        delta.setRevision(1420070400000L);
+        delta.set(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERWHERO_ALPHA);
+        int deltaSize = ConfigCodec.encode(delta).length;
+
+        ConfigState full = new ConfigState();
+        full.setRevision(1420070400000L);
+        full.set(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERWHERO_ALPHA);
+        full.set(ConfigSchema.FIELD_SWEEP_FPS, 30);
+        int fullSize = ConfigCodec.encode(full).length;
+
+        Map<String, Object> dataMap = new HashMap<>();
+        dataMap.put(WatchFaceConfig.KEY_WATCH_FACE, "superwhero_alpha");
+        dataMap.put(WatchFaceConfig.KEY_SWEEP_FPS, 30);
+        int dataMapSize = StringKeyedConfigFormat.encode(dataMap).length;
+
+        System.out.println("Config sizes: delta " + deltaSize + " B, full " + fullSize
+                + " B, DataMap " + dataMapSize + " B");
+        assertTrue(deltaSize * 4 < dataMapSize);
+        assertTrue(fullSize * 3 < dataMapSize);
+    }
+}
@@ -0,0 +1,113 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import com.mieszkostelmach.stxwatchface.face.Face;
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Frames rendered offscreen compared with the golden images in {@code src/test/resources/golden}.
+ * The antialiasing may differ slightly between JVMs, so pixels within a few levels count as the
+ * same and a handful of them may differ more.
+ * <p/>
+ * After an intended change to the drawing, record the images again with {@code -PupdateGolden}.
+ * The frames which don't match are written next to the test reports for a look.
+ *
+ * @author Mieszko Stelmach
+ */
+public class GoldenImageTest {
+    private static final int SIZE = 320;
+    private static final int CHANNEL_TOLERANCE = 8;
+    private static final int MAX_DIFFERENT_PIXELS = SIZE * SIZE / 500;
+
+    /**
+     * Face, mode, hour, minute and second of each golden frame.
+     */
+    private static final int[][] FRAMES = {
+            {FaceRegistry.SUPERHERO, OffscreenRenderer.MODE_INTERACTIVE, 10, 10, 30},
+            {FaceRegistry.SUPERWHERO, OffscreenRenderer.MODE_INTERACTIVE, 10, 10, 30},
+            {FaceRegistry.SUPERHERO_ALPHA, OffscreenRenderer.MODE_INTERACTIVE, 10, 10, 30},
+            {FaceRegistry.SUPERWHERO_ALPHA, OffscreenRenderer.MODE_INTERACTIVE, 10, 10, 30},
+            {FaceRegistry.SUPERHERO, OffscreenRenderer.MODE_INTERACTIVE, 4, 37, 52},
+            {FaceRegistry.SUPERHERO, OffscreenRenderer.MODE_AMBIENT, 10, 10, 0},
+            {FaceRegistry.SUPERHERO, OffscreenRenderer.MODE_AMBIENT, 16, 37, 0},
+            {FaceRegistry.SUPERHERO, OffscreenRenderer.MODE_LOW_BIT_AMBIENT, 10, 10, 0},
+            {FaceRegistry.SUPERHERO, OffscreenRenderer.MODE_LOW_BIT_AMBIENT, 16, 37, 0},
+            {FaceRegistry.SUPERHERO, OffscreenRenderer.MODE_BURN_IN, 10, 10, 0},
+            {FaceRegistry.SUPERHERO, OffscreenRenderer.MODE_BURN_IN, 16, 37, 0},
+    };
+
+    private final File mGoldenDir = new File(System.getProperty("stx.golden", "src/test/resources/golden"));
+    private final File mFailureDir = new File(System.getProperty("stx.goldenFailures", "build/golden-failures"));
+    private final boolean mUpdate = Boolean.getBoolean("stx.updateGolden");
+
+    @Test
+    public void framesMatchGoldenImages() throws IOException {
+        OffscreenRenderer renderer = new OffscreenRenderer(SIZE);
+        StringBuilder failures = new StringBuilder();
+        for (int[] frame : FRAMES) {
+            Face face = FaceRegistry.get(frame[0]);
+            renderer.setFace(face);
+            renderer.setMode(frame[1]);
+            BufferedImage image = renderer.render(frame[2], frame[3], frame[4], 0);
+            String name = String.format(Locale.US, "%s_%s_%02d%02d%02d.png", face.name,
+                    OffscreenRenderer.getModeName(frame[1]), frame[2], frame[3], frame[4]);
+
+            File golden = new File(mGoldenDir, name);
+            if (mUpdate) {
+                write(image, golden);
+                continue;
+            }
+            if (!golden.isFile()) {
+                failures.append("\n").append(name).append(": no golden image");
+                continue;
+            }
+            int differences = countDifferences(ImageIO.read(golden), image);
+            if (differences > MAX_DIFFERENT_PIXELS) {
+                failures.append("\n").append(name).append(": ").append(differences).append(" pixels differ");
+                write(image, new File(mFailureDir, name));
+            }
+        }
+        if (failures.length() > 0) {
+            fail("Frames don't match the golden images (record them with -PupdateGolden):" + failures);
+        }
+    }
+
+    private static int countDifferences(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        int differences = 0;
+        for (int y = 0; y < actual.getHeight(); y++) {
+            for (int x = 0; x < actual.getWidth(); x++) {
+                int expectedPixel = expected.getRGB(x, y);
+                int actualPixel = actual.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int difference = ((expectedPixel >>> shift) & 0xff) - ((actualPixel >>> shift) & 0xff);
+                    if (Math.abs(difference) > CHANNEL_TOLERANCE) {
+                        differences++;
+                        break;
+                    }
+                }
+            }
+        }
+        return differences;
+    }
+
+    private static void write(BufferedImage image, File file) throws IOException {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        ImageIO.write(image, "png", file);
+    }
+}
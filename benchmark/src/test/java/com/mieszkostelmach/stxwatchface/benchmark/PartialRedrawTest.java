@@ -0,0 +1,78 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import com.mieszkostelmach.stxwatchface.render.DirtyRect;
+import com.mieszkostelmach.stxwatchface.render.DrawTarget;
+import com.mieszkostelmach.stxwatchface.render.WatchFaceRenderer;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * A frame redrawn only within the dirty area on top of the previous one must match the same frame
+ * drawn in full, pixel for pixel.
+ *
+ * @author Mieszko Stelmach
+ */
+public class PartialRedrawTest {
+    private static final int SIZE = 320;
+
+    @Test
+    public void partialRedrawMatchesFullRedraw() throws IOException {
+        WatchFaceRenderer renderer = new WatchFaceRenderer();
+        renderer.setSurfaceSize(SIZE, SIZE);
+        Graphics2DDrawTarget target = new Graphics2DDrawTarget(renderer);
+        File res = new File(System.getProperty("stx.res", "../wear/src/main/res"));
+        target.setBackground(ImageIO.read(new File(res, "drawable-hdpi/superhero.png")));
+        target.setPaint(DrawTarget.PAINT_HOUR, 0xff009997, 8f, false);
+        target.setPaint(DrawTarget.PAINT_MINUTE, 0xff009997, 5f, false);
+        target.setPaint(DrawTarget.PAINT_SECOND, 0xffff0000, 2f, false);
+        target.setPaint(DrawTarget.PAINT_TICK, 0xff000000, 2f, false);
+        target.setPaint(DrawTarget.PAINT_CENTER, 0xff009997, 2f, true);
+
+        DirtyRect dirty = new DirtyRect();
+        // A whole minute, plus the tick into the next one which moves all the hands.
+        for (int tick = 1; tick <= 60; tick++) {
+            int fromSecond = tick - 1;
+            int toMinute = 10 + tick / 60;
+            int toSecond = tick % 60;
+
+            BufferedImage partial = draw(renderer, target, 10, 10, fromSecond);
+            renderer.computeDirtyRect(10, 10, fromSecond, 10, toMinute, toSecond, dirty);
+            target.begin(partial);
+            target.clip(dirty);
+            renderer.drawFrame(target, 10, toMinute, toSecond);
+            target.end();
+
+            BufferedImage full = draw(renderer, target, 10, toMinute, toSecond);
+            assertSamePixels("tick " + tick, full, partial);
+        }
+    }
+
+    private static BufferedImage draw(WatchFaceRenderer renderer, Graphics2DDrawTarget target,
+                                      int hour, int minute, int second) {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        target.begin(image);
+        renderer.drawFrame(target, hour, minute, second);
+        target.end();
+        return image;
+    }
+
+    private static void assertSamePixels(String message, BufferedImage expected, BufferedImage actual) {
+        int differences = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+                    differences++;
+                }
+            }
+        }
+        assertEquals(message + ": differing pixels", 0, differences);
+    }
+}
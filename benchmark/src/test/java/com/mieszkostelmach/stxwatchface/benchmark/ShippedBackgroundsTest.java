@@ -0,0 +1,63 @@
+package com.mieszkostelmach.stxwatchface.benchmark;
+
+import com.mieszkostelmach.stxwatchface.face.BackgroundFormat;
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the background drawables of all the faces, real ones from the wear module (the
+ * {@code stx.res} system property points at its res directory), decode to RGB 565 on the watch.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ShippedBackgroundsTest {
+    private final File mRes = new File(System.getProperty("stx.res", "../wear/src/main/res"));
+
+    @Test
+    public void shippedBackgroundsAreOpaque() throws IOException {
+        int found = 0;
+        for (File directory : mRes.listFiles()) {
+            if (!directory.getName().startsWith("drawable")) {
+                continue;
+            }
+            for (int id = 0; id < FaceRegistry.getCount(); id++) {
+                File drawable = new File(directory, FaceRegistry.get(id).background + ".png");
+                if (!drawable.exists()) {
+                    continue;
+                }
+                found++;
+                BufferedImage image = ImageIO.read(drawable);
+                int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+                assertTrue(drawable + " has transparent pixels, it would decode to ARGB_8888",
+                        BackgroundFormat.isOpaque(pixels, 0, pixels.length));
+            }
+        }
+        assertTrue(found >= FaceRegistry.getCount());
+    }
+
+    @Test
+    public void transparentPixelsAreFound() {
+        int[] pixels = {0xff000000, 0xffffffff, 0xfe123456, 0xff00ff00};
+        assertTrue(BackgroundFormat.isOpaque(pixels, 0, 2));
+        assertFalse(BackgroundFormat.isOpaque(pixels, 1, 2));
+        assertTrue(BackgroundFormat.isOpaque(pixels, 3, 1));
+        assertFalse(BackgroundFormat.isOpaque(new int[]{0}, 0, 1));
+    }
+
+    @Test
+    public void opaqueBackgroundsTakeHalfTheMemory() {
+        assertEquals(320 * 320 * 2, BackgroundFormat.getByteCount(320, 320, true));
+        assertEquals(320 * 320 * 4, BackgroundFormat.getByteCount(320, 320, false));
+    }
+}
@@ -0,0 +1,103 @@
+package com.mieszkostelmach.stxwatchface.config;
+
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigSchema;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigState;
+
+/**
+ * Watch face config path, keys and values, shared by the phone and the watch so that they can't
+ * drift apart. The keys and the face names are what the older, DataMap based, configs used.
+ *
+ * @author Mieszko Stelmach
+ */
+public final class WatchFaceConfig {
+    public static final String KEY_WATCH_FACE = "WATCH_FACE";
+    public static final String KEY_SWEEP_FPS = "SWEEP_FPS";
+    /**
+     * Path of the config messages from the phone and of the config DataItem on the watch.
+     */
+    public static final String PATH_WITH_FEATURE = "/watch_face_config/STXWatchFace";
+
+    /**
+     * Frame rates of the sweeping second hand, {@link #SWEEP_OFF} for the ticking one. Each is
+     * half of the next one, so that stepping down the frame rate stays on the list.
+     */
+    public static final int SWEEP_OFF = 0;
+    public static final int SWEEP_FPS_MIN = 15;
+    public static final int SWEEP_FPS_MAX = 60;
+
+    private WatchFaceConfig() {
+    }
+
+    /**
+     * Returns the id of the face with the name, {@link FaceRegistry#DEFAULT_FACE} if there's no name
+     * at all or {@link FaceRegistry#UNKNOWN} if the name isn't recognized.
+     */
+    public static int parseFace(String faceSelected) {
+        if (faceSelected == null) {
+            return FaceRegistry.DEFAULT_FACE;
+        }
+        return FaceRegistry.findByName(faceSelected);
+    }
+
+    /**
+     * Returns the highest supported sweep frame rate that doesn't exceed the requested one, at
+     * least {@link #SWEEP_FPS_MIN}, or {@link #SWEEP_OFF} if the sweep isn't requested at all.
+     */
+    public static int parseSweepFps(int requestedFps) {
+        if (requestedFps <= SWEEP_OFF) {
+            return SWEEP_OFF;
+        }
+        int fps = SWEEP_FPS_MAX;
+        while (fps > requestedFps && fps > SWEEP_FPS_MIN) {
+            fps /= 2;
+        }
+        return fps;
+    }
+
+    /**
+     * Returns whether this version knows the value of the field: a face in the
+     * {@link FaceRegistry}, or one of the supported sweep frame rates.
+     */
+    public static boolean isValid(int field, int value) {
+        switch (field) {
+            case ConfigSchema.FIELD_FACE:
+                return FaceRegistry.isKnown(value);
+            case ConfigSchema.FIELD_SWEEP_FPS:
+                return value >= SWEEP_OFF && parseSweepFps(value) == value;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns whether all the fields the config has are valid, see {@link #isValid(int, int)}.
+     */
+    public static boolean isValid(ConfigState config) {
+        for (int field = 0; field < ConfigSchema.FIELD_COUNT; field++) {
+            if (config.has(field) && !isValid(field, config.get(field, 0))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets in the change, in its current revision, the valid fields of the pending config which
+     * the known one doesn't have with the same value: what the watch needs to get to the pending
+     * config in one message. Returns whether there's anything to send.
+     */
+    public static boolean collectChanges(ConfigState pending, ConfigState known, ConfigState change) {
+        for (int field = 0; field < ConfigSchema.FIELD_COUNT; field++) {
+            if (!pending.has(field)) {
+                continue;
+            }
+            int value = pending.get(field, 0);
+            if (!isValid(field, value) || (known.has(field) && known.get(field, value) == value)) {
+                continue;
+            }
+            change.set(field, value);
+        }
+        return !change.isEmpty();
+    }
+}
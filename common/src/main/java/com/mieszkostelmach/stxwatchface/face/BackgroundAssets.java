@@ -0,0 +1,32 @@
+package com.mieszkostelmach.stxwatchface.face;
+
+/**
+ * Names of the face backgrounds pre-scaled at build time, one for each face and each of the
+ * common screen sizes, kept in the assets of the wear APK. Shared by the build step which writes
+ * them and the watch which looks them up, so that the two can't drift apart.
+ *
+ * @author Mieszko Stelmach
+ */
+public final class BackgroundAssets {
+    /**
+     * Directory of the pre-scaled backgrounds in the assets.
+     */
+    public static final String DIRECTORY = "backgrounds";
+
+    private BackgroundAssets() {
+    }
+
+    /**
+     * Returns the file name of the background, see {@link Face#background}, scaled to the size.
+     */
+    public static String getFileName(String background, int width, int height) {
+        return background + "_" + width + "x" + height + ".png";
+    }
+
+    /**
+     * Returns the path of the background scaled to the size, relative to the assets.
+     */
+    public static String getPath(String background, int width, int height) {
+        return DIRECTORY + "/" + getFileName(background, width, height);
+    }
+}
@@ -0,0 +1,36 @@
+package com.mieszkostelmach.stxwatchface.face;
+
+/**
+ * The pixel format the face backgrounds are decoded to on the watch: backgrounds without a single
+ * transparent pixel as RGB 565, the rest as ARGB 8888. Whether a background is opaque is decided
+ * by its pixels rather than by its PNG color type, the drawables are saved with an alpha channel
+ * even where every pixel is opaque.
+ *
+ * @author Mieszko Stelmach
+ */
+public final class BackgroundFormat {
+    public static final int OPAQUE_BYTES_PER_PIXEL = 2;
+    public static final int TRANSLUCENT_BYTES_PER_PIXEL = 4;
+
+    private BackgroundFormat() {
+    }
+
+    /**
+     * Returns whether all the ARGB pixels in the range are fully opaque.
+     */
+    public static boolean isOpaque(int[] pixels, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (pixels[i] >>> 24 != 0xff) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns how many bytes a background of the size takes once decoded.
+     */
+    public static int getByteCount(int width, int height, boolean opaque) {
+        return width * height * (opaque ? OPAQUE_BYTES_PER_PIXEL : TRANSLUCENT_BYTES_PER_PIXEL);
+    }
+}
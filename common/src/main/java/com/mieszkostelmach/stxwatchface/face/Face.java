@@ -0,0 +1,132 @@
+package com.mieszkostelmach.stxwatchface.face;
+
+/**
+ * Everything that tells one watch face from another: the background, the colors and the hand
+ * widths, in the interactive and the ambient mode. Drawables are referred to by their resource
+ * names, each app resolves them to its own resource ids. Colors are ARGB, widths are in pixels.
+ *
+ * @author Mieszko Stelmach
+ */
+public final class Face {
+    /**
+     * Stable id of the face, what the config carries. Never renumbered or reused.
+     */
+    public final int id;
+    /**
+     * Name the face went by in the older configs.
+     */
+    public final String name;
+    public final String background;
+
+    public final int hourColor;
+    public final int minuteColor;
+    public final int secondColor;
+    public final int tickColor;
+    public final int centerColor;
+
+    public final int ambientHourColor;
+    public final int ambientMinuteColor;
+    public final int ambientTickColor;
+    public final int ambientCenterColor;
+
+    public final float hourWidth;
+    public final float minuteWidth;
+    public final float secondWidth;
+    public final float tickWidth;
+    /**
+     * Outline widths of the hands in ambient mode with the burn-in protection.
+     */
+    public final float hourOutlineWidth;
+    public final float minuteOutlineWidth;
+
+    private Face(Builder builder) {
+        this.id = builder.mId;
+        this.name = builder.mName;
+        this.background = builder.mBackground;
+        this.hourColor = builder.mHourColor;
+        this.minuteColor = builder.mMinuteColor;
+        this.secondColor = builder.mSecondColor;
+        this.tickColor = builder.mTickColor;
+        this.centerColor = builder.mCenterColor;
+        this.ambientHourColor = builder.mAmbientHourColor;
+        this.ambientMinuteColor = builder.mAmbientMinuteColor;
+        this.ambientTickColor = builder.mAmbientTickColor;
+        this.ambientCenterColor = builder.mAmbientCenterColor;
+        this.hourWidth = builder.mHourWidth;
+        this.minuteWidth = builder.mMinuteWidth;
+        this.secondWidth = builder.mSecondWidth;
+        this.tickWidth = builder.mTickWidth;
+        this.hourOutlineWidth = builder.mHourOutlineWidth;
+        this.minuteOutlineWidth = builder.mMinuteOutlineWidth;
+    }
+
+    @Override
+    public String toString() {
+        return "Face{" + id + " " + name + "}";
+    }
+
+    public static class Builder {
+        private final int mId;
+        private final String mName;
+        private final String mBackground;
+        private int mHourColor;
+        private int mMinuteColor;
+        private int mSecondColor;
+        private int mTickColor;
+        private int mCenterColor;
+        private int mAmbientHourColor;
+        private int mAmbientMinuteColor;
+        private int mAmbientTickColor;
+        private int mAmbientCenterColor;
+        private float mHourWidth;
+        private float mMinuteWidth;
+        private float mSecondWidth;
+        private float mTickWidth;
+        private float mHourOutlineWidth;
+        private float mMinuteOutlineWidth;
+
+        public Builder(int id, String name, String background) {
+            this.mId = id;
+            this.mName = name;
+            this.mBackground = background;
+        }
+
+        public Builder colors(int hour, int minute, int second, int tick, int center) {
+            this.mHourColor = hour;
+            this.mMinuteColor = minute;
+            this.mSecondColor = second;
+            this.mTickColor = tick;
+            this.mCenterColor = center;
+            return this;
+        }
+
+        /**
+         * Colors in ambient mode, there's no second hand.
+         */
+        public Builder ambientColors(int hour, int minute, int tick, int center) {
+            this.mAmbientHourColor = hour;
+            this.mAmbientMinuteColor = minute;
+            this.mAmbientTickColor = tick;
+            this.mAmbientCenterColor = center;
+            return this;
+        }
+
+        public Builder handWidths(float hour, float minute, float second, float tick) {
+            this.mHourWidth = hour;
+            this.mMinuteWidth = minute;
+            this.mSecondWidth = second;
+            this.mTickWidth = tick;
+            return this;
+        }
+
+        public Builder outlineWidths(float hour, float minute) {
+            this.mHourOutlineWidth = hour;
+            this.mMinuteOutlineWidth = minute;
+            return this;
+        }
+
+        public Face build() {
+            return new Face(this);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.mieszkostelmach.stxwatchface.face;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * All of the watch faces, indexed by their ids. The one place to add a face: the watch draws it and
+ * the phone offers it from here.
+ *
+ * @author Mieszko Stelmach
+ */
+public final class FaceRegistry {
+    public static final int UNKNOWN = -1;
+    public static final int SUPERHERO = 0;
+    public static final int SUPERWHERO = 1;
+    public static final int SUPERHERO_ALPHA = 2;
+    public static final int SUPERWHERO_ALPHA = 3;
+
+    public static final int DEFAULT_FACE = SUPERHERO;
+
+    private static final int STX_COLOR = 0xff009997;
+    private static final int STX_AMBIENT_COLOR = 0xff005d5b;
+    private static final int SECOND_COLOR = 0xffff0000;
+    private static final int TICK_COLOR = 0xff000000;
+    private static final int TICK_AMBIENT_COLOR = 0xff970000;
+
+    /**
+     * Indexed by the face id.
+     */
+    private static final Face[] FACES = {
+            stx(SUPERHERO, "superhero"),
+            stx(SUPERWHERO, "superwhero"),
+            stx(SUPERHERO_ALPHA, "superhero_alpha"),
+            stx(SUPERWHERO_ALPHA, "superwhero_alpha")
+    };
+
+    private static final Map<String, Face> BY_NAME = new HashMap<>();
+
+    static {
+        for (int id = 0; id < FACES.length; id++) {
+            if (FACES[id].id != id) {
+                throw new AssertionError("Face " + FACES[id] + " at " + id);
+            }
+            BY_NAME.put(FACES[id].name, FACES[id]);
+        }
+    }
+
+    private FaceRegistry() {
+    }
+
+    public static int getCount() {
+        return FACES.length;
+    }
+
+    public static boolean isKnown(int id) {
+        return id >= 0 && id < FACES.length;
+    }
+
+    /**
+     * Returns the face with the id, null if it isn't known, e.g. picked in a newer version of the
+     * phone app.
+     */
+    public static Face get(int id) {
+        return isKnown(id) ? FACES[id] : null;
+    }
+
+    /**
+     * Returns the id of the face with the name the older configs used, {@link #UNKNOWN} if there's
+     * no such face.
+     */
+    public static int findByName(String name) {
+        Face face = BY_NAME.get(name);
+        return face != null ? face.id : UNKNOWN;
+    }
+
+    /**
+     * The faces differ in the background only, named after it.
+     */
+    private static Face stx(int id, String background) {
+        return new Face.Builder(id, background, background)
+                .colors(STX_COLOR, STX_COLOR, SECOND_COLOR, TICK_COLOR, STX_COLOR)
+                .ambientColors(STX_AMBIENT_COLOR, STX_AMBIENT_COLOR, TICK_AMBIENT_COLOR, STX_AMBIENT_COLOR)
+                .handWidths(8f, 5f, 2f, 2f)
+                .outlineWidths(2f, 1f)
+                .build();
+    }
+}
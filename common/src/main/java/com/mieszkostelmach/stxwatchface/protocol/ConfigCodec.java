@@ -0,0 +1,130 @@
+package com.mieszkostelmach.stxwatchface.protocol;
+
+import java.util.Arrays;
+
+/**
+ * Binary encoding of a {@link ConfigState}, used both for the changes the phone sends and for the
+ * config the watch stores. The format is:
+ * <pre>
+ * version       1 byte, {@link ConfigSchema#VERSION}
+ * revision      unsigned varint
+ * then for each field that's set:
+ *   field id    unsigned varint
+ *   value       zigzag varint
+ *   age         unsigned varint, revision minus the revision of the field
+ * </pre>
+ * A change of a single field takes a handful of bytes, against the key names and type tags of a
+ * DataMap. Fields with unknown ids are skipped, so that an older watch can read what a newer phone
+ * sends.
+ *
+ * @author Mieszko Stelmach
+ */
+public final class ConfigCodec {
+    private static final int MAX_VARINT_BYTES = 10;
+    public static final int MAX_ENCODED_SIZE = 1 + MAX_VARINT_BYTES
+            + ConfigSchema.FIELD_COUNT * 3 * MAX_VARINT_BYTES;
+
+    private ConfigCodec() {
+    }
+
+    public static byte[] encode(ConfigState state) {
+        byte[] buffer = new byte[MAX_ENCODED_SIZE];
+        return Arrays.copyOf(buffer, encode(state, buffer));
+    }
+
+    /**
+     * Encodes the state into the buffer, which has to hold at least {@link #MAX_ENCODED_SIZE}
+     * bytes. Returns the encoded length.
+     */
+    public static int encode(ConfigState state, byte[] buffer) {
+        long revision = state.getRevision();
+        if (revision < 0) {
+            throw new IllegalArgumentException("Negative revision: " + revision);
+        }
+        int position = 0;
+        buffer[position++] = (byte) ConfigSchema.VERSION;
+        position = writeVarint(buffer, position, revision);
+        for (int field = 0; field < ConfigSchema.FIELD_COUNT; field++) {
+            if (!state.has(field)) {
+                continue;
+            }
+            int value = state.get(field, 0);
+            position = writeVarint(buffer, position, field);
+            position = writeVarint(buffer, position, ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+            position = writeVarint(buffer, position, revision - state.getFieldRevision(field));
+        }
+        return position;
+    }
+
+    /**
+     * Decodes the data into the state, replacing whatever it held. Throws
+     * {@link IllegalArgumentException} if the data isn't an encoded config.
+     */
+    public static void decode(byte[] data, ConfigState state) {
+        decode(data, 0, data.length, state);
+    }
+
+    public static void decode(byte[] data, int offset, int length, ConfigState state) {
+        int end = offset + length;
+        if (length < 1 || data[offset] != ConfigSchema.VERSION) {
+            throw new IllegalArgumentException("Not a version " + ConfigSchema.VERSION + " config");
+        }
+        Reader reader = new Reader(data, offset + 1, end);
+        long revision = reader.readVarint();
+        if (revision < 0) {
+            throw new IllegalArgumentException("Negative revision: " + revision);
+        }
+        state.clear();
+        while (reader.mPosition < end) {
+            long field = reader.readVarint();
+            long zigzag = reader.readVarint();
+            long age = reader.readVarint();
+            if (age < 0 || age > revision) {
+                throw new IllegalArgumentException("Field " + field + " older than revision 0");
+            }
+            if (field < 0 || field >= ConfigSchema.FIELD_COUNT) {
+                // Added by a newer schema.
+                continue;
+            }
+            state.setRevision(revision - age);
+            state.set((int) field, (int) (zigzag >>> 1) ^ -(int) (zigzag & 1));
+        }
+        state.setRevision(revision);
+    }
+
+    private static int writeVarint(byte[] buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static class Reader {
+        private final byte[] mData;
+        private final int mEnd;
+        int mPosition;
+
+        Reader(byte[] data, int position, int end) {
+            this.mData = data;
+            this.mPosition = position;
+            this.mEnd = end;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (mPosition >= mEnd) {
+                    throw new IllegalArgumentException("Truncated config");
+                }
+                byte b = mData[mPosition++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+    }
+}
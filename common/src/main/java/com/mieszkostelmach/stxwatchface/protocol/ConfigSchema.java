@@ -0,0 +1,26 @@
+package com.mieszkostelmach.stxwatchface.protocol;
+
+/**
+ * Fields of the watch face config as exchanged between the phone and the watch. The field ids are
+ * part of the wire format: they can be added but never renumbered or reused. All of the values are
+ * ints, the face is sent by its id rather than by its name.
+ *
+ * @author Mieszko Stelmach
+ */
+public final class ConfigSchema {
+    /**
+     * Version of the wire format, the first byte of every encoded config.
+     */
+    public static final int VERSION = 1;
+
+    public static final int FIELD_FACE = 0;
+    public static final int FIELD_SWEEP_FPS = 1;
+    public static final int FIELD_COUNT = 2;
+
+    private ConfigSchema() {
+    }
+
+    public static boolean isKnownField(int field) {
+        return field >= 0 && field < FIELD_COUNT;
+    }
+}
@@ -0,0 +1,141 @@
+package com.mieszkostelmach.stxwatchface.protocol;
+
+/**
+ * Watch face config, or a change to it, with revisions. Every field that's set carries the revision
+ * it was last changed in, so that changes can be merged in any order and the newest value of each
+ * field always wins: a change older than the field it would overwrite is stale and gets dropped.
+ * <p/>
+ * The phone numbers its changes with increasing revisions and sends only the fields that changed,
+ * the watch merges them into its state. The same class serves both, see {@link ConfigCodec}.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ConfigState {
+    private final int[] mValues = new int[ConfigSchema.FIELD_COUNT];
+    private final long[] mFieldRevisions = new long[ConfigSchema.FIELD_COUNT];
+    private int mFieldMask;
+    private long mRevision;
+
+    /**
+     * Returns the newest revision of any of the fields.
+     */
+    public long getRevision() {
+        return mRevision;
+    }
+
+    /**
+     * Sets the revision the fields set from now on are changed in.
+     */
+    public void setRevision(long revision) {
+        this.mRevision = revision;
+    }
+
+    public boolean has(int field) {
+        return (mFieldMask & (1 << field)) != 0;
+    }
+
+    public int get(int field, int defaultValue) {
+        return has(field) ? mValues[field] : defaultValue;
+    }
+
+    public long getFieldRevision(int field) {
+        return mFieldRevisions[field];
+    }
+
+    /**
+     * Sets the field, as changed in the current {@link #getRevision()}.
+     */
+    public void set(int field, int value) {
+        mValues[field] = value;
+        mFieldRevisions[field] = mRevision;
+        mFieldMask |= 1 << field;
+    }
+
+    public boolean isEmpty() {
+        return mFieldMask == 0;
+    }
+
+    public void clear() {
+        mFieldMask = 0;
+        mRevision = 0;
+    }
+
+    public void copyFrom(ConfigState other) {
+        System.arraycopy(other.mValues, 0, mValues, 0, ConfigSchema.FIELD_COUNT);
+        System.arraycopy(other.mFieldRevisions, 0, mFieldRevisions, 0, ConfigSchema.FIELD_COUNT);
+        mFieldMask = other.mFieldMask;
+        mRevision = other.mRevision;
+    }
+
+    /**
+     * Takes over the fields of the other state which are newer than the ones here and drops the
+     * stale ones. Returns whether any of the values changed.
+     */
+    public boolean merge(ConfigState other) {
+        boolean changed = false;
+        for (int field = 0; field < ConfigSchema.FIELD_COUNT; field++) {
+            if (!other.has(field)) {
+                continue;
+            }
+            long fieldRevision = other.mFieldRevisions[field];
+            if (has(field) && fieldRevision <= mFieldRevisions[field]) {
+                continue;
+            }
+            if (!has(field) || mValues[field] != other.mValues[field]) {
+                changed = true;
+            }
+            mValues[field] = other.mValues[field];
+            mFieldRevisions[field] = fieldRevision;
+            mFieldMask |= 1 << field;
+        }
+        if (other.mRevision > mRevision) {
+            mRevision = other.mRevision;
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ConfigState)) {
+            return false;
+        }
+        ConfigState other = (ConfigState) o;
+        if (mFieldMask != other.mFieldMask || mRevision != other.mRevision) {
+            return false;
+        }
+        for (int field = 0; field < ConfigSchema.FIELD_COUNT; field++) {
+            if (has(field) && (mValues[field] != other.mValues[field]
+                    || mFieldRevisions[field] != other.mFieldRevisions[field])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (mRevision ^ (mRevision >>> 32));
+        result = 31 * result + mFieldMask;
+        for (int field = 0; field < ConfigSchema.FIELD_COUNT; field++) {
+            if (has(field)) {
+                result = 31 * result + mValues[field];
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ConfigState{revision=").append(mRevision);
+        for (int field = 0; field < ConfigSchema.FIELD_COUNT; field++) {
+            if (has(field)) {
+                builder.append(", ").append(field).append('=').append(mValues[field])
+                        .append('@').append(mFieldRevisions[field]);
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,92 @@
+package com.mieszkostelmach.stxwatchface.render;
+
+import com.mieszkostelmach.stxwatchface.face.Face;
+
+/**
+ * Outlines of the hour and minute hands at every one of their positions, for the ambient mode with
+ * the burn-in protection. Each outline is the four sides of the hand rectangle, as wide as the hand
+ * of the face at the surface size, as line segments ready for {@link DrawTarget#drawLines}, so drawing an outlined hand
+ * doesn't have to build or rotate anything. This class doesn't depend on the Android framework.
+ *
+ * @author Mieszko Stelmach
+ */
+public final class BurnInOutlines {
+    /**
+     * Floats of one outline: four segments of two points each.
+     */
+    public static final int OUTLINE_FLOATS = 16;
+
+    private final HandGeometry mGeometry;
+    private final Face mFace;
+    private final float[] mHourOutlines = new float[HandGeometry.HOUR_POSITIONS * OUTLINE_FLOATS];
+    private final float[] mMinuteOutlines = new float[HandGeometry.MINUTE_POSITIONS * OUTLINE_FLOATS];
+
+    public BurnInOutlines(HandGeometry geometry, Face face) {
+        this.mGeometry = geometry;
+        this.mFace = face;
+        for (int index = 0; index < HandGeometry.HOUR_POSITIONS; index++) {
+            computeOutline(mHourOutlines, index * OUTLINE_FLOATS, index, geometry.getHourLength(),
+                    geometry.scale(face.hourWidth / 2));
+        }
+        int hourIndexesPerMinute = HandGeometry.HOUR_POSITIONS / HandGeometry.MINUTE_POSITIONS;
+        for (int minute = 0; minute < HandGeometry.MINUTE_POSITIONS; minute++) {
+            computeOutline(mMinuteOutlines, minute * OUTLINE_FLOATS, minute * hourIndexesPerMinute,
+                    geometry.getMinuteLength(), geometry.scale(face.minuteWidth / 2));
+        }
+    }
+
+    public HandGeometry getGeometry() {
+        return mGeometry;
+    }
+
+    public Face getFace() {
+        return mFace;
+    }
+
+    /**
+     * Copies the outline of the hour hand at the {@link HandGeometry#hourIndex} into the array,
+     * moved by the offset.
+     */
+    public void getHourOutline(int hourIndex, float offsetX, float offsetY, float[] outline) {
+        copy(mHourOutlines, hourIndex * OUTLINE_FLOATS, offsetX, offsetY, outline);
+    }
+
+    /**
+     * Copies the outline of the minute hand into the array, moved by the offset.
+     */
+    public void getMinuteOutline(int minute, float offsetX, float offsetY, float[] outline) {
+        copy(mMinuteOutlines, minute * OUTLINE_FLOATS, offsetX, offsetY, outline);
+    }
+
+    private static void copy(float[] outlines, int offset, float offsetX, float offsetY, float[] outline) {
+        for (int i = 0; i < OUTLINE_FLOATS; i += 2) {
+            outline[i] = outlines[offset + i] + offsetX;
+            outline[i + 1] = outlines[offset + i + 1] + offsetY;
+        }
+    }
+
+    /**
+     * The rectangle from the center along the hand, as wide as twice the half width.
+     */
+    private void computeOutline(float[] outlines, int offset, int hourIndex, float length, float halfWidth) {
+        // Along the hand and across it, clockwise.
+        float alongX = HandGeometry.sin(hourIndex);
+        float alongY = -HandGeometry.cos(hourIndex);
+        float acrossX = -alongY * halfWidth;
+        float acrossY = alongX * halfWidth;
+        float centerX = mGeometry.getCenterX();
+        float centerY = mGeometry.getCenterY();
+        float endX = centerX + alongX * length;
+        float endY = centerY + alongY * length;
+
+        // The corners, each one ending a side and starting the next.
+        outlines[offset] = outlines[offset + 14] = centerX - acrossX;
+        outlines[offset + 1] = outlines[offset + 15] = centerY - acrossY;
+        outlines[offset + 2] = outlines[offset + 4] = endX - acrossX;
+        outlines[offset + 3] = outlines[offset + 5] = endY - acrossY;
+        outlines[offset + 6] = outlines[offset + 8] = endX + acrossX;
+        outlines[offset + 7] = outlines[offset + 9] = endY + acrossY;
+        outlines[offset + 10] = outlines[offset + 12] = centerX + acrossX;
+        outlines[offset + 11] = outlines[offset + 13] = centerY + acrossY;
+    }
+}
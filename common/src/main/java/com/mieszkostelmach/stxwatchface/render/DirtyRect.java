@@ -0,0 +1,65 @@
+package com.mieszkostelmach.stxwatchface.render;
+
+/**
+ * Integer rectangle of surface pixels that have to be redrawn, the framework independent
+ * counterpart of {@code android.graphics.Rect}. The right and bottom edges are exclusive.
+ *
+ * @author Mieszko Stelmach
+ */
+public final class DirtyRect {
+    public int left;
+    public int top;
+    public int right;
+    public int bottom;
+
+    public void setEmpty() {
+        left = top = right = bottom = 0;
+    }
+
+    public boolean isEmpty() {
+        return left >= right || top >= bottom;
+    }
+
+    /**
+     * Grows the rectangle to contain the given one, rounding it outwards to whole pixels.
+     */
+    public void union(float unionLeft, float unionTop, float unionRight, float unionBottom) {
+        int l = (int) Math.floor(unionLeft);
+        int t = (int) Math.floor(unionTop);
+        int r = (int) Math.ceil(unionRight);
+        int b = (int) Math.ceil(unionBottom);
+        if (isEmpty()) {
+            left = l;
+            top = t;
+            right = r;
+            bottom = b;
+        } else {
+            left = Math.min(left, l);
+            top = Math.min(top, t);
+            right = Math.max(right, r);
+            bottom = Math.max(bottom, b);
+        }
+    }
+
+    /**
+     * Shrinks the rectangle to the {@code [0, width) x [0, height)} surface.
+     */
+    public void clip(int width, int height) {
+        left = Math.max(left, 0);
+        top = Math.max(top, 0);
+        right = Math.min(right, width);
+        bottom = Math.min(bottom, height);
+        if (isEmpty()) {
+            setEmpty();
+        }
+    }
+
+    public boolean contains(int x, int y) {
+        return x >= left && x < right && y >= top && y < bottom;
+    }
+
+    @Override
+    public String toString() {
+        return "DirtyRect(" + left + ", " + top + " - " + right + ", " + bottom + ")";
+    }
+}
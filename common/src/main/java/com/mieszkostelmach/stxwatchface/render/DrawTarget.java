@@ -0,0 +1,46 @@
+package com.mieszkostelmach.stxwatchface.render;
+
+/**
+ * Surface the {@link WatchFaceRenderer} draws on. On the watch it's backed by an Android
+ * {@code Canvas}, elsewhere (benchmarks, tests) by plain Java stubs.
+ * <p/>
+ * Paints are referred to by the {@code PAINT_*} ids, so that implementations can keep their own,
+ * preconfigured paint objects and the renderer doesn't depend on the Android framework.
+ *
+ * @author Mieszko Stelmach
+ */
+public interface DrawTarget {
+    int PAINT_HOUR = 0;
+    int PAINT_MINUTE = 1;
+    int PAINT_SECOND = 2;
+    int PAINT_TICK = 3;
+    int PAINT_CENTER = 4;
+    int PAINT_CENTER_BLACK = 5;
+    int PAINT_COUNT = 6;
+
+    /**
+     * Fills the whole target with the given ARGB color.
+     */
+    void drawColor(int color);
+
+    /**
+     * Draws the selected face background, scaled to fill the whole target.
+     */
+    void drawBackground();
+
+    /**
+     * Draws one of the {@code WatchFaceRenderer.LAYER_*} static layers. Implementations are
+     * expected to cache them and render them with {@link WatchFaceRenderer#drawStaticLayer}.
+     */
+    void drawStaticLayer(int layer);
+
+    void drawLine(float startX, float startY, float stopX, float stopY, int paint);
+
+    /**
+     * Draws separate line segments, like {@code Canvas.drawLines}: each segment takes four of the
+     * floats (start x and y, stop x and y), count being the number of floats used.
+     */
+    void drawLines(float[] points, int offset, int count, int paint);
+
+    void drawOval(float left, float top, float right, float bottom, int paint);
+}
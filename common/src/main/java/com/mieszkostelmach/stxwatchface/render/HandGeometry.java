@@ -0,0 +1,221 @@
+package com.mieszkostelmach.stxwatchface.render;
+
+/**
+ * Precomputed geometry of the ticks and hands for a given surface size.
+ * <p/>
+ * The hands can only point at a fixed set of angles: 60 for the minute hand, 720 for the hour hand
+ * (every minute moves it by half a degree) and 3600 for the second hand (a tenth of a degree, so
+ * that the sweeping hand moves on every frame even at 60 fps). The sines and cosines of those
+ * angles are tabulated once and the hand endpoints are precomputed per surface size, so drawing a
+ * hand is just an array lookup. This class doesn't depend on the Android framework.
+ * <p/>
+ * The lengths, and the widths of the {@link com.mieszkostelmach.stxwatchface.face.Face} hands, are
+ * designed for a {@link #REFERENCE_SIZE} wide surface and scaled with its width, so the face keeps
+ * its proportions at any size, from the watch to the preview on the phone.
+ *
+ * @author Mieszko Stelmach
+ */
+public final class HandGeometry {
+    public static final int TICK_COUNT = 12;
+    public static final int MINUTE_POSITIONS = 60;
+    public static final int HOUR_POSITIONS = 12 * MINUTE_POSITIONS;
+    public static final int SWEEP_POSITIONS = 60 * MINUTE_POSITIONS;
+
+    /**
+     * Width of the surface the lengths and the widths are given for, in pixels.
+     */
+    public static final int REFERENCE_SIZE = 320;
+
+    /**
+     * How far in from the edge of a reference surface the ticks start and the hands end.
+     */
+    private static final float TICK_INSET = 15;
+    private static final float SECOND_INSET = 20;
+    private static final float MINUTE_INSET = 40;
+    private static final float HOUR_INSET = 80;
+
+    /**
+     * Sine and cosine of the second hand angles, a tenth of a degree apart. The hour, minute and
+     * tick angles are every 5th, every 60th and every 300th entry of these tables.
+     */
+    private static final float[] SIN = new float[SWEEP_POSITIONS];
+    private static final float[] COS = new float[SWEEP_POSITIONS];
+
+    static {
+        for (int i = 0; i < SWEEP_POSITIONS; i++) {
+            double rot = i * Math.PI * 2 / SWEEP_POSITIONS;
+            SIN[i] = (float) Math.sin(rot);
+            COS[i] = (float) Math.cos(rot);
+        }
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final float mCenterX;
+    private final float mCenterY;
+    private final float mScale;
+    private final float mMinuteLength;
+    private final float mHourLength;
+
+    private final float[] mTickInnerX = new float[TICK_COUNT];
+    private final float[] mTickInnerY = new float[TICK_COUNT];
+    private final float[] mTickOuterX = new float[TICK_COUNT];
+    private final float[] mTickOuterY = new float[TICK_COUNT];
+    private final float[] mSecondX = new float[SWEEP_POSITIONS];
+    private final float[] mSecondY = new float[SWEEP_POSITIONS];
+    private final float[] mMinuteX = new float[MINUTE_POSITIONS];
+    private final float[] mMinuteY = new float[MINUTE_POSITIONS];
+    private final float[] mHourX = new float[HOUR_POSITIONS];
+    private final float[] mHourY = new float[HOUR_POSITIONS];
+
+    public HandGeometry(int width, int height) {
+        this.mWidth = width;
+        this.mHeight = height;
+        // Ignore the window insets so that, on round watches with a "chin", the watch face is
+        // centered on the entire screen, not just the usable portion.
+        this.mCenterX = width / 2f;
+        this.mCenterY = height / 2f;
+        this.mScale = width / (float) REFERENCE_SIZE;
+
+        float innerTickRadius = mCenterX - scale(TICK_INSET);
+        float outerTickRadius = mCenterX;
+        for (int tick = 0; tick < TICK_COUNT; tick++) {
+            int index = tick * (SWEEP_POSITIONS / TICK_COUNT);
+            mTickInnerX[tick] = mCenterX + SIN[index] * innerTickRadius;
+            mTickInnerY[tick] = mCenterY - COS[index] * innerTickRadius;
+            mTickOuterX[tick] = mCenterX + SIN[index] * outerTickRadius;
+            mTickOuterY[tick] = mCenterY - COS[index] * outerTickRadius;
+        }
+
+        float secLength = mCenterX - scale(SECOND_INSET);
+        for (int position = 0; position < SWEEP_POSITIONS; position++) {
+            mSecondX[position] = mCenterX + SIN[position] * secLength;
+            mSecondY[position] = mCenterY - COS[position] * secLength;
+        }
+
+        this.mMinuteLength = mCenterX - scale(MINUTE_INSET);
+        for (int position = 0; position < MINUTE_POSITIONS; position++) {
+            int index = position * (SWEEP_POSITIONS / MINUTE_POSITIONS);
+            mMinuteX[position] = mCenterX + SIN[index] * mMinuteLength;
+            mMinuteY[position] = mCenterY - COS[index] * mMinuteLength;
+        }
+
+        this.mHourLength = mCenterX - scale(HOUR_INSET);
+        for (int index = 0; index < HOUR_POSITIONS; index++) {
+            mHourX[index] = mCenterX + SIN[index * (SWEEP_POSITIONS / HOUR_POSITIONS)] * mHourLength;
+            mHourY[index] = mCenterY - COS[index * (SWEEP_POSITIONS / HOUR_POSITIONS)] * mHourLength;
+        }
+    }
+
+    /**
+     * Returns the hour hand position (0-719) for the given time of day.
+     */
+    public static int hourIndex(int hour, int minute) {
+        return (hour % 12) * MINUTE_POSITIONS + minute;
+    }
+
+    /**
+     * Returns the second hand position (0-3599) for the given second and millisecond of the minute.
+     */
+    public static int sweepIndex(int second, int millis) {
+        return (second * 1000 + millis) * SWEEP_POSITIONS / (MINUTE_POSITIONS * 1000);
+    }
+
+    public static float sin(int hourIndex) {
+        return SIN[hourIndex * (SWEEP_POSITIONS / HOUR_POSITIONS)];
+    }
+
+    public static float cos(int hourIndex) {
+        return COS[hourIndex * (SWEEP_POSITIONS / HOUR_POSITIONS)];
+    }
+
+    public boolean matches(int width, int height) {
+        return mWidth == width && mHeight == height;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public float getCenterX() {
+        return mCenterX;
+    }
+
+    public float getCenterY() {
+        return mCenterY;
+    }
+
+    /**
+     * Returns the width of the surface relative to the {@link #REFERENCE_SIZE}.
+     */
+    public float getScale() {
+        return mScale;
+    }
+
+    /**
+     * Returns the length or the width given for the reference surface, in pixels of this one.
+     */
+    public float scale(float referencePixels) {
+        return referencePixels * mScale;
+    }
+
+    public float getHourLength() {
+        return mHourLength;
+    }
+
+    public float getMinuteLength() {
+        return mMinuteLength;
+    }
+
+    public float tickInnerX(int tick) {
+        return mTickInnerX[tick];
+    }
+
+    public float tickInnerY(int tick) {
+        return mTickInnerY[tick];
+    }
+
+    public float tickOuterX(int tick) {
+        return mTickOuterX[tick];
+    }
+
+    public float tickOuterY(int tick) {
+        return mTickOuterY[tick];
+    }
+
+    public float secondX(int second) {
+        return mSecondX[second * (SWEEP_POSITIONS / MINUTE_POSITIONS)];
+    }
+
+    public float secondY(int second) {
+        return mSecondY[second * (SWEEP_POSITIONS / MINUTE_POSITIONS)];
+    }
+
+    public float sweepX(int sweepIndex) {
+        return mSecondX[sweepIndex];
+    }
+
+    public float sweepY(int sweepIndex) {
+        return mSecondY[sweepIndex];
+    }
+
+    public float minuteX(int minute) {
+        return mMinuteX[minute];
+    }
+
+    public float minuteY(int minute) {
+        return mMinuteY[minute];
+    }
+
+    public float hourX(int hourIndex) {
+        return mHourX[hourIndex];
+    }
+
+    public float hourY(int hourIndex) {
+        return mHourY[hourIndex];
+    }
+}
@@ -0,0 +1,157 @@
+package com.mieszkostelmach.stxwatchface.render;
+
+/**
+ * A hand pre-rasterized at every one of its positions as 1-bit sprites, without antialiasing, for
+ * the low-bit ambient mode. The sprites are cropped to their bounds and packed together into one
+ * bit array.
+ * <p/>
+ * Only the first half of the positions is kept: a hand half a turn further is the same sprite
+ * mirrored through the center of the surface, which {@link #blit} does on the fly.
+ *
+ * @author Mieszko Stelmach
+ */
+public final class HandSpriteAtlas {
+    private final int mSurfaceWidth;
+    private final int mSurfaceHeight;
+    private final int mPositions;
+    private final int mStored;
+
+    private final int[] mLeft;
+    private final int[] mTop;
+    private final int[] mWidth;
+    private final int[] mHeight;
+    /**
+     * Bit offset of each sprite in {@link #mBits}, the sprite rows follow each other.
+     */
+    private final int[] mOffset;
+    private final long[] mBits;
+
+    /**
+     * Rasterizes a hand of the given width, with round caps, from the center of the surface to
+     * each of the ends. The number of positions has to be even.
+     */
+    HandSpriteAtlas(HandGeometry geometry, float[] endX, float[] endY, float width) {
+        this.mSurfaceWidth = geometry.getWidth();
+        this.mSurfaceHeight = geometry.getHeight();
+        this.mPositions = endX.length;
+        this.mStored = mPositions / 2;
+        this.mLeft = new int[mStored];
+        this.mTop = new int[mStored];
+        this.mWidth = new int[mStored];
+        this.mHeight = new int[mStored];
+        this.mOffset = new int[mStored];
+
+        float centerX = geometry.getCenterX();
+        float centerY = geometry.getCenterY();
+        float radius = width / 2;
+        int bitCount = 0;
+        for (int position = 0; position < mStored; position++) {
+            int left = Math.max((int) Math.floor(Math.min(centerX, endX[position]) - radius), 0);
+            int top = Math.max((int) Math.floor(Math.min(centerY, endY[position]) - radius), 0);
+            int right = Math.min((int) Math.ceil(Math.max(centerX, endX[position]) + radius), mSurfaceWidth);
+            int bottom = Math.min((int) Math.ceil(Math.max(centerY, endY[position]) + radius), mSurfaceHeight);
+            mLeft[position] = left;
+            mTop[position] = top;
+            mWidth[position] = Math.max(right - left, 0);
+            mHeight[position] = Math.max(bottom - top, 0);
+            mOffset[position] = bitCount;
+            bitCount += mWidth[position] * mHeight[position];
+        }
+
+        this.mBits = new long[(bitCount + 63) / 64];
+        for (int position = 0; position < mStored; position++) {
+            int bit = mOffset[position];
+            for (int y = 0; y < mHeight[position]; y++) {
+                for (int x = 0; x < mWidth[position]; x++, bit++) {
+                    if (covers(mLeft[position] + x, mTop[position] + y,
+                            centerX, centerY, endX[position], endY[position], radius, true)) {
+                        mBits[bit >>> 6] |= 1L << bit;
+                    }
+                }
+            }
+        }
+    }
+
+    public int getPositions() {
+        return mPositions;
+    }
+
+    /**
+     * Size of the packed sprites, in bytes.
+     */
+    public int getByteCount() {
+        return mBits.length * 8;
+    }
+
+    /**
+     * Sets the pixels of the hand at the position to the color, the pixels are ARGB in rows of the
+     * surface width.
+     */
+    public void blit(int position, int[] pixels, int color) {
+        boolean mirrored = position >= mStored;
+        int sprite = mirrored ? position - mStored : position;
+        int width = mWidth[sprite];
+        int height = mHeight[sprite];
+        int stride = mSurfaceWidth;
+        long[] bits = mBits;
+        int bit = mOffset[sprite];
+        if (!mirrored) {
+            int row = mTop[sprite] * stride + mLeft[sprite];
+            for (int y = 0; y < height; y++, row += stride) {
+                for (int x = 0; x < width; x++, bit++) {
+                    if ((bits[bit >>> 6] & (1L << bit)) != 0) {
+                        pixels[row + x] = color;
+                    }
+                }
+            }
+        } else {
+            // Pixel (x, y) goes to (width - 1 - x, height - 1 - y) of the surface.
+            int row = (mSurfaceHeight - 1 - mTop[sprite]) * stride + mSurfaceWidth - 1 - mLeft[sprite];
+            for (int y = 0; y < height; y++, row -= stride) {
+                for (int x = 0; x < width; x++, bit++) {
+                    if ((bits[bit >>> 6] & (1L << bit)) != 0) {
+                        pixels[row - x] = color;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Grows the rectangle to contain the sprite of the hand at the position.
+     */
+    public void unionBounds(int position, DirtyRect dirty) {
+        boolean mirrored = position >= mStored;
+        int sprite = mirrored ? position - mStored : position;
+        int left = mLeft[sprite];
+        int top = mTop[sprite];
+        if (mirrored) {
+            left = mSurfaceWidth - left - mWidth[sprite];
+            top = mSurfaceHeight - top - mHeight[sprite];
+        }
+        dirty.union(left, top, left + mWidth[sprite], top + mHeight[sprite]);
+    }
+
+    /**
+     * Returns whether the center of the pixel is within the radius of the line segment. With round
+     * caps the ends are rounded, without them the line ends flat at its end points.
+     */
+    static boolean covers(int x, int y, float startX, float startY, float endX, float endY,
+                          float radius, boolean roundCaps) {
+        float px = x + 0.5f - startX;
+        float py = y + 0.5f - startY;
+        float dx = endX - startX;
+        float dy = endY - startY;
+        float lengthSquared = dx * dx + dy * dy;
+        float t = lengthSquared > 0 ? (px * dx + py * dy) / lengthSquared : 0;
+        if (t < 0 || t > 1) {
+            if (!roundCaps) {
+                return false;
+            }
+            t = t < 0 ? 0 : 1;
+        }
+        float distanceX = px - t * dx;
+        float distanceY = py - t * dy;
+        return distanceX * distanceX + distanceY * distanceY <= radius * radius;
+    }
+}
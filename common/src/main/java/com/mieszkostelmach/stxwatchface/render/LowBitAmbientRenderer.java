@@ -0,0 +1,212 @@
+package com.mieszkostelmach.stxwatchface.render;
+
+import com.mieszkostelmach.stxwatchface.face.Face;
+
+import java.util.Arrays;
+
+/**
+ * Ambient mode frames for the low-bit displays, drawn into a pixel array instead of through a
+ * {@link DrawTarget}. The ticks are rasterized once into the background, the hands come from the
+ * {@link HandSpriteAtlas}es. An ambient tick restores the background under the hands of the last
+ * frame and blits the new ones, touching only the pixels around the hands.
+ * <p/>
+ * Nothing is antialiased, the low-bit displays can't show it anyway. Drawing a frame doesn't
+ * allocate, building the renderer does. This class doesn't depend on the Android framework.
+ *
+ * @author Mieszko Stelmach
+ */
+public class LowBitAmbientRenderer {
+    private static final int BLACK = 0xff000000;
+    /**
+     * Radius of the hub, on the {@link HandGeometry#REFERENCE_SIZE} surface.
+     */
+    private static final float CENTER_RADIUS = 10f;
+    /**
+     * Alpha of the hands in mute mode, as the service dims the hand paints, over the black
+     * background.
+     */
+    private static final int MUTE_HAND_ALPHA = 100;
+
+    private final HandGeometry mGeometry;
+    private final int mWidth;
+    private final int mHeight;
+    private final Face mFace;
+    private int mHourColor;
+    private int mMinuteColor;
+    private final int mCenterColor;
+
+    private final HandSpriteAtlas mHourSprites;
+    private final HandSpriteAtlas mMinuteSprites;
+    private final int[] mBackground;
+    private final int[] mPixels;
+
+    /**
+     * Which pixels within its bounds the center dot covers, drawn over the hands.
+     */
+    private final DirtyRect mCenterBounds = new DirtyRect();
+    private final boolean[] mCenterMask;
+
+    private boolean mDrawnValid;
+    private int mDrawnHourIndex;
+    private int mDrawnMinute;
+
+    public LowBitAmbientRenderer(HandGeometry geometry, Face face) {
+        this.mGeometry = geometry;
+        this.mWidth = geometry.getWidth();
+        this.mHeight = geometry.getHeight();
+        this.mFace = face;
+        this.mHourColor = face.ambientHourColor;
+        this.mMinuteColor = face.ambientMinuteColor;
+        this.mCenterColor = face.ambientCenterColor;
+
+        float[] endX = new float[HandGeometry.HOUR_POSITIONS];
+        float[] endY = new float[HandGeometry.HOUR_POSITIONS];
+        for (int index = 0; index < HandGeometry.HOUR_POSITIONS; index++) {
+            endX[index] = geometry.hourX(index);
+            endY[index] = geometry.hourY(index);
+        }
+        this.mHourSprites = new HandSpriteAtlas(geometry, endX, endY, geometry.scale(face.hourWidth));
+
+        endX = new float[HandGeometry.MINUTE_POSITIONS];
+        endY = new float[HandGeometry.MINUTE_POSITIONS];
+        for (int minute = 0; minute < HandGeometry.MINUTE_POSITIONS; minute++) {
+            endX[minute] = geometry.minuteX(minute);
+            endY[minute] = geometry.minuteY(minute);
+        }
+        this.mMinuteSprites = new HandSpriteAtlas(geometry, endX, endY, geometry.scale(face.minuteWidth));
+
+        this.mBackground = new int[mWidth * mHeight];
+        Arrays.fill(mBackground, BLACK);
+        float tickRadius = geometry.scale(face.tickWidth / 2);
+        for (int tick = 0; tick < HandGeometry.TICK_COUNT; tick++) {
+            fillLine(mBackground, geometry.tickInnerX(tick), geometry.tickInnerY(tick),
+                    geometry.tickOuterX(tick), geometry.tickOuterY(tick), tickRadius, face.ambientTickColor);
+        }
+        this.mPixels = new int[mWidth * mHeight];
+
+        float centerX = geometry.getCenterX();
+        float centerY = geometry.getCenterY();
+        float centerRadius = geometry.scale(CENTER_RADIUS);
+        mCenterBounds.union(centerX - centerRadius, centerY - centerRadius,
+                centerX + centerRadius, centerY + centerRadius);
+        mCenterBounds.clip(mWidth, mHeight);
+        int centerWidth = mCenterBounds.right - mCenterBounds.left;
+        this.mCenterMask = new boolean[centerWidth * (mCenterBounds.bottom - mCenterBounds.top)];
+        for (int y = mCenterBounds.top, i = 0; y < mCenterBounds.bottom; y++) {
+            for (int x = mCenterBounds.left; x < mCenterBounds.right; x++, i++) {
+                mCenterMask[i] = HandSpriteAtlas.covers(x, y, centerX, centerY, centerX, centerY,
+                        centerRadius, true);
+            }
+        }
+    }
+
+    public HandGeometry getGeometry() {
+        return mGeometry;
+    }
+
+    /**
+     * The frame, ARGB pixels in rows of the surface width.
+     */
+    public int[] getPixels() {
+        return mPixels;
+    }
+
+    /**
+     * Size of the hand sprites, in bytes.
+     */
+    public int getSpriteByteCount() {
+        return mHourSprites.getByteCount() + mMinuteSprites.getByteCount();
+    }
+
+    /**
+     * Makes the next {@link #draw} redraw the whole frame, e.g. when the pixels have been copied
+     * somewhere that lost them.
+     */
+    public void invalidate() {
+        mDrawnValid = false;
+    }
+
+    /**
+     * Dims the hands in mute mode, the next {@link #draw} redraws the whole frame if that changes
+     * their colors.
+     */
+    public void setMute(boolean mute) {
+        int hourColor = mute ? dim(mFace.ambientHourColor, MUTE_HAND_ALPHA) : mFace.ambientHourColor;
+        int minuteColor = mute ? dim(mFace.ambientMinuteColor, MUTE_HAND_ALPHA) : mFace.ambientMinuteColor;
+        if (hourColor != mHourColor || minuteColor != mMinuteColor) {
+            mHourColor = hourColor;
+            mMinuteColor = minuteColor;
+            mDrawnValid = false;
+        }
+    }
+
+    /**
+     * Returns the opaque color drawn with the alpha over black.
+     */
+    static int dim(int color, int alpha) {
+        int red = (((color >> 16) & 0xff) * alpha + 127) / 255;
+        int green = (((color >> 8) & 0xff) * alpha + 127) / 255;
+        int blue = ((color & 0xff) * alpha + 127) / 255;
+        return BLACK | red << 16 | green << 8 | blue;
+    }
+
+    /**
+     * Draws the frame for the time into {@link #getPixels()}. Sets the rectangle to the pixels that
+     * changed and returns whether any did.
+     */
+    public boolean draw(int hour, int minute, DirtyRect dirty) {
+        int hourIndex = HandGeometry.hourIndex(hour, minute);
+        dirty.setEmpty();
+        if (mDrawnValid && hourIndex == mDrawnHourIndex && minute == mDrawnMinute) {
+            return false;
+        }
+        if (mDrawnValid) {
+            mHourSprites.unionBounds(mDrawnHourIndex, dirty);
+            mMinuteSprites.unionBounds(mDrawnMinute, dirty);
+            mHourSprites.unionBounds(hourIndex, dirty);
+            mMinuteSprites.unionBounds(minute, dirty);
+            dirty.union(mCenterBounds.left, mCenterBounds.top, mCenterBounds.right, mCenterBounds.bottom);
+            dirty.clip(mWidth, mHeight);
+        } else {
+            dirty.union(0, 0, mWidth, mHeight);
+        }
+
+        // Restore the background under the old hands.
+        for (int y = dirty.top; y < dirty.bottom; y++) {
+            int row = y * mWidth + dirty.left;
+            System.arraycopy(mBackground, row, mPixels, row, dirty.right - dirty.left);
+        }
+        mHourSprites.blit(hourIndex, mPixels, mHourColor);
+        mMinuteSprites.blit(minute, mPixels, mMinuteColor);
+        for (int y = mCenterBounds.top, mask = 0; y < mCenterBounds.bottom; y++) {
+            for (int x = mCenterBounds.left, i = y * mWidth + x; x < mCenterBounds.right; x++, i++, mask++) {
+                if (mCenterMask[mask]) {
+                    mPixels[i] = mCenterColor;
+                }
+            }
+        }
+
+        mDrawnValid = true;
+        mDrawnHourIndex = hourIndex;
+        mDrawnMinute = minute;
+        return true;
+    }
+
+    /**
+     * Rasterizes a line with flat ends, as the ticks are drawn.
+     */
+    private void fillLine(int[] pixels, float startX, float startY, float endX, float endY,
+                          float radius, int color) {
+        int left = Math.max((int) Math.floor(Math.min(startX, endX) - radius), 0);
+        int top = Math.max((int) Math.floor(Math.min(startY, endY) - radius), 0);
+        int right = Math.min((int) Math.ceil(Math.max(startX, endX) + radius), mWidth);
+        int bottom = Math.min((int) Math.ceil(Math.max(startY, endY) + radius), mHeight);
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+                if (HandSpriteAtlas.covers(x, y, startX, startY, endX, endY, radius, false)) {
+                    pixels[y * mWidth + x] = color;
+                }
+            }
+        }
+    }
+}
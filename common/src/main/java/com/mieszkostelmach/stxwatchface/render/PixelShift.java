@@ -0,0 +1,59 @@
+package com.mieszkostelmach.stxwatchface.render;
+
+/**
+ * Schedule of the few-pixel offsets the ambient frame is drawn at with the burn-in protection, so
+ * that the hub and the hands don't keep the same pixels lit minute after minute.
+ * <p/>
+ * The offsets cover a square of {@code (2 * maxOffset + 1)^2} positions. Each step jumps a few
+ * pixels in both directions rather than walking the square row by row, so a pixel on the edge of
+ * a shape is lit for a step or two at a time, not for a whole row of steps. The offset only depends
+ * on the time, the frames need no state to agree on it.
+ *
+ * @author Mieszko Stelmach
+ */
+public final class PixelShift {
+    private final int mMinutesPerStep;
+    private final int[] mOffsetX;
+    private final int[] mOffsetY;
+
+    public PixelShift(int maxOffset, int minutesPerStep) {
+        this.mMinutesPerStep = minutesPerStep;
+        int side = 2 * maxOffset + 1;
+        int positions = side * side;
+        this.mOffsetX = new int[positions];
+        this.mOffsetY = new int[positions];
+        // A stride of side + 2 moves by two pixels across and one down on every step, and being
+        // coprime to the number of positions visits all of them once per cycle.
+        int stride = side + 2;
+        while (gcd(stride, positions) != 1) {
+            stride++;
+        }
+        for (int step = 0, position = 0; step < positions; step++, position = (position + stride) % positions) {
+            mOffsetX[step] = position % side - maxOffset;
+            mOffsetY[step] = position / side - maxOffset;
+        }
+    }
+
+    /**
+     * Number of offsets in one cycle of the schedule.
+     */
+    public int getPositions() {
+        return mOffsetX.length;
+    }
+
+    public int getOffsetX(int hour, int minute) {
+        return mOffsetX[step(hour, minute)];
+    }
+
+    public int getOffsetY(int hour, int minute) {
+        return mOffsetY[step(hour, minute)];
+    }
+
+    private int step(int hour, int minute) {
+        return ((hour * 60 + minute) / mMinutesPerStep) % mOffsetX.length;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
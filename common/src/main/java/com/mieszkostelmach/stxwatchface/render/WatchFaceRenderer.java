@@ -0,0 +1,276 @@
+package com.mieszkostelmach.stxwatchface.render;
+
+import com.mieszkostelmach.stxwatchface.face.Face;
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+
+/**
+ * Draws the watch face on a {@link DrawTarget}. Everything that doesn't change between frames -
+ * the background and the ticks - goes into one of the static layers, so that a frame is a single
+ * layer blit plus the hands.
+ *
+ * @author Mieszko Stelmach
+ */
+public class WatchFaceRenderer {
+    /**
+     * Indexes of the static layers (background and ticks), one per drawing mode.
+     */
+    public static final int LAYER_INTERACTIVE = 0;
+    public static final int LAYER_AMBIENT = 1;
+    public static final int LAYER_AMBIENT_BURN_IN = 2;
+    public static final int LAYER_COUNT = 3;
+
+    private static final int BLACK = 0xff000000;
+
+    /**
+     * Pixels of antialiasing around the hand strokes.
+     */
+    private static final float ANTIALIAS_MARGIN = 1f;
+    /**
+     * Radius of the hub, on the {@link HandGeometry#REFERENCE_SIZE} surface.
+     */
+    private static final float CENTER_RADIUS = 10f;
+
+    /**
+     * How far the burn-in protected frames are shifted at most, in pixels, and how often.
+     */
+    private static final int BURN_IN_MAX_SHIFT = 4;
+    private static final int BURN_IN_SHIFT_MINUTES = 1;
+
+    private final PixelShift mPixelShift = new PixelShift(BURN_IN_MAX_SHIFT, BURN_IN_SHIFT_MINUTES);
+    private final float[] mOutline = new float[BurnInOutlines.OUTLINE_FLOATS];
+    private BurnInOutlines mBurnInOutlines;
+
+    private HandGeometry mGeometry;
+    private Face mFace = FaceRegistry.get(FaceRegistry.DEFAULT_FACE);
+    /**
+     * Half of the widest hand stroke of the face, on the reference surface. The pixels of a hand can
+     * reach that far beyond its center line, scaled, plus the antialiasing.
+     */
+    private float mHandHalfWidth = getHandHalfWidth(mFace);
+    private boolean mAmbient;
+    private boolean mBurnInProtection;
+    private boolean mShowSeconds = true;
+    private boolean mSweep;
+
+    /**
+     * Updates the surface size. Returns whether it changed, in which case the static layers have to
+     * be redrawn.
+     */
+    public boolean setSurfaceSize(int width, int height) {
+        if (mGeometry != null && mGeometry.matches(width, height)) {
+            return false;
+        }
+        this.mGeometry = new HandGeometry(width, height);
+        updateBurnInOutlines();
+        return true;
+    }
+
+    public HandGeometry getGeometry() {
+        return mGeometry;
+    }
+
+    /**
+     * Sets the face whose hand widths the dirty rects and the burn-in outlines follow.
+     */
+    public void setFace(Face face) {
+        this.mFace = face;
+        this.mHandHalfWidth = getHandHalfWidth(face);
+        updateBurnInOutlines();
+    }
+
+    public Face getFace() {
+        return mFace;
+    }
+
+    private static float getHandHalfWidth(Face face) {
+        return Math.max(face.hourWidth, Math.max(face.minuteWidth, face.secondWidth)) / 2;
+    }
+
+    public void setAmbient(boolean ambient) {
+        this.mAmbient = ambient;
+    }
+
+    public boolean isAmbient() {
+        return mAmbient;
+    }
+
+    public void setBurnInProtection(boolean burnInProtection) {
+        this.mBurnInProtection = burnInProtection;
+        updateBurnInOutlines();
+    }
+
+    public PixelShift getPixelShift() {
+        return mPixelShift;
+    }
+
+    /**
+     * Builds the hand outlines for the surface size and the face once the burn-in protection is on,
+     * rather than on the first frame which needs them.
+     */
+    private void updateBurnInOutlines() {
+        if (mBurnInProtection && mGeometry != null && (mBurnInOutlines == null
+                || mBurnInOutlines.getGeometry() != mGeometry || mBurnInOutlines.getFace() != mFace)) {
+            this.mBurnInOutlines = new BurnInOutlines(mGeometry, mFace);
+        }
+    }
+
+    /**
+     * Whether the second hand is drawn in interactive mode.
+     */
+    public void setShowSeconds(boolean showSeconds) {
+        this.mShowSeconds = showSeconds;
+    }
+
+    /**
+     * Whether the second hand sweeps, i.e. is placed by the milliseconds as well, instead of
+     * ticking once a second.
+     */
+    public void setSweep(boolean sweep) {
+        this.mSweep = sweep;
+    }
+
+    public boolean isSweep() {
+        return mSweep;
+    }
+
+    /**
+     * Returns the static layer for the current mode.
+     */
+    public int getStaticLayer() {
+        if (!mAmbient) {
+            return LAYER_INTERACTIVE;
+        } else if (!mBurnInProtection) {
+            return LAYER_AMBIENT;
+        } else {
+            return LAYER_AMBIENT_BURN_IN;
+        }
+    }
+
+    public void drawStaticLayer(DrawTarget target, int layer) {
+        HandGeometry geometry = mGeometry;
+
+        // Draw the background, scaled to fit.
+        if (layer == LAYER_INTERACTIVE) {
+            target.drawBackground();
+        } else {
+            target.drawColor(BLACK);
+        }
+
+        if (layer != LAYER_AMBIENT_BURN_IN) {
+            // Draw the ticks.
+            for (int tick = 0; tick < HandGeometry.TICK_COUNT; tick++) {
+                target.drawLine(geometry.tickInnerX(tick), geometry.tickInnerY(tick),
+                        geometry.tickOuterX(tick), geometry.tickOuterY(tick), DrawTarget.PAINT_TICK);
+            }
+        }
+    }
+
+    /**
+     * Computes the surface area that changes between two interactive frames: the old and the new
+     * second hand and, when the minute changes, the old and the new minute and hour hands. Drawing
+     * the new frame clipped to that area gives the same pixels as drawing it in full. Returns
+     * whether anything has to be redrawn at all.
+     */
+    public boolean computeDirtyRect(int fromHour, int fromMinute, int fromSecond,
+                                    int toHour, int toMinute, int toSecond, DirtyRect dirty) {
+        return computeDirtyRect(fromHour, fromMinute, fromSecond, 0, toHour, toMinute, toSecond, 0, dirty);
+    }
+
+    /**
+     * Same as {@link #computeDirtyRect(int, int, int, int, int, int, DirtyRect)}, with the
+     * milliseconds which move the sweeping second hand.
+     */
+    public boolean computeDirtyRect(int fromHour, int fromMinute, int fromSecond, int fromMillis,
+                                    int toHour, int toMinute, int toSecond, int toMillis, DirtyRect dirty) {
+        HandGeometry geometry = mGeometry;
+        dirty.setEmpty();
+        int fromSecIndex = secondIndex(fromSecond, fromMillis);
+        int toSecIndex = secondIndex(toSecond, toMillis);
+        if (mShowSeconds && fromSecIndex != toSecIndex) {
+            unionHand(dirty, geometry.sweepX(fromSecIndex), geometry.sweepY(fromSecIndex));
+            unionHand(dirty, geometry.sweepX(toSecIndex), geometry.sweepY(toSecIndex));
+        }
+        if (fromMinute != toMinute) {
+            unionHand(dirty, geometry.minuteX(fromMinute), geometry.minuteY(fromMinute));
+            unionHand(dirty, geometry.minuteX(toMinute), geometry.minuteY(toMinute));
+        }
+        int fromHrIndex = HandGeometry.hourIndex(fromHour, fromMinute);
+        int toHrIndex = HandGeometry.hourIndex(toHour, toMinute);
+        if (fromHrIndex != toHrIndex) {
+            unionHand(dirty, geometry.hourX(fromHrIndex), geometry.hourY(fromHrIndex));
+            unionHand(dirty, geometry.hourX(toHrIndex), geometry.hourY(toHrIndex));
+        }
+        dirty.clip(geometry.getWidth(), geometry.getHeight());
+        return !dirty.isEmpty();
+    }
+
+    private void unionHand(DirtyRect dirty, float endX, float endY) {
+        float centerX = mGeometry.getCenterX();
+        float centerY = mGeometry.getCenterY();
+        float margin = mGeometry.scale(mHandHalfWidth) + ANTIALIAS_MARGIN;
+        dirty.union(Math.min(centerX, endX) - margin, Math.min(centerY, endY) - margin,
+                Math.max(centerX, endX) + margin, Math.max(centerY, endY) + margin);
+    }
+
+    private int secondIndex(int second, int millis) {
+        if (mSweep) {
+            return HandGeometry.sweepIndex(second, millis);
+        }
+        return second * (HandGeometry.SWEEP_POSITIONS / HandGeometry.MINUTE_POSITIONS);
+    }
+
+    public void drawFrame(DrawTarget target, int hour, int minute, int second) {
+        drawFrame(target, hour, minute, second, 0);
+    }
+
+    /**
+     * Draws a frame, with the milliseconds which move the sweeping second hand.
+     */
+    public void drawFrame(DrawTarget target, int hour, int minute, int second, int millis) {
+        HandGeometry geometry = mGeometry;
+
+        // Draw the background and the ticks in one go.
+        target.drawStaticLayer(getStaticLayer());
+
+        if (mAmbient && mBurnInProtection) {
+            drawOutlinedHands(target, hour, minute);
+            return;
+        }
+
+        float centerX = geometry.getCenterX();
+        float centerY = geometry.getCenterY();
+
+        int hrIndex = HandGeometry.hourIndex(hour, minute);
+        target.drawLine(centerX, centerY, geometry.hourX(hrIndex), geometry.hourY(hrIndex), DrawTarget.PAINT_HOUR);
+        target.drawLine(centerX, centerY, geometry.minuteX(minute), geometry.minuteY(minute), DrawTarget.PAINT_MINUTE);
+
+        if (!mAmbient && mShowSeconds) {
+            int secIndex = secondIndex(second, millis);
+            target.drawLine(centerX, centerY, geometry.sweepX(secIndex), geometry.sweepY(secIndex), DrawTarget.PAINT_SECOND);
+        }
+
+        float radius = geometry.scale(CENTER_RADIUS);
+        target.drawOval(centerX - radius, centerY - radius, centerX + radius, centerY + radius, DrawTarget.PAINT_CENTER);
+    }
+
+    /**
+     * Draws the outlined hands and the hollow hub of the burn-in protected ambient mode, all of
+     * them shifted by the {@link PixelShift} offset for the time.
+     */
+    private void drawOutlinedHands(DrawTarget target, int hour, int minute) {
+        int offsetX = mPixelShift.getOffsetX(hour, minute);
+        int offsetY = mPixelShift.getOffsetY(hour, minute);
+        float[] outline = mOutline;
+        mBurnInOutlines.getHourOutline(HandGeometry.hourIndex(hour, minute), offsetX, offsetY, outline);
+        target.drawLines(outline, 0, BurnInOutlines.OUTLINE_FLOATS, DrawTarget.PAINT_HOUR);
+        mBurnInOutlines.getMinuteOutline(minute, offsetX, offsetY, outline);
+        target.drawLines(outline, 0, BurnInOutlines.OUTLINE_FLOATS, DrawTarget.PAINT_MINUTE);
+
+        float centerX = mGeometry.getCenterX() + offsetX;
+        float centerY = mGeometry.getCenterY() + offsetY;
+        float radius = mGeometry.scale(CENTER_RADIUS);
+        target.drawOval(centerX - radius, centerY - radius, centerX + radius, centerY + radius,
+                DrawTarget.PAINT_CENTER_BLACK);
+        target.drawOval(centerX - radius, centerY - radius, centerX + radius, centerY + radius, DrawTarget.PAINT_CENTER);
+    }
+}
@@ -0,0 +1,135 @@
+package com.mieszkostelmach.stxwatchface.config;
+
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigCodec;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigSchema;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigState;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parses and validates the config values as the phone and the watch exchange them.
+ *
+ * @author Mieszko Stelmach
+ */
+public class WatchFaceConfigTest {
+    @Test
+    public void pathAndKeysStayTheSame() {
+        // Already on the watches and in the configs out there.
+        assertEquals("/watch_face_config/STXWatchFace", WatchFaceConfig.PATH_WITH_FEATURE);
+        assertEquals("WATCH_FACE", WatchFaceConfig.KEY_WATCH_FACE);
+        assertEquals("SWEEP_FPS", WatchFaceConfig.KEY_SWEEP_FPS);
+    }
+
+    @Test
+    public void parseFace() {
+        assertEquals(FaceRegistry.SUPERWHERO_ALPHA, WatchFaceConfig.parseFace("superwhero_alpha"));
+        assertEquals(FaceRegistry.DEFAULT_FACE, WatchFaceConfig.parseFace(null));
+        assertEquals(FaceRegistry.UNKNOWN, WatchFaceConfig.parseFace("unknown"));
+        assertEquals(FaceRegistry.UNKNOWN, WatchFaceConfig.parseFace(""));
+    }
+
+    @Test
+    public void parseSweepFps() {
+        assertEquals(WatchFaceConfig.SWEEP_OFF, WatchFaceConfig.parseSweepFps(0));
+        assertEquals(WatchFaceConfig.SWEEP_OFF, WatchFaceConfig.parseSweepFps(-30));
+        assertEquals(15, WatchFaceConfig.parseSweepFps(1));
+        assertEquals(15, WatchFaceConfig.parseSweepFps(29));
+        assertEquals(30, WatchFaceConfig.parseSweepFps(30));
+        assertEquals(30, WatchFaceConfig.parseSweepFps(59));
+        assertEquals(60, WatchFaceConfig.parseSweepFps(60));
+        assertEquals(60, WatchFaceConfig.parseSweepFps(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void validValues() {
+        for (int id = 0; id < FaceRegistry.getCount(); id++) {
+            assertTrue(WatchFaceConfig.isValid(ConfigSchema.FIELD_FACE, id));
+        }
+        assertFalse(WatchFaceConfig.isValid(ConfigSchema.FIELD_FACE, FaceRegistry.UNKNOWN));
+        assertFalse(WatchFaceConfig.isValid(ConfigSchema.FIELD_FACE, FaceRegistry.getCount()));
+
+        for (int fps : new int[]{0, 15, 30, 60}) {
+            assertTrue(WatchFaceConfig.isValid(ConfigSchema.FIELD_SWEEP_FPS, fps));
+        }
+        for (int fps : new int[]{-1, 1, 20, 45, 120}) {
+            assertFalse(WatchFaceConfig.isValid(ConfigSchema.FIELD_SWEEP_FPS, fps));
+        }
+        assertFalse(WatchFaceConfig.isValid(ConfigSchema.FIELD_COUNT, 0));
+    }
+
+    @Test
+    public void validConfig() {
+        ConfigState config = new ConfigState();
+        assertTrue(WatchFaceConfig.isValid(config));
+        config.set(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERHERO_ALPHA);
+        config.set(ConfigSchema.FIELD_SWEEP_FPS, 30);
+        assertTrue(WatchFaceConfig.isValid(config));
+        config.set(ConfigSchema.FIELD_SWEEP_FPS, 31);
+        assertFalse(WatchFaceConfig.isValid(config));
+    }
+
+    @Test
+    public void changeFromThePhoneAppliesOnTheWatch() {
+        ConfigState watch = new ConfigState();
+        watch.setRevision(10);
+        watch.set(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERHERO);
+        watch.set(ConfigSchema.FIELD_SWEEP_FPS, 60);
+
+        ConfigState change = new ConfigState();
+        change.setRevision(11);
+        change.set(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERWHERO);
+        ConfigState received = new ConfigState();
+        ConfigCodec.decode(ConfigCodec.encode(change), received);
+
+        assertTrue(WatchFaceConfig.isValid(received));
+        assertTrue(watch.merge(received));
+        assertEquals(FaceRegistry.SUPERWHERO, watch.get(ConfigSchema.FIELD_FACE, -1));
+        assertEquals(60, watch.get(ConfigSchema.FIELD_SWEEP_FPS, -1));
+        assertEquals(11, watch.getRevision());
+    }
+
+    @Test
+    public void collectChangesSendsOnlyWhatTheWatchLacks() {
+        ConfigState known = new ConfigState();
+        known.setRevision(10);
+        known.set(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERHERO);
+        known.set(ConfigSchema.FIELD_SWEEP_FPS, 30);
+        ConfigState pending = new ConfigState();
+        pending.copyFrom(known);
+
+        ConfigState change = new ConfigState();
+        change.setRevision(11);
+        assertFalse(WatchFaceConfig.collectChanges(pending, known, change));
+
+        // Picked and picked back on the screen, nothing to send.
+        pending.set(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERWHERO);
+        pending.set(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERHERO);
+        pending.set(ConfigSchema.FIELD_SWEEP_FPS, 60);
+        assertTrue(WatchFaceConfig.collectChanges(pending, known, change));
+        assertFalse(change.has(ConfigSchema.FIELD_FACE));
+        assertEquals(60, change.get(ConfigSchema.FIELD_SWEEP_FPS, -1));
+        assertEquals(11, change.getFieldRevision(ConfigSchema.FIELD_SWEEP_FPS));
+
+        assertTrue(known.merge(change));
+        change.clear();
+        assertFalse(WatchFaceConfig.collectChanges(pending, known, change));
+    }
+
+    @Test
+    public void collectChangesSkipsInvalidValues() {
+        ConfigState pending = new ConfigState();
+        pending.set(ConfigSchema.FIELD_FACE, FaceRegistry.getCount());
+        pending.set(ConfigSchema.FIELD_SWEEP_FPS, 45);
+        ConfigState change = new ConfigState();
+        assertFalse(WatchFaceConfig.collectChanges(pending, new ConfigState(), change));
+
+        pending.set(ConfigSchema.FIELD_SWEEP_FPS, WatchFaceConfig.SWEEP_OFF);
+        assertTrue(WatchFaceConfig.collectChanges(pending, new ConfigState(), change));
+        assertEquals(WatchFaceConfig.SWEEP_OFF, change.get(ConfigSchema.FIELD_SWEEP_FPS, -1));
+    }
+}
@@ -0,0 +1,58 @@
+package com.mieszkostelmach.stxwatchface.face;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the face ids stay what the configs out there already carry, and that every face is
+ * complete.
+ *
+ * @author Mieszko Stelmach
+ */
+public class FaceRegistryTest {
+    @Test
+    public void idsAreStable() {
+        assertEquals(0, FaceRegistry.findByName("superhero"));
+        assertEquals(1, FaceRegistry.findByName("superwhero"));
+        assertEquals(2, FaceRegistry.findByName("superhero_alpha"));
+        assertEquals(3, FaceRegistry.findByName("superwhero_alpha"));
+    }
+
+    @Test
+    public void facesAreIndexedByTheirIds() {
+        for (int id = 0; id < FaceRegistry.getCount(); id++) {
+            assertTrue(FaceRegistry.isKnown(id));
+            assertEquals(id, FaceRegistry.get(id).id);
+            assertEquals(id, FaceRegistry.findByName(FaceRegistry.get(id).name));
+        }
+        assertTrue(FaceRegistry.isKnown(FaceRegistry.DEFAULT_FACE));
+    }
+
+    @Test
+    public void unknownFaces() {
+        assertFalse(FaceRegistry.isKnown(FaceRegistry.UNKNOWN));
+        assertNull(FaceRegistry.get(FaceRegistry.UNKNOWN));
+        assertNull(FaceRegistry.get(FaceRegistry.getCount()));
+        assertEquals(FaceRegistry.UNKNOWN, FaceRegistry.findByName("batman"));
+    }
+
+    @Test
+    public void facesAreComplete() {
+        for (int id = 0; id < FaceRegistry.getCount(); id++) {
+            Face face = FaceRegistry.get(id);
+            assertTrue(face.background != null && !face.background.isEmpty());
+            assertTrue(face.hourWidth > 0 && face.minuteWidth > 0 && face.secondWidth > 0 && face.tickWidth > 0);
+            assertTrue(face.hourOutlineWidth > 0 && face.minuteOutlineWidth > 0);
+            // Fully opaque, the muted mode dims the hands with the alpha.
+            assertEquals(0xff, face.hourColor >>> 24);
+            assertEquals(0xff, face.minuteColor >>> 24);
+            assertEquals(0xff, face.secondColor >>> 24);
+            assertEquals(0xff, face.ambientHourColor >>> 24);
+            assertEquals(0xff, face.ambientMinuteColor >>> 24);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.mieszkostelmach.stxwatchface.protocol;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips configs and changes through the codec and feeds it with malformed data.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ConfigCodecTest {
+    private static final int[] VALUES = {0, 1, -1, 3, 15, 60, 127, 128, -128, 300, Integer.MAX_VALUE, Integer.MIN_VALUE};
+    private static final long[] REVISIONS = {0, 1, 127, 128, 1420070400000L, Long.MAX_VALUE};
+
+    @Test
+    public void emptyStateRoundTrips() {
+        ConfigState state = new ConfigState();
+        byte[] data = ConfigCodec.encode(state);
+        assertEquals(2, data.length);
+        assertRoundTrips(state);
+    }
+
+    @Test
+    public void valuesAndRevisionsRoundTrip() {
+        for (long revision : REVISIONS) {
+            for (int value : VALUES) {
+                ConfigState state = new ConfigState();
+                state.setRevision(revision);
+                state.set(ConfigSchema.FIELD_FACE, value);
+                assertRoundTrips(state);
+                state.set(ConfigSchema.FIELD_SWEEP_FPS, -value);
+                assertRoundTrips(state);
+            }
+        }
+    }
+
+    @Test
+    public void fieldRevisionsRoundTrip() {
+        ConfigState state = new ConfigState();
+        state.setRevision(5);
+        state.set(ConfigSchema.FIELD_FACE, 2);
+        state.setRevision(1420070400000L);
+        state.set(ConfigSchema.FIELD_SWEEP_FPS, 30);
+
+        ConfigState decoded = assertRoundTrips(state);
+        assertEquals(5, decoded.getFieldRevision(ConfigSchema.FIELD_FACE));
+        assertEquals(1420070400000L, decoded.getFieldRevision(ConfigSchema.FIELD_SWEEP_FPS));
+    }
+
+    @Test
+    public void randomStatesRoundTrip() {
+        Random random = new Random(13);
+        for (int i = 0; i < 10000; i++) {
+            ConfigState state = new ConfigState();
+            long revision = random.nextLong() & Long.MAX_VALUE;
+            for (int field = 0; field < ConfigSchema.FIELD_COUNT; field++) {
+                if (random.nextBoolean()) {
+                    state.setRevision(revision - (random.nextBoolean() ? 0 : random.nextInt(1000000)));
+                    state.set(field, random.nextInt());
+                }
+            }
+            state.setRevision(revision);
+            assertRoundTrips(state);
+        }
+    }
+
+    @Test
+    public void singleFieldChangeIsSmall() {
+        ConfigState delta = new ConfigState();
+        delta.setRevision(1420070400000L);
+        delta.set(ConfigSchema.FIELD_FACE, 3);
+        // Version, 6 byte revision, field id, value and age.
+        assertEquals(10, ConfigCodec.encode(delta).length);
+    }
+
+    @Test
+    public void decodingReplacesTheState() {
+        ConfigState full = new ConfigState();
+        full.setRevision(7);
+        full.set(ConfigSchema.FIELD_FACE, 1);
+        full.set(ConfigSchema.FIELD_SWEEP_FPS, 60);
+
+        ConfigState delta = new ConfigState();
+        delta.setRevision(8);
+        delta.set(ConfigSchema.FIELD_SWEEP_FPS, 15);
+
+        ConfigState decoded = new ConfigState();
+        ConfigCodec.decode(ConfigCodec.encode(full), decoded);
+        ConfigCodec.decode(ConfigCodec.encode(delta), decoded);
+        assertEquals(delta, decoded);
+        assertFalse(decoded.has(ConfigSchema.FIELD_FACE));
+    }
+
+    @Test
+    public void unknownFieldsAreSkipped() {
+        // Revision 9, field 1 = 30, then a field 40 from a newer schema, then field 0 = 2.
+        byte[] data = {ConfigSchema.VERSION, 9, 1, 60, 0, 40, 10, 0, 0, 4, 0};
+        ConfigState decoded = new ConfigState();
+        ConfigCodec.decode(data, decoded);
+        assertEquals(9, decoded.getRevision());
+        assertEquals(30, decoded.get(ConfigSchema.FIELD_SWEEP_FPS, -1));
+        assertEquals(2, decoded.get(ConfigSchema.FIELD_FACE, -1));
+    }
+
+    @Test
+    public void decodesWithinABuffer() {
+        ConfigState state = new ConfigState();
+        state.setRevision(3);
+        state.set(ConfigSchema.FIELD_FACE, 2);
+        byte[] buffer = new byte[ConfigCodec.MAX_ENCODED_SIZE + 4];
+        Arrays.fill(buffer, (byte) 0xFF);
+        int length = ConfigCodec.encode(state, buffer);
+        System.arraycopy(buffer, 0, buffer, 2, length);
+
+        ConfigState decoded = new ConfigState();
+        ConfigCodec.decode(buffer, 2, length, decoded);
+        assertEquals(state, decoded);
+    }
+
+    @Test
+    public void malformedDataIsRejected() {
+        ConfigState state = new ConfigState();
+        state.setRevision(1420070400000L);
+        state.set(ConfigSchema.FIELD_FACE, 300);
+        byte[] data = ConfigCodec.encode(state);
+        for (int length = 0; length < data.length; length++) {
+            if (length == 7) {
+                // Just the version and the revision, a valid empty change.
+                continue;
+            }
+            assertRejected(Arrays.copyOf(data, length));
+        }
+        assertRejected(new byte[]{2, 0});
+        // A DataMap, as stored by the older versions.
+        assertRejected(new byte[]{10, 10, 87, 65, 84, 67, 72, 95, 70, 65, 67, 69});
+        // Field older than revision 0.
+        assertRejected(new byte[]{ConfigSchema.VERSION, 1, 0, 2, 2});
+        // Varint longer than 64 bits.
+        assertRejected(new byte[]{ConfigSchema.VERSION, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 1});
+    }
+
+    private static ConfigState assertRoundTrips(ConfigState state) {
+        ConfigState decoded = new ConfigState();
+        // Leftovers from a previous decode mustn't leak into the next one.
+        decoded.setRevision(99);
+        decoded.set(ConfigSchema.FIELD_SWEEP_FPS, 99);
+        ConfigCodec.decode(ConfigCodec.encode(state), decoded);
+        assertEquals(state, decoded);
+        assertTrue(ConfigCodec.encode(state).length <= ConfigCodec.MAX_ENCODED_SIZE);
+        return decoded;
+    }
+
+    private static void assertRejected(byte[] data) {
+        try {
+            ConfigCodec.decode(data, new ConfigState());
+            fail("Decoded " + Arrays.toString(data));
+        } catch (IllegalArgumentException expected) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.mieszkostelmach.stxwatchface.protocol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Merges changes into a config in and out of order.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ConfigStateTest {
+    @Test
+    public void changesApplyInOrder() {
+        ConfigState state = new ConfigState();
+        assertTrue(state.merge(change(1, ConfigSchema.FIELD_FACE, 1)));
+        assertTrue(state.merge(change(2, ConfigSchema.FIELD_SWEEP_FPS, 30)));
+        assertTrue(state.merge(change(3, ConfigSchema.FIELD_FACE, 2)));
+
+        assertEquals(3, state.getRevision());
+        assertEquals(2, state.get(ConfigSchema.FIELD_FACE, -1));
+        assertEquals(30, state.get(ConfigSchema.FIELD_SWEEP_FPS, -1));
+    }
+
+    @Test
+    public void staleChangesAreDropped() {
+        ConfigState state = new ConfigState();
+        state.merge(change(5, ConfigSchema.FIELD_FACE, 3));
+        assertFalse(state.merge(change(4, ConfigSchema.FIELD_FACE, 1)));
+        assertFalse(state.merge(change(5, ConfigSchema.FIELD_FACE, 1)));
+        assertEquals(3, state.get(ConfigSchema.FIELD_FACE, -1));
+        assertEquals(5, state.getRevision());
+    }
+
+    @Test
+    public void olderChangeOfAnotherFieldStillApplies() {
+        // Revision 4 changed the sweep, revision 5 the face, and they arrive the other way around.
+        ConfigState state = new ConfigState();
+        state.merge(change(5, ConfigSchema.FIELD_FACE, 3));
+        assertTrue(state.merge(change(4, ConfigSchema.FIELD_SWEEP_FPS, 60)));
+        assertEquals(3, state.get(ConfigSchema.FIELD_FACE, -1));
+        assertEquals(60, state.get(ConfigSchema.FIELD_SWEEP_FPS, -1));
+        assertEquals(5, state.getRevision());
+    }
+
+    @Test
+    public void sameValueIsNotAChange() {
+        ConfigState state = new ConfigState();
+        state.merge(change(1, ConfigSchema.FIELD_FACE, 2));
+        assertFalse(state.merge(change(2, ConfigSchema.FIELD_FACE, 2)));
+        assertEquals(2, state.getFieldRevision(ConfigSchema.FIELD_FACE));
+    }
+
+    @Test
+    public void mergedChangesMatchAppliedOneByOne() {
+        ConfigState oneByOne = new ConfigState();
+        ConfigState batch = new ConfigState();
+        for (int revision = 1; revision <= 20; revision++) {
+            ConfigState change = change(revision, revision % ConfigSchema.FIELD_COUNT, revision * 7);
+            oneByOne.merge(change);
+            batch.merge(change);
+        }
+        ConfigState merged = new ConfigState();
+        merged.merge(batch);
+        assertEquals(oneByOne, merged);
+    }
+
+    @Test
+    public void missingFieldsUseTheDefault() {
+        ConfigState state = new ConfigState();
+        assertTrue(state.isEmpty());
+        assertEquals(-1, state.get(ConfigSchema.FIELD_FACE, -1));
+        state.merge(change(1, ConfigSchema.FIELD_FACE, 0));
+        assertFalse(state.isEmpty());
+        state.clear();
+        assertTrue(state.isEmpty());
+        assertEquals(0, state.getRevision());
+    }
+
+    private static ConfigState change(long revision, int field, int value) {
+        ConfigState change = new ConfigState();
+        change.setRevision(revision);
+        change.set(field, value);
+        return change;
+    }
+}
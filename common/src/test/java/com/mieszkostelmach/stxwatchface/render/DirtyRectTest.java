@@ -0,0 +1,112 @@
+package com.mieszkostelmach.stxwatchface.render;
+
+import com.mieszkostelmach.stxwatchface.face.Face;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Dirty areas computed by {@link WatchFaceRenderer#computeDirtyRect} for the once a second ticks,
+ * and how they and the burn-in outlines follow the hand widths of the face.
+ *
+ * @author Mieszko Stelmach
+ */
+public class DirtyRectTest {
+    private static final int SIZE = 320;
+
+    private final WatchFaceRenderer mRenderer = new WatchFaceRenderer();
+    private final DirtyRect mDirty = new DirtyRect();
+
+    public DirtyRectTest() {
+        mRenderer.setSurfaceSize(SIZE, SIZE);
+    }
+
+    @Test
+    public void coversOldAndNewSecondHandForAllPositions() {
+        HandGeometry geometry = mRenderer.getGeometry();
+        for (int second = 0; second < 60; second++) {
+            int from = (second + 59) % 60;
+            assertTrue(mRenderer.computeDirtyRect(10, 10, from, 10, 10, second, mDirty));
+            assertContains(geometry.getCenterX(), geometry.getCenterY());
+            assertContains(geometry.secondX(from), geometry.secondY(from));
+            assertContains(geometry.secondX(second), geometry.secondY(second));
+            // Neighbouring positions are 6 degrees apart, so the area is at most half of the surface.
+            int area = (mDirty.right - mDirty.left) * (mDirty.bottom - mDirty.top);
+            assertTrue("second " + second + ": " + mDirty, area <= SIZE * SIZE / 2);
+        }
+    }
+
+    @Test
+    public void coversMinuteAndHourHandsWhenTheMinuteChanges() {
+        HandGeometry geometry = mRenderer.getGeometry();
+        assertTrue(mRenderer.computeDirtyRect(10, 14, 59, 10, 15, 0, mDirty));
+        assertContains(geometry.minuteX(14), geometry.minuteY(14));
+        assertContains(geometry.minuteX(15), geometry.minuteY(15));
+        assertContains(geometry.hourX(HandGeometry.hourIndex(10, 14)), geometry.hourY(HandGeometry.hourIndex(10, 14)));
+        assertContains(geometry.hourX(HandGeometry.hourIndex(10, 15)), geometry.hourY(HandGeometry.hourIndex(10, 15)));
+    }
+
+    @Test
+    public void nothingIsDirtyWhenTheTimeDoesNotChange() {
+        assertFalse(mRenderer.computeDirtyRect(10, 10, 10, 10, 10, 10, mDirty));
+        assertTrue(mDirty.isEmpty());
+    }
+
+    @Test
+    public void staysWithinTheSurface() {
+        for (int second = 0; second < 60; second++) {
+            mRenderer.computeDirtyRect(0, 0, second, 0, 1, (second + 1) % 60, mDirty);
+            assertTrue(mDirty.left >= 0 && mDirty.top >= 0 && mDirty.right <= SIZE && mDirty.bottom <= SIZE);
+        }
+    }
+
+    @Test
+    public void widerHandsWidenTheDirtyRect() {
+        HandGeometry geometry = mRenderer.getGeometry();
+        float centerY = geometry.getCenterY();
+        // At 3 o'clock the hour hand points right and the minute hand up, nothing reaches below
+        // the center but the width of the hour hand.
+        assertTrue(mRenderer.computeDirtyRect(3, 0, 0, 3, 1, 0, mDirty));
+        assertTrue(mDirty.bottom <= centerY + 6);
+
+        mRenderer.setFace(wideFace());
+        assertTrue(mRenderer.computeDirtyRect(3, 0, 0, 3, 1, 0, mDirty));
+        assertContains(geometry.getCenterX(), centerY + 10);
+        assertTrue(mDirty.bottom <= centerY + 12);
+    }
+
+    @Test
+    public void burnInOutlinesAreAsWideAsTheHands() {
+        mRenderer.setFace(wideFace());
+        BurnInOutlines outlines = new BurnInOutlines(mRenderer.getGeometry(), mRenderer.getFace());
+        float[] outline = new float[BurnInOutlines.OUTLINE_FLOATS];
+        outlines.getHourOutline(HandGeometry.hourIndex(3, 0), 0, 0, outline);
+        assertEquals(20f, spanY(outline), 0.01f);
+        outlines.getMinuteOutline(15, 0, 0, outline);
+        assertEquals(12f, spanY(outline), 0.01f);
+    }
+
+    private static Face wideFace() {
+        return new Face.Builder(0, "wide", "superhero")
+                .handWidths(20f, 12f, 2f, 2f)
+                .outlineWidths(2f, 1f)
+                .build();
+    }
+
+    private static float spanY(float[] outline) {
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (int i = 1; i < outline.length; i += 2) {
+            min = Math.min(min, outline[i]);
+            max = Math.max(max, outline[i]);
+        }
+        return max - min;
+    }
+
+    private void assertContains(float x, float y) {
+        assertTrue(mDirty + " doesn't contain " + x + ", " + y, mDirty.contains((int) x, (int) y));
+    }
+}
@@ -0,0 +1,117 @@
+package com.mieszkostelmach.stxwatchface.render;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the lookup tables against the {@link Math} based geometry {@code onDraw} used before, its
+ * insets scaled from the {@link HandGeometry#REFERENCE_SIZE}.
+ *
+ * @author Mieszko Stelmach
+ */
+public class HandGeometryTest {
+    private static final float ONE_PIXEL = 1f;
+    private static final int[] SIZES = {280, 320, 360, 400};
+
+    @Test
+    public void ticksMatchMath() {
+        for (int size : SIZES) {
+            HandGeometry geometry = new HandGeometry(size, size);
+            float center = size / 2f;
+            for (int tick = 0; tick < HandGeometry.TICK_COUNT; tick++) {
+                float tickRot = (float) (tick * Math.PI * 2 / 12);
+                float inner = center - inset(size, 15);
+                assertEquals(center + (float) Math.sin(tickRot) * inner, geometry.tickInnerX(tick), ONE_PIXEL);
+                assertEquals(center + (float) -Math.cos(tickRot) * inner, geometry.tickInnerY(tick), ONE_PIXEL);
+                assertEquals(center + (float) Math.sin(tickRot) * center, geometry.tickOuterX(tick), ONE_PIXEL);
+                assertEquals(center + (float) -Math.cos(tickRot) * center, geometry.tickOuterY(tick), ONE_PIXEL);
+            }
+        }
+    }
+
+    @Test
+    public void secondAndMinuteHandsMatchMath() {
+        for (int size : SIZES) {
+            HandGeometry geometry = new HandGeometry(size, size);
+            float center = size / 2f;
+            for (int position = 0; position < HandGeometry.MINUTE_POSITIONS; position++) {
+                float rot = position / 30f * (float) Math.PI;
+                float secLength = center - inset(size, 20);
+                float minLength = center - inset(size, 40);
+                assertEquals(center + (float) Math.sin(rot) * secLength, geometry.secondX(position), ONE_PIXEL);
+                assertEquals(center + (float) -Math.cos(rot) * secLength, geometry.secondY(position), ONE_PIXEL);
+                assertEquals(center + (float) Math.sin(rot) * minLength, geometry.minuteX(position), ONE_PIXEL);
+                assertEquals(center + (float) -Math.cos(rot) * minLength, geometry.minuteY(position), ONE_PIXEL);
+            }
+        }
+    }
+
+    @Test
+    public void hourHandMatchesMath() {
+        for (int size : SIZES) {
+            HandGeometry geometry = new HandGeometry(size, size);
+            float center = size / 2f;
+            float hrLength = center - inset(size, 80);
+            for (int hour = 0; hour < 24; hour++) {
+                for (int minute = 0; minute < 60; minute++) {
+                    float hrRot = ((hour + (minute / 60f)) / 6f) * (float) Math.PI;
+                    int index = HandGeometry.hourIndex(hour, minute);
+                    assertEquals(center + (float) Math.sin(hrRot) * hrLength, geometry.hourX(index), ONE_PIXEL);
+                    assertEquals(center + (float) -Math.cos(hrRot) * hrLength, geometry.hourY(index), ONE_PIXEL);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sweepingSecondHandMatchesMath() {
+        for (int size : SIZES) {
+            HandGeometry geometry = new HandGeometry(size, size);
+            float center = size / 2f;
+            float secLength = center - inset(size, 20);
+            for (int second = 0; second < 60; second++) {
+                for (int millis = 0; millis < 1000; millis += 17) {
+                    float rot = (second + millis / 1000f) / 30f * (float) Math.PI;
+                    int index = HandGeometry.sweepIndex(second, millis);
+                    assertEquals(center + (float) Math.sin(rot) * secLength, geometry.sweepX(index), ONE_PIXEL);
+                    assertEquals(center + (float) -Math.cos(rot) * secLength, geometry.sweepY(index), ONE_PIXEL);
+                }
+                assertEquals(geometry.secondX(second), geometry.sweepX(HandGeometry.sweepIndex(second, 0)), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void nonSquareSurfaceUsesBothCenters() {
+        HandGeometry geometry = new HandGeometry(320, 290);
+        assertEquals(160f, geometry.getCenterX(), 0f);
+        assertEquals(145f, geometry.getCenterY(), 0f);
+        assertEquals(145f - (160f - 20), geometry.secondY(0), ONE_PIXEL);
+    }
+
+    @Test
+    public void handsKeepTheirProportionsAtAnySize() {
+        HandGeometry reference = new HandGeometry(320, 320);
+        HandGeometry preview = new HandGeometry(160, 160);
+        assertEquals(1f, reference.getScale(), 0f);
+        assertEquals(0.5f, preview.getScale(), 0f);
+        assertEquals(8f, reference.scale(8f), 0f);
+        assertEquals(4f, preview.scale(8f), 0f);
+        assertEquals(80f, reference.getHourLength(), 0f);
+        assertEquals(reference.getHourLength() / 2, preview.getHourLength(), 0.001f);
+        assertEquals(reference.getMinuteLength() / 2, preview.getMinuteLength(), 0.001f);
+        for (int tick = 0; tick < HandGeometry.TICK_COUNT; tick++) {
+            assertEquals(reference.tickInnerX(tick) / 2, preview.tickInnerX(tick), 0.001f);
+            assertEquals(reference.tickInnerY(tick) / 2, preview.tickInnerY(tick), 0.001f);
+        }
+        for (int position = 0; position < HandGeometry.MINUTE_POSITIONS; position++) {
+            assertEquals(reference.secondX(position) / 2, preview.secondX(position), 0.001f);
+            assertEquals(reference.secondY(position) / 2, preview.secondY(position), 0.001f);
+        }
+    }
+
+    private static float inset(int size, float referenceInset) {
+        return referenceInset * size / HandGeometry.REFERENCE_SIZE;
+    }
+}
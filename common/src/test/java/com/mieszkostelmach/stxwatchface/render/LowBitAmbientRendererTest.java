@@ -0,0 +1,151 @@
+package com.mieszkostelmach.stxwatchface.render;
+
+import com.mieszkostelmach.stxwatchface.face.Face;
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Low-bit ambient frames drawn minute by minute through a whole day by {@link LowBitAmbientRenderer},
+ * compared with frames rasterized from scratch.
+ *
+ * @author Mieszko Stelmach
+ */
+public class LowBitAmbientRendererTest {
+    private static final int SIZE = 320;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final Face mFace = FaceRegistry.get(FaceRegistry.DEFAULT_FACE);
+    private final HandGeometry mGeometry = new HandGeometry(SIZE, SIZE);
+    private final LowBitAmbientRenderer mRenderer = new LowBitAmbientRenderer(mGeometry, mFace);
+    private final DirtyRect mDirty = new DirtyRect();
+
+    @Test
+    public void matchesFramesRasterizedFromScratch() {
+        int[] expected = new int[SIZE * SIZE];
+        for (int minuteOfDay = 0; minuteOfDay < MINUTES_PER_DAY; minuteOfDay++) {
+            int hour = minuteOfDay / 60;
+            int minute = minuteOfDay % 60;
+            assertTrue(mRenderer.draw(hour, minute, mDirty));
+            rasterize(hour, minute, expected);
+            assertPixelsEqual(hour + ":" + minute, expected, mRenderer.getPixels());
+        }
+    }
+
+    @Test
+    public void changesOnlyPixelsInTheDirtyRect() {
+        mRenderer.draw(23, 59, mDirty);
+        assertEquals(0, mDirty.left);
+        assertEquals(SIZE, mDirty.right);
+        int[] previous = new int[SIZE * SIZE];
+        for (int minuteOfDay = 0; minuteOfDay < MINUTES_PER_DAY; minuteOfDay++) {
+            System.arraycopy(mRenderer.getPixels(), 0, previous, 0, previous.length);
+            assertTrue(mRenderer.draw(minuteOfDay / 60, minuteOfDay % 60, mDirty));
+            int[] pixels = mRenderer.getPixels();
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    if (pixels[y * SIZE + x] != previous[y * SIZE + x]) {
+                        assertTrue("minute " + minuteOfDay + " " + x + "," + y + " outside " + mDirty,
+                                mDirty.contains(x, y));
+                    }
+                }
+            }
+            // Only the hands move, the rest of the frame stays as it is.
+            int area = (mDirty.right - mDirty.left) * (mDirty.bottom - mDirty.top);
+            assertTrue("minute " + minuteOfDay + ": " + mDirty, area < SIZE * SIZE);
+        }
+    }
+
+    @Test
+    public void sameMinuteDrawsNothing() {
+        assertTrue(mRenderer.draw(10, 10, mDirty));
+        assertFalse(mRenderer.draw(10, 10, mDirty));
+        assertTrue(mDirty.isEmpty());
+
+        mRenderer.invalidate();
+        assertTrue(mRenderer.draw(10, 10, mDirty));
+        assertEquals(SIZE * SIZE, (mDirty.right - mDirty.left) * (mDirty.bottom - mDirty.top));
+    }
+
+    @Test
+    public void muteDimsTheHands() {
+        int[] expected = new int[SIZE * SIZE];
+        int hourColor = LowBitAmbientRenderer.dim(mFace.ambientHourColor, 100);
+        int minuteColor = LowBitAmbientRenderer.dim(mFace.ambientMinuteColor, 100);
+
+        assertTrue(mRenderer.draw(3, 40, mDirty));
+        mRenderer.setMute(true);
+        assertTrue(mRenderer.draw(3, 40, mDirty));
+        assertEquals(SIZE * SIZE, (mDirty.right - mDirty.left) * (mDirty.bottom - mDirty.top));
+        rasterize(3, 40, hourColor, minuteColor, expected);
+        assertPixelsEqual("muted", expected, mRenderer.getPixels());
+
+        // Stays dimmed as the hands move.
+        assertTrue(mRenderer.draw(3, 41, mDirty));
+        rasterize(3, 41, hourColor, minuteColor, expected);
+        assertPixelsEqual("muted, moved", expected, mRenderer.getPixels());
+
+        mRenderer.setMute(true);
+        assertFalse(mRenderer.draw(3, 41, mDirty));
+        mRenderer.setMute(false);
+        assertTrue(mRenderer.draw(3, 41, mDirty));
+        rasterize(3, 41, expected);
+        assertPixelsEqual("unmuted", expected, mRenderer.getPixels());
+    }
+
+    @Test
+    public void keepsHalfOfTheSprites() {
+        // 720 hour and 60 minute positions of a 320 pixel face, a few bits per position.
+        assertTrue("" + mRenderer.getSpriteByteCount(), mRenderer.getSpriteByteCount() < 256 * 1024);
+    }
+
+    private void rasterize(int hour, int minute, int[] pixels) {
+        rasterize(hour, minute, mFace.ambientHourColor, mFace.ambientMinuteColor, pixels);
+    }
+
+    private void rasterize(int hour, int minute, int hourColor, int minuteColor, int[] pixels) {
+        Arrays.fill(pixels, 0xff000000);
+        float centerX = mGeometry.getCenterX();
+        float centerY = mGeometry.getCenterY();
+        for (int tick = 0; tick < HandGeometry.TICK_COUNT; tick++) {
+            fill(pixels, mGeometry.tickInnerX(tick), mGeometry.tickInnerY(tick), mGeometry.tickOuterX(tick),
+                    mGeometry.tickOuterY(tick), mFace.tickWidth / 2, false, mFace.ambientTickColor);
+        }
+        int hourIndex = HandGeometry.hourIndex(hour, minute);
+        fill(pixels, centerX, centerY, mGeometry.hourX(hourIndex), mGeometry.hourY(hourIndex),
+                mFace.hourWidth / 2, true, hourColor);
+        fill(pixels, centerX, centerY, mGeometry.minuteX(minute), mGeometry.minuteY(minute),
+                mFace.minuteWidth / 2, true, minuteColor);
+        fill(pixels, centerX, centerY, centerX, centerY, 10, true, mFace.ambientCenterColor);
+    }
+
+    private static void fill(int[] pixels, float startX, float startY, float endX, float endY,
+                             float radius, boolean roundCaps, int color) {
+        int left = Math.max((int) (Math.min(startX, endX) - radius) - 1, 0);
+        int top = Math.max((int) (Math.min(startY, endY) - radius) - 1, 0);
+        int right = Math.min((int) (Math.max(startX, endX) + radius) + 2, SIZE);
+        int bottom = Math.min((int) (Math.max(startY, endY) + radius) + 2, SIZE);
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+                if (HandSpriteAtlas.covers(x, y, startX, startY, endX, endY, radius, roundCaps)) {
+                    pixels[y * SIZE + x] = color;
+                }
+            }
+        }
+    }
+
+    private static void assertPixelsEqual(String message, int[] expected, int[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != actual[i]) {
+                throw new AssertionError(message + ": pixel " + (i % SIZE) + "," + (i / SIZE) + " is "
+                        + Integer.toHexString(actual[i]) + ", expected " + Integer.toHexString(expected[i]));
+            }
+        }
+    }
+}
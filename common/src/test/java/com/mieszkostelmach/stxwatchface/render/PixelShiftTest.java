@@ -0,0 +1,168 @@
+package com.mieszkostelmach.stxwatchface.render;
+
+import com.mieszkostelmach.stxwatchface.face.Face;
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Burn-in protected ambient frames drawn once a minute through a whole day, rasterized to count how
+ * long each pixel stays lit.
+ *
+ * @author Mieszko Stelmach
+ */
+public class PixelShiftTest {
+    private static final int SIZE = 320;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    /**
+     * Without the shift, the hub is lit all day long.
+     */
+    private static final int MAX_LIT_MINUTES = MINUTES_PER_DAY * 2 / 5;
+    private static final int MAX_LIT_RUN_MINUTES = 30;
+
+    @Test
+    public void visitsEveryOffsetOncePerCycle() {
+        PixelShift shift = new PixelShift(4, 1);
+        assertEquals(81, shift.getPositions());
+        boolean[] visited = new boolean[81];
+        for (int minute = 0; minute < shift.getPositions(); minute++) {
+            int offsetX = shift.getOffsetX(0, minute);
+            int offsetY = shift.getOffsetY(0, minute);
+            assertTrue(offsetX >= -4 && offsetX <= 4 && offsetY >= -4 && offsetY <= 4);
+            int position = (offsetY + 4) * 9 + offsetX + 4;
+            assertFalse("minute " + minute, visited[position]);
+            visited[position] = true;
+        }
+        assertEquals(shift.getOffsetX(0, 0), shift.getOffsetX(1, 21));
+        assertEquals(shift.getOffsetY(0, 0), shift.getOffsetY(1, 21));
+    }
+
+    @Test
+    public void stepsOncePerPeriod() {
+        PixelShift shift = new PixelShift(2, 5);
+        for (int minute = 0; minute < 5; minute++) {
+            assertEquals(shift.getOffsetX(0, 0), shift.getOffsetX(0, minute));
+            assertEquals(shift.getOffsetY(0, 0), shift.getOffsetY(0, minute));
+        }
+        assertTrue(shift.getOffsetX(0, 5) != shift.getOffsetX(0, 0)
+                || shift.getOffsetY(0, 5) != shift.getOffsetY(0, 0));
+    }
+
+    @Test
+    public void keepsEachPixelLitForLessThanTheThreshold() {
+        WatchFaceRenderer renderer = new WatchFaceRenderer();
+        renderer.setSurfaceSize(SIZE, SIZE);
+        renderer.setAmbient(true);
+        renderer.setBurnInProtection(true);
+        RasterDrawTarget target = new RasterDrawTarget(FaceRegistry.get(FaceRegistry.DEFAULT_FACE));
+
+        int[] litMinutes = new int[SIZE * SIZE];
+        int[] run = new int[SIZE * SIZE];
+        int longestRun = 0;
+        for (int minuteOfDay = 0; minuteOfDay < MINUTES_PER_DAY; minuteOfDay++) {
+            renderer.drawFrame(target, minuteOfDay / 60, minuteOfDay % 60, 0);
+            for (int i = 0; i < litMinutes.length; i++) {
+                if (target.mLit[i]) {
+                    litMinutes[i]++;
+                    run[i]++;
+                    longestRun = Math.max(longestRun, run[i]);
+                } else {
+                    run[i] = 0;
+                }
+            }
+        }
+        for (int i = 0; i < litMinutes.length; i++) {
+            assertTrue("pixel " + (i % SIZE) + "," + (i / SIZE) + " lit for " + litMinutes[i] + " minutes",
+                    litMinutes[i] <= MAX_LIT_MINUTES);
+        }
+        assertTrue("lit for " + longestRun + " minutes in a row", longestRun <= MAX_LIT_RUN_MINUTES);
+    }
+
+    /**
+     * Rasterizes the calls of the burn-in protected frames the way the engine's paints draw them,
+     * without antialiasing.
+     */
+    private static class RasterDrawTarget implements DrawTarget {
+        final boolean[] mLit = new boolean[SIZE * SIZE];
+        private final float[] mStrokeWidths = new float[PAINT_COUNT];
+
+        RasterDrawTarget(Face face) {
+            mStrokeWidths[PAINT_HOUR] = face.hourOutlineWidth;
+            mStrokeWidths[PAINT_MINUTE] = face.minuteOutlineWidth;
+            mStrokeWidths[PAINT_CENTER] = 2f;
+        }
+
+        @Override
+        public void drawColor(int color) {
+            Arrays.fill(mLit, false);
+        }
+
+        @Override
+        public void drawBackground() {
+            throw new AssertionError("No background in ambient mode");
+        }
+
+        @Override
+        public void drawStaticLayer(int layer) {
+            assertEquals(WatchFaceRenderer.LAYER_AMBIENT_BURN_IN, layer);
+            // Black, the ticks are left out with the burn-in protection.
+            drawColor(0xff000000);
+        }
+
+        @Override
+        public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+            throw new AssertionError("Solid line with the burn-in protection");
+        }
+
+        @Override
+        public void drawLines(float[] points, int offset, int count, int paint) {
+            float radius = mStrokeWidths[paint] / 2;
+            for (int i = offset; i + 4 <= offset + count; i += 4) {
+                float startX = points[i];
+                float startY = points[i + 1];
+                float stopX = points[i + 2];
+                float stopY = points[i + 3];
+                int left = Math.max((int) (Math.min(startX, stopX) - radius) - 1, 0);
+                int top = Math.max((int) (Math.min(startY, stopY) - radius) - 1, 0);
+                int right = Math.min((int) (Math.max(startX, stopX) + radius) + 2, SIZE);
+                int bottom = Math.min((int) (Math.max(startY, stopY) + radius) + 2, SIZE);
+                for (int y = top; y < bottom; y++) {
+                    for (int x = left; x < right; x++) {
+                        if (HandSpriteAtlas.covers(x, y, startX, startY, stopX, stopY, radius, true)) {
+                            mLit[y * SIZE + x] = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void drawOval(float left, float top, float right, float bottom, int paint) {
+            float centerX = (left + right) / 2;
+            float centerY = (top + bottom) / 2;
+            float radius = (right - left) / 2;
+            // The black hub is filled, the colored one only stroked.
+            boolean fill = paint == PAINT_CENTER_BLACK;
+            float halfStroke = fill ? 0 : mStrokeWidths[paint] / 2;
+            for (int y = (int) (top - halfStroke) - 1; y < bottom + halfStroke + 1; y++) {
+                for (int x = (int) (left - halfStroke) - 1; x < right + halfStroke + 1; x++) {
+                    float dx = x + 0.5f - centerX;
+                    float dy = y + 0.5f - centerY;
+                    float distance = (float) Math.sqrt(dx * dx + dy * dy);
+                    if (fill && distance <= radius) {
+                        mLit[y * SIZE + x] = false;
+                    } else if (!fill && Math.abs(distance - radius) <= halfStroke) {
+                        mLit[y * SIZE + x] = true;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.mieszkostelmach.stxwatchface.render;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Steady-state frames must not allocate, so that the garbage collector never pauses the second
+ * hand.
+ *
+ * @author Mieszko Stelmach
+ */
+public class WatchFaceRendererAllocationTest {
+    private static final int FRAMES = 10000;
+
+    @Test
+    public void interactiveFramesDoNotAllocate() {
+        assertEquals(0, allocatedBytes(false, false));
+    }
+
+    @Test
+    public void ambientFramesDoNotAllocate() {
+        assertEquals(0, allocatedBytes(true, false));
+    }
+
+    @Test
+    public void burnInFramesDoNotAllocate() {
+        assertEquals(0, allocatedBytes(true, true));
+    }
+
+    private static long allocatedBytes(boolean ambient, boolean burnInProtection) {
+        WatchFaceRenderer renderer = new WatchFaceRenderer();
+        renderer.setSurfaceSize(320, 320);
+        renderer.setAmbient(ambient);
+        renderer.setBurnInProtection(burnInProtection);
+        CountingDrawTarget target = new CountingDrawTarget();
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        // Warm up first, so that class loading and the like aren't counted.
+        drawFrames(renderer, target);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        drawFrames(renderer, target);
+        long after = threads.getThreadAllocatedBytes(threadId);
+        // The counter itself allocates the returned value boxes on some VMs, measure that too.
+        long overhead = threads.getThreadAllocatedBytes(threadId) - after;
+        return Math.max(0, after - before - overhead);
+    }
+
+    private static void drawFrames(WatchFaceRenderer renderer, DrawTarget target) {
+        for (int frame = 0; frame < FRAMES; frame++) {
+            int secondOfDay = frame * 7;
+            renderer.drawFrame(target, (secondOfDay / 3600) % 24, (secondOfDay / 60) % 60, secondOfDay % 60);
+        }
+    }
+
+    private static class CountingDrawTarget implements DrawTarget {
+        int mCalls;
+
+        @Override
+        public void drawColor(int color) {
+            mCalls++;
+        }
+
+        @Override
+        public void drawBackground() {
+            mCalls++;
+        }
+
+        @Override
+        public void drawStaticLayer(int layer) {
+            mCalls++;
+        }
+
+        @Override
+        public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+            mCalls++;
+        }
+
+        @Override
+        public void drawLines(float[] points, int offset, int count, int paint) {
+            mCalls++;
+        }
+
+        @Override
+        public void drawOval(float left, float top, float right, float bottom, int paint) {
+            mCalls++;
+        }
+    }
+}
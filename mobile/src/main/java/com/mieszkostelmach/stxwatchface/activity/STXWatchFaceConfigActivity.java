@@ -1,40 +1,118 @@
 package com.mieszkostelmach.stxwatchface.activity;
 
+import android.animation.ObjectAnimator;
 import android.app.Activity;
+import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.support.wearable.companion.WatchFaceCompanion;
 import android.util.Log;
+import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.widget.Button;
+import android.widget.ImageButton;
+import android.widget.RadioGroup;
 import android.widget.Toast;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
-import com.google.android.gms.wearable.DataMap;
-import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.Wearable;
 import com.mieszkostelmach.stxwatchface.R;
+import com.mieszkostelmach.stxwatchface.config.WatchFaceConfig;
+import com.mieszkostelmach.stxwatchface.face.Face;
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+import com.mieszkostelmach.stxwatchface.preview.WatchFacePreviewView;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigSchema;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigState;
+import com.mieszkostelmach.stxwatchface.sync.ConfigFanOut;
+import com.mieszkostelmach.stxwatchface.sync.ConfigRequestPipeline;
+import com.mieszkostelmach.stxwatchface.thumbnail.ThumbnailLoader;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Mieszko Stelmach
  *         Created on 04-01-2015.
  */
-public class STXWatchFaceConfigActivity extends Activity implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener, ResultCallback<DataApi.DataItemResult>, View.OnClickListener {
+public class STXWatchFaceConfigActivity extends Activity implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener, DataApi.DataListener, NodeApi.NodeListener, View.OnClickListener, ThumbnailLoader.Callback, ConfigFanOut.Listener {
 
     private static final String TAG = "STXWatchFaceConfig";
+    private static final int THUMBNAIL_FADE_MS = 150;
+
+    /**
+     * Each attempt of a config request gets this long, covering the watch's wait before it writes
+     * the config, the retries start after the backoff and double it each time.
+     */
+    private static final long REQUEST_TIMEOUT_MS = 5000;
+    private static final long REQUEST_BACKOFF_MS = 500;
+    private static final int REQUEST_MAX_ATTEMPTS = 3;
 
-    private static final String KEY_WATCH_FACE = "WATCH_FACE";
-    private static final String PATH_WITH_FEATURE = "/watch_face_config/STXWatchFace";
     private GoogleApiClient mGoogleApiClient;
+    /**
+     * The watch the screen was opened for, the screen shows its config. The changes go to all
+     * the connected watches.
+     */
     private String mPeerId;
 
+    /**
+     * Reads the config from the watches and sends them the changes, its config is the one the
+     * peer has with the changes still on their way on top.
+     */
+    private ConfigFanOut mFanOut;
+    /**
+     * Config as picked on the screen and shown in the preview, sent to the watch once applied.
+     */
+    private final ConfigState mPending = new ConfigState();
+
+    private WatchFacePreviewView mPreview;
+    private ThumbnailLoader mPreviewLoader;
+    private Button mApplyButton;
+
+    /**
+     * A button for each of the {@link FaceRegistry} faces, indexed by the face id.
+     */
+    private ImageButton[] mFaceButtons;
+    private int mSelectedFace = FaceRegistry.UNKNOWN;
+
+    /**
+     * The face backgrounds, indexed by the face id, to match the thumbnails with the buttons.
+     */
+    private int[] mFaceDrawables;
+    private ThumbnailLoader mThumbnailLoader;
+
+    /**
+     * Start of the screen: when it was created, how long it took to draw the first frame and how
+     * many thumbnails are yet to come.
+     */
+    private long mCreateMillis;
+    private long mFirstDrawMillis;
+    private int mThumbnailsPending;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        this.mCreateMillis = SystemClock.uptimeMillis();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_watch_face_config);
+        this.mThumbnailLoader = new ThumbnailLoader(this, getResources().getDimensionPixelSize(R.dimen.face_thumbnail_size));
+        setUpFaceButtons();
+        measureFirstDraw();
+        this.mPreview = (WatchFacePreviewView) findViewById(R.id.preview);
+        this.mPreviewLoader = new ThumbnailLoader(this, getResources().getDimensionPixelSize(R.dimen.preview_size));
+        this.mApplyButton = (Button) findViewById(R.id.apply);
 
         this.mPeerId = getIntent().getStringExtra(WatchFaceCompanion.EXTRA_PEER_ID);
         this.mGoogleApiClient = new GoogleApiClient.Builder(this)
@@ -42,6 +120,73 @@ public class STXWatchFaceConfigActivity extends Activity implements GoogleApiCli
                 .addOnConnectionFailedListener(this)
                 .addApi(Wearable.API)
                 .build();
+        this.mFanOut = new ConfigFanOut(new WearableTransport(), new HandlerScheduler(),
+                new ConfigRequestPipeline.Clock() {
+                    @Override
+                    public long currentTimeMillis() {
+                        return System.currentTimeMillis();
+                    }
+                }, this, mPeerId, REQUEST_TIMEOUT_MS, REQUEST_BACKOFF_MS, REQUEST_MAX_ATTEMPTS);
+    }
+
+    private void setUpFaceButtons() {
+        ViewGroup faces = (ViewGroup) findViewById(R.id.faces);
+        LayoutInflater inflater = getLayoutInflater();
+        this.mFaceButtons = new ImageButton[FaceRegistry.getCount()];
+        this.mFaceDrawables = new int[mFaceButtons.length];
+        this.mThumbnailsPending = mFaceButtons.length;
+        for (int id = 0; id < mFaceButtons.length; id++) {
+            Face face = FaceRegistry.get(id);
+            ImageButton button = (ImageButton) inflater.inflate(R.layout.face_button, faces, false);
+            button.setTag(face);
+            button.setOnClickListener(this);
+            faces.addView(button);
+            mFaceButtons[id] = button;
+            // The buttons are laid out at their final size, the thumbnails fill them in as they come.
+            mFaceDrawables[id] = getResources().getIdentifier(face.background, "drawable", getPackageName());
+            mThumbnailLoader.load(mFaceDrawables[id], this);
+        }
+    }
+
+    @Override
+    public void onThumbnailLoaded(int drawableId, Bitmap bitmap) {
+        for (int id = 0; id < mFaceDrawables.length; id++) {
+            if (mFaceDrawables[id] == drawableId && bitmap != null) {
+                mFaceButtons[id].setImageBitmap(bitmap);
+                ObjectAnimator.ofInt(mFaceButtons[id], "imageAlpha", 0, 255).setDuration(THUMBNAIL_FADE_MS).start();
+            }
+        }
+        if (--mThumbnailsPending == 0) {
+            reportStartTime();
+        }
+    }
+
+    private void measureFirstDraw() {
+        final View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                content.getViewTreeObserver().removeOnPreDrawListener(this);
+                mFirstDrawMillis = SystemClock.uptimeMillis() - mCreateMillis;
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Logs how long the screen took to draw its first frame and to show all the thumbnails, and
+     * tells the system it's fully drawn, which the system logs along with the launch time of the
+     * process ("Fully drawn").
+     */
+    private void reportStartTime() {
+        long thumbnailsMillis = SystemClock.uptimeMillis() - mCreateMillis;
+        if (Log.isLoggable(TAG, Log.INFO)) {
+            Log.i(TAG, "Config screen first drawn in " + mFirstDrawMillis + " ms, thumbnails shown in "
+                    + thumbnailsMillis + " ms, " + mThumbnailLoader.getStats());
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            reportFullyDrawn();
+        }
     }
 
     @Override
@@ -52,27 +197,127 @@ public class STXWatchFaceConfigActivity extends Activity implements GoogleApiCli
 
     @Override
     protected void onStop() {
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Config requests: " + mFanOut.getStats());
+        }
+        mFanOut.shutdown();
         if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
+            Wearable.DataApi.removeListener(mGoogleApiClient, this);
+            Wearable.NodeApi.removeListener(mGoogleApiClient, this);
             mGoogleApiClient.disconnect();
         }
         super.onStop();
     }
 
+    @Override
+    protected void onDestroy() {
+        mThumbnailLoader.quit();
+        mPreviewLoader.quit();
+        super.onDestroy();
+    }
+
     @Override
     public void onConnected(Bundle bundle) {
         if (Log.isLoggable(TAG, Log.DEBUG)) {
             Log.d(TAG, "onConnected: " + bundle);
         }
 
-        if (mPeerId != null) {
-            Uri.Builder builder = new Uri.Builder();
-            Uri uri = builder.scheme("wear").path(PATH_WITH_FEATURE).authority(mPeerId).build();
-            Wearable.DataApi.getDataItem(mGoogleApiClient, uri).setResultCallback(this);
-        } else {
-            displayNoConnectedDeviceDialog();
+        // Each watch writes its config once it has taken the changes, which acknowledges them.
+        Wearable.DataApi.addListener(mGoogleApiClient, this);
+        Wearable.NodeApi.addListener(mGoogleApiClient, this);
+        mFanOut.findNodes();
+    }
+
+    @Override
+    public void onPeerConnected(Node node) {
+        mFanOut.findNodes();
+    }
+
+    @Override
+    public void onPeerDisconnected(Node node) {
+        mFanOut.findNodes();
+    }
+
+    /**
+     * Sends the requests of the fan-out through the Data Layer, without waiting for the results.
+     */
+    private class WearableTransport implements ConfigFanOut.Transport {
+        @Override
+        public void findNodes() {
+            Wearable.NodeApi.getConnectedNodes(mGoogleApiClient).setResultCallback(
+                    new ResultCallback<NodeApi.GetConnectedNodesResult>() {
+                        @Override
+                        public void onResult(NodeApi.GetConnectedNodesResult connectedNodesResult) {
+                            if (!connectedNodesResult.getStatus().isSuccess()) {
+                                // Tried again when a watch comes or goes.
+                                return;
+                            }
+                            List<String> nodeIds = new ArrayList<>();
+                            for (Node node : connectedNodesResult.getNodes()) {
+                                nodeIds.add(node.getId());
+                            }
+                            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                                Log.d(TAG, "Connected nodes: " + nodeIds);
+                            }
+                            mFanOut.onNodesFound(nodeIds);
+                            if (nodeIds.isEmpty()) {
+                                displayNoConnectedDeviceDialog();
+                            }
+                        }
+                    });
+        }
+
+        @Override
+        public void fetch(final String nodeId, final int requestId) {
+            Wearable.DataApi.getDataItem(mGoogleApiClient, getConfigUri(nodeId)).setResultCallback(
+                    new ResultCallback<DataApi.DataItemResult>() {
+                        @Override
+                        public void onResult(DataApi.DataItemResult dataItemResult) {
+                            DataItem dataItem = dataItemResult.getDataItem();
+                            mFanOut.onFetched(nodeId, requestId, dataItemResult.getStatus().isSuccess(),
+                                    dataItem != null ? dataItem.getData() : null);
+                        }
+                    });
+        }
+
+        @Override
+        public void send(final String nodeId, final int requestId, byte[] data) {
+            Wearable.MessageApi.sendMessage(mGoogleApiClient, nodeId, WatchFaceConfig.PATH_WITH_FEATURE, data)
+                    .setResultCallback(new ResultCallback<MessageApi.SendMessageResult>() {
+                        @Override
+                        public void onResult(MessageApi.SendMessageResult sendMessageResult) {
+                            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                                Log.d(TAG, "Config message " + requestId + " to " + nodeId + ": "
+                                        + sendMessageResult.getStatus());
+                            }
+                            mFanOut.onSent(nodeId, requestId, sendMessageResult.getStatus().isSuccess());
+                        }
+                    });
+        }
+    }
+
+    private static class HandlerScheduler implements ConfigRequestPipeline.Scheduler {
+        private final Handler mHandler = new Handler();
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            mHandler.postDelayed(task, delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            mHandler.removeCallbacks(task);
         }
     }
 
+    private static Uri getConfigUri(String nodeId) {
+        return new Uri.Builder()
+                .scheme("wear")
+                .path(WatchFaceConfig.PATH_WITH_FEATURE)
+                .authority(nodeId)
+                .build();
+    }
+
     private void displayNoConnectedDeviceDialog() {
         Toast.makeText(this, R.string.no_device_connected, Toast.LENGTH_SHORT).show();
     }
@@ -92,96 +337,123 @@ public class STXWatchFaceConfigActivity extends Activity implements GoogleApiCli
     }
 
     @Override
-    public void onResult(DataApi.DataItemResult dataItemResult) {
-        if (dataItemResult.getStatus().isSuccess() && dataItemResult.getDataItem() != null) {
-            DataItem configDataItem = dataItemResult.getDataItem();
-            DataMapItem dataMapItem = DataMapItem.fromDataItem(configDataItem);
-            DataMap config = dataMapItem.getDataMap();
-            setUpSettings(config);
-        } else {
-            // If DataItem with the current config can't be retrieved.
-            setUpSettings(null);
-        }
-    }
-
-    private void setUpSettings(DataMap config) {
-        if (config == null || !config.containsKey(KEY_WATCH_FACE)) {
-            //select default
-            findViewById(R.id.super_hero_face).setSelected(true);
-            findViewById(R.id.super_woman_hero_face).setSelected(false);
-            findViewById(R.id.super_hero_alpha_face).setSelected(false);
-            findViewById(R.id.super_woman_hero_alpha_face).setSelected(false);
-        } else {
-            String faceSelected = config.getString(KEY_WATCH_FACE);
-            switch(faceSelected) {
-                case "superhero":
-                    findViewById(R.id.super_hero_face).setSelected(true);
-                    findViewById(R.id.super_woman_hero_face).setSelected(false);
-                    findViewById(R.id.super_hero_alpha_face).setSelected(false);
-                    findViewById(R.id.super_woman_hero_alpha_face).setSelected(false);
-                    break;
-                case "superwhero":
-                    findViewById(R.id.super_hero_face).setSelected(false);
-                    findViewById(R.id.super_woman_hero_face).setSelected(true);
-                    findViewById(R.id.super_hero_alpha_face).setSelected(false);
-                    findViewById(R.id.super_woman_hero_alpha_face).setSelected(false);
-                    break;
-                case "superhero_alpha":
-                    findViewById(R.id.super_hero_face).setSelected(false);
-                    findViewById(R.id.super_woman_hero_face).setSelected(false);
-                    findViewById(R.id.super_hero_alpha_face).setSelected(true);
-                    findViewById(R.id.super_woman_hero_alpha_face).setSelected(false);
-                    break;
-                case "superwhero_alpha":
-                    findViewById(R.id.super_hero_face).setSelected(false);
-                    findViewById(R.id.super_woman_hero_face).setSelected(false);
-                    findViewById(R.id.super_hero_alpha_face).setSelected(false);
-                    findViewById(R.id.super_woman_hero_alpha_face).setSelected(true);
-                    break;
+    public void onDataChanged(DataEventBuffer dataEvents) {
+        try {
+            for (DataEvent dataEvent : dataEvents) {
+                DataItem dataItem = dataEvent.getDataItem();
+                if (dataEvent.getType() == DataEvent.TYPE_CHANGED
+                        && dataItem.getUri().getPath().equals(WatchFaceConfig.PATH_WITH_FEATURE)) {
+                    mFanOut.onWatchConfig(dataItem.getUri().getAuthority(), dataItem.getData());
+                }
             }
+        } finally {
+            dataEvents.close();
         }
     }
 
+    /**
+     * The choices that haven't been applied yet are kept, otherwise the screen follows the config,
+     * e.g. once it's fetched or when a change is rolled back.
+     */
     @Override
-    public void onClick(View v) {
-        v.setSelected(true);
-        String tag = (String) v.getTag();
-        int id = v.getId();
-        switch(id) {
-            case R.id.super_hero_face:
-                findViewById(R.id.super_woman_hero_face).setSelected(false);
-                findViewById(R.id.super_hero_alpha_face).setSelected(false);
-                findViewById(R.id.super_woman_hero_alpha_face).setSelected(false);
+    public void onConfigChanged(ConfigState config) {
+        if (!mApplyButton.isEnabled()) {
+            // If DataItem with the current config can't be retrieved, the defaults are selected.
+            mPending.copyFrom(config);
+            setUpSettings(mPending);
+        }
+        updateApplyButton();
+    }
+
+    @Override
+    public void onChangeFailed(String nodeId, ConfigState change) {
+        Log.w(TAG, "Config change not delivered to " + nodeId + ": " + change + ", " + mFanOut.getStats());
+        Toast.makeText(this, R.string.config_not_delivered, Toast.LENGTH_SHORT).show();
+    }
+
+    private void setUpSettings(ConfigState config) {
+        RadioGroup sweepFps = (RadioGroup) findViewById(R.id.sweep_fps);
+        switch (config.get(ConfigSchema.FIELD_SWEEP_FPS, 0)) {
+            case 15:
+                sweepFps.check(R.id.sweep_15);
                 break;
-            case R.id.super_woman_hero_face:
-                findViewById(R.id.super_hero_face).setSelected(false);
-                findViewById(R.id.super_hero_alpha_face).setSelected(false);
-                findViewById(R.id.super_woman_hero_alpha_face).setSelected(false);
+            case 30:
+                sweepFps.check(R.id.sweep_30);
                 break;
-            case R.id.super_hero_alpha_face:
-                findViewById(R.id.super_hero_face).setSelected(false);
-                findViewById(R.id.super_woman_hero_face).setSelected(false);
-                findViewById(R.id.super_woman_hero_alpha_face).setSelected(false);
+            case 60:
+                sweepFps.check(R.id.sweep_60);
                 break;
-            case R.id.super_woman_hero_alpha_face:
-                findViewById(R.id.super_hero_face).setSelected(false);
-                findViewById(R.id.super_woman_hero_face).setSelected(false);
-                findViewById(R.id.super_hero_alpha_face).setSelected(false);
+            default:
+                sweepFps.check(R.id.sweep_off);
                 break;
         }
-        sendConfig(tag);
+        mPreview.setSweepFps(config.get(ConfigSchema.FIELD_SWEEP_FPS, WatchFaceConfig.SWEEP_OFF));
+
+        // Nothing selected if the face was picked in a newer version of the app.
+        selectFace(config.get(ConfigSchema.FIELD_FACE, FaceRegistry.DEFAULT_FACE));
     }
 
-    private void sendConfig(String setting) {
-        if (mPeerId != null) {
-            DataMap config = new DataMap();
-            config.putString(KEY_WATCH_FACE, setting);
-            byte[] rawData = config.toByteArray();
-            Wearable.MessageApi.sendMessage(mGoogleApiClient, mPeerId, PATH_WITH_FEATURE, rawData);
+    private void selectFace(int faceId) {
+        if (FaceRegistry.isKnown(mSelectedFace)) {
+            mFaceButtons[mSelectedFace].setSelected(false);
+        }
+        this.mSelectedFace = faceId;
+        if (FaceRegistry.isKnown(faceId)) {
+            mFaceButtons[faceId].setSelected(true);
+            mPreview.setFace(FaceRegistry.get(faceId));
+            // The previous background stays until the new one is decoded, the faces share the colors.
+            mPreviewLoader.load(mFaceDrawables[faceId], new ThumbnailLoader.Callback() {
+                @Override
+                public void onThumbnailLoaded(int drawableId, Bitmap bitmap) {
+                    if (bitmap != null && FaceRegistry.isKnown(mSelectedFace)
+                            && mFaceDrawables[mSelectedFace] == drawableId) {
+                        mPreview.setBackgroundBitmap(bitmap);
+                    }
+                }
+            });
+        }
+    }
 
-            if (Log.isLoggable(TAG, Log.DEBUG)) {
-                Log.d(TAG, "Sent watch face config message: " + KEY_WATCH_FACE + " -> " + setting);
-            }
+    @Override
+    public void onClick(View v) {
+        Face face = (Face) v.getTag();
+        selectFace(face.id);
+        mPending.set(ConfigSchema.FIELD_FACE, face.id);
+        updateApplyButton();
+    }
+
+    public void onSweepClick(View v) {
+        int sweepFps = Integer.parseInt((String) v.getTag());
+        mPending.set(ConfigSchema.FIELD_SWEEP_FPS, sweepFps);
+        mPreview.setSweepFps(sweepFps);
+        updateApplyButton();
+    }
+
+    public void onApplyClick(View v) {
+        sendConfig();
+    }
+
+    /**
+     * The choices are only previewed until applied, so there's something to apply only when they
+     * differ from what the watch has or is about to get.
+     */
+    private void updateApplyButton() {
+        mApplyButton.setEnabled(WatchFaceConfig.collectChanges(mPending, mFanOut.getConfig(), new ConfigState()));
+    }
+
+    /**
+     * Sends all the pending changes the watch doesn't have yet in one message. The screen shows
+     * them as applied right away, they're rolled back if they don't get through.
+     */
+    private void sendConfig() {
+        if (mFanOut.getNodeCount() == 0) {
+            displayNoConnectedDeviceDialog();
+            return;
+        }
+        ConfigState change = new ConfigState();
+        if (WatchFaceConfig.collectChanges(mPending, mFanOut.getConfig(), change)) {
+            mFanOut.submit(change);
         }
+        updateApplyButton();
     }
 }
@@ -0,0 +1,130 @@
+package com.mieszkostelmach.stxwatchface.preview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.mieszkostelmach.stxwatchface.render.DrawTarget;
+import com.mieszkostelmach.stxwatchface.render.HandGeometry;
+import com.mieszkostelmach.stxwatchface.render.WatchFaceRenderer;
+
+/**
+ * {@link DrawTarget} drawing the preview on the Canvas of a view, the phone side counterpart of
+ * the watch's own. The static layers are kept as bitmaps of the view size, redrawn when the face
+ * or the background changes.
+ *
+ * @author Mieszko Stelmach
+ */
+class PreviewDrawTarget implements DrawTarget {
+    private final WatchFaceRenderer mRenderer;
+    private final Paint[] mPaints = new Paint[PAINT_COUNT];
+    private final Paint mBackgroundPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect mBackgroundBounds = new Rect();
+    private final RectF mOval = new RectF();
+
+    private final Bitmap[] mStaticLayers = new Bitmap[WatchFaceRenderer.LAYER_COUNT];
+    private final boolean[] mStaticLayerDirty = new boolean[WatchFaceRenderer.LAYER_COUNT];
+    private final Canvas mLayerCanvas = new Canvas();
+
+    private Canvas mCanvas;
+    private Bitmap mBackgroundBitmap;
+
+    PreviewDrawTarget(WatchFaceRenderer renderer) {
+        this.mRenderer = renderer;
+    }
+
+    void setPaint(int paint, Paint value) {
+        mPaints[paint] = value;
+    }
+
+    void setCanvas(Canvas canvas) {
+        this.mCanvas = canvas;
+    }
+
+    /**
+     * Replaces the background, scaled to the view when the static layers are redrawn.
+     */
+    void setBackgroundBitmap(Bitmap backgroundBitmap) {
+        this.mBackgroundBitmap = backgroundBitmap;
+        invalidateStaticLayers();
+    }
+
+    /**
+     * Drops the static layers, e.g. when the view size changes. They're allocated again, at the
+     * size of the surface, when they're drawn next time.
+     */
+    void releaseStaticLayers() {
+        for (int layer = 0; layer < WatchFaceRenderer.LAYER_COUNT; layer++) {
+            if (mStaticLayers[layer] != null) {
+                mStaticLayers[layer].recycle();
+                mStaticLayers[layer] = null;
+            }
+        }
+    }
+
+    void invalidateStaticLayers() {
+        for (int layer = 0; layer < WatchFaceRenderer.LAYER_COUNT; layer++) {
+            mStaticLayerDirty[layer] = true;
+        }
+    }
+
+    @Override
+    public void drawColor(int color) {
+        mCanvas.drawColor(color);
+    }
+
+    @Override
+    public void drawBackground() {
+        if (mBackgroundBitmap == null) {
+            mCanvas.drawColor(Color.BLACK);
+            return;
+        }
+        mBackgroundBounds.set(0, 0, mCanvas.getWidth(), mCanvas.getHeight());
+        mCanvas.drawBitmap(mBackgroundBitmap, null, mBackgroundBounds, mBackgroundPaint);
+    }
+
+    @Override
+    public void drawStaticLayer(int layer) {
+        if (mStaticLayers[layer] == null) {
+            HandGeometry geometry = mRenderer.getGeometry();
+            mStaticLayers[layer] = Bitmap.createBitmap(geometry.getWidth(), geometry.getHeight(),
+                    Bitmap.Config.ARGB_8888);
+            mStaticLayerDirty[layer] = true;
+        }
+        if (mStaticLayerDirty[layer]) {
+            Bitmap bitmap = mStaticLayers[layer];
+            bitmap.eraseColor(Color.TRANSPARENT);
+            mLayerCanvas.setBitmap(bitmap);
+            Canvas viewCanvas = mCanvas;
+            this.mCanvas = mLayerCanvas;
+            try {
+                mRenderer.drawStaticLayer(this, layer);
+            } finally {
+                this.mCanvas = viewCanvas;
+                mLayerCanvas.setBitmap(null);
+            }
+            mStaticLayerDirty[layer] = false;
+        }
+        mCanvas.drawBitmap(mStaticLayers[layer], 0, 0, null);
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+        mCanvas.drawLine(startX, startY, stopX, stopY, mPaints[paint]);
+    }
+
+    @Override
+    public void drawLines(float[] points, int offset, int count, int paint) {
+        mCanvas.drawLines(points, offset, count, mPaints[paint]);
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, int paint) {
+        // The float overload is API 21.
+        mOval.set(left, top, right, bottom);
+        mCanvas.drawOval(mOval, mPaints[paint]);
+    }
+}
@@ -0,0 +1,167 @@
+package com.mieszkostelmach.stxwatchface.preview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.mieszkostelmach.stxwatchface.face.Face;
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+import com.mieszkostelmach.stxwatchface.render.DrawTarget;
+import com.mieszkostelmach.stxwatchface.render.HandGeometry;
+import com.mieszkostelmach.stxwatchface.render.WatchFaceRenderer;
+
+import java.util.Calendar;
+
+/**
+ * Live preview of a watch face, drawn by the same {@link WatchFaceRenderer} as the watch, at the
+ * size of the view. The hands show the current time.
+ * <p/>
+ * The frames are throttled: a ticking second hand is redrawn once a second, on the second, a
+ * sweeping one at its frame rate but at most {@link #MAX_FPS}. Nothing is drawn while the view
+ * isn't visible.
+ *
+ * @author Mieszko Stelmach
+ */
+public class WatchFacePreviewView extends View {
+    /**
+     * A config screen doesn't need to spend the phone's battery on more.
+     */
+    private static final int MAX_FPS = 30;
+
+    private final WatchFaceRenderer mRenderer = new WatchFaceRenderer();
+    private final PreviewDrawTarget mDrawTarget = new PreviewDrawTarget(mRenderer);
+    private final Calendar mCalendar = Calendar.getInstance();
+
+    private final Paint mHourPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mMinutePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mSecondPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTickPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mCenterPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private final Runnable mFrameTask = new Runnable() {
+        @Override
+        public void run() {
+            invalidate();
+        }
+    };
+
+    private int mSweepFps;
+    private boolean mVisible;
+
+    public WatchFacePreviewView(Context context) {
+        this(context, null);
+    }
+
+    public WatchFacePreviewView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mHourPaint.setStrokeCap(Paint.Cap.ROUND);
+        mMinutePaint.setStrokeCap(Paint.Cap.ROUND);
+        mSecondPaint.setStrokeCap(Paint.Cap.ROUND);
+        mCenterPaint.setStrokeWidth(2.f);
+        mDrawTarget.setPaint(DrawTarget.PAINT_HOUR, mHourPaint);
+        mDrawTarget.setPaint(DrawTarget.PAINT_MINUTE, mMinutePaint);
+        mDrawTarget.setPaint(DrawTarget.PAINT_SECOND, mSecondPaint);
+        mDrawTarget.setPaint(DrawTarget.PAINT_TICK, mTickPaint);
+        mDrawTarget.setPaint(DrawTarget.PAINT_CENTER, mCenterPaint);
+        setFace(FaceRegistry.get(FaceRegistry.DEFAULT_FACE));
+    }
+
+    /**
+     * Shows the colors and the hands of the face. Its background is set separately, once it's
+     * decoded, see {@link #setBackgroundBitmap(Bitmap)}.
+     */
+    public void setFace(Face face) {
+        // Same paints as the watch in interactive mode.
+        mHourPaint.setColor(face.hourColor);
+        mMinutePaint.setColor(face.minuteColor);
+        mSecondPaint.setColor(face.secondColor);
+        mTickPaint.setColor(face.tickColor);
+        mCenterPaint.setColor(face.centerColor);
+        mRenderer.setFace(face);
+        applyStrokeWidths();
+        mDrawTarget.invalidateStaticLayers();
+        invalidate();
+    }
+
+    /**
+     * Sets the hand widths of the face, scaled to the view like the lengths of the hands.
+     */
+    private void applyStrokeWidths() {
+        Face face = mRenderer.getFace();
+        HandGeometry geometry = mRenderer.getGeometry();
+        float scale = geometry != null ? geometry.getScale() : 1f;
+        mHourPaint.setStrokeWidth(scale * face.hourWidth);
+        mMinutePaint.setStrokeWidth(scale * face.minuteWidth);
+        mSecondPaint.setStrokeWidth(scale * face.secondWidth);
+        mTickPaint.setStrokeWidth(scale * face.tickWidth);
+    }
+
+    /**
+     * The face background, scaled to the view. Null shows a black background until it's there.
+     */
+    public void setBackgroundBitmap(Bitmap background) {
+        mDrawTarget.setBackgroundBitmap(background);
+        invalidate();
+    }
+
+    /**
+     * Frames per second of the sweeping second hand, 0 for the ticking one.
+     */
+    public void setSweepFps(int sweepFps) {
+        this.mSweepFps = sweepFps;
+        mRenderer.setSweep(sweepFps > 0);
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        if (width > 0 && height > 0 && mRenderer.setSurfaceSize(width, height)) {
+            applyStrokeWidths();
+            mDrawTarget.releaseStaticLayers();
+        }
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        this.mVisible = visibility == VISIBLE;
+        if (mVisible) {
+            invalidate();
+        } else {
+            removeCallbacks(mFrameTask);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(mFrameTask);
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mRenderer.getGeometry() == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        mCalendar.setTimeInMillis(now);
+        mDrawTarget.setCanvas(canvas);
+        mRenderer.drawFrame(mDrawTarget, mCalendar.get(Calendar.HOUR_OF_DAY), mCalendar.get(Calendar.MINUTE),
+                mCalendar.get(Calendar.SECOND), mCalendar.get(Calendar.MILLISECOND));
+        mDrawTarget.setCanvas(null);
+        scheduleNextFrame(now);
+    }
+
+    private void scheduleNextFrame(long now) {
+        removeCallbacks(mFrameTask);
+        if (!mVisible) {
+            return;
+        }
+        long interval = mSweepFps > 0 ? 1000 / Math.min(mSweepFps, MAX_FPS) : 1000;
+        postDelayed(mFrameTask, interval - now % interval);
+    }
+}
@@ -0,0 +1,314 @@
+package com.mieszkostelmach.stxwatchface.sync;
+
+import com.mieszkostelmach.stxwatchface.protocol.ConfigSchema;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigState;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the config of all the connected watches in step. Each node gets its own
+ * {@link ConfigRequestPipeline}, so the changes go out to all of them at once and each node's
+ * config, and the revision it last applied, is tracked on its own. The fields a node already has
+ * with the same value aren't sent to it, a node that's current isn't sent anything at all. The
+ * nodes found after a change was made get it once their config has been read.
+ * <p/>
+ * The screen follows the config of one node, the primary: the one the companion was opened for if
+ * it's connected, otherwise the first one found.
+ * <p/>
+ * Not thread safe, all the calls are meant to come from the main thread, where the
+ * GoogleApiClient callbacks come in. This class doesn't depend on the Android framework.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ConfigFanOut {
+    /**
+     * The Data Layer side, e.g. a GoogleApiClient with the NodeApi.
+     */
+    public interface Transport {
+        /**
+         * Starts looking up the connected nodes, {@link ConfigFanOut#onNodesFound} is called with
+         * their ids once they're known.
+         */
+        void findNodes();
+
+        /**
+         * See {@link ConfigRequestPipeline.Transport#fetch(int)}, the results are passed to
+         * {@link ConfigFanOut#onFetched}.
+         */
+        void fetch(String nodeId, int requestId);
+
+        /**
+         * See {@link ConfigRequestPipeline.Transport#send(int, byte[])}, the results are passed to
+         * {@link ConfigFanOut#onSent}.
+         */
+        void send(String nodeId, int requestId, byte[] data);
+    }
+
+    public interface Listener {
+        /**
+         * The config of the primary node has changed, see
+         * {@link ConfigRequestPipeline.Listener#onConfigChanged(ConfigState)}.
+         */
+        void onConfigChanged(ConfigState config);
+
+        /**
+         * The change didn't get through to the node and has been rolled back there.
+         */
+        void onChangeFailed(String nodeId, ConfigState change);
+    }
+
+    private final Transport mTransport;
+    private final ConfigRequestPipeline.Scheduler mScheduler;
+    private final ConfigRequestPipeline.Clock mClock;
+    private final Listener mListener;
+    private final String mPreferredNodeId;
+    private final long mTimeoutMillis;
+    private final long mBackoffMillis;
+    private final int mMaxAttempts;
+
+    /**
+     * The connected nodes, in the order they were found.
+     */
+    private final Map<String, Node> mNodes = new LinkedHashMap<>();
+    private Node mPrimary;
+    /**
+     * The values changed so far, for the nodes yet to be found.
+     */
+    private final ConfigState mChanged = new ConfigState();
+    private final ConfigState mEmpty = new ConfigState();
+    /**
+     * The requests are numbered across all the nodes, those of the pipelines start over for each
+     * node, including the one found again after it was gone.
+     */
+    private int mNextRequestId = 1;
+    private int mSkipped;
+
+    /**
+     * The preferred node may be null, the timeouts, the backoff and the attempts apply to the
+     * requests to each node, see {@link ConfigRequestPipeline}.
+     */
+    public ConfigFanOut(Transport transport, ConfigRequestPipeline.Scheduler scheduler, ConfigRequestPipeline.Clock clock,
+                        Listener listener, String preferredNodeId, long timeoutMillis, long backoffMillis,
+                        int maxAttempts) {
+        this.mTransport = transport;
+        this.mScheduler = scheduler;
+        this.mClock = clock;
+        this.mListener = listener;
+        this.mPreferredNodeId = preferredNodeId;
+        this.mTimeoutMillis = timeoutMillis;
+        this.mBackoffMillis = backoffMillis;
+        this.mMaxAttempts = maxAttempts;
+    }
+
+    /**
+     * Starts looking up the connected nodes, e.g. once connected or when a node comes or goes.
+     */
+    public void findNodes() {
+        mTransport.findNodes();
+    }
+
+    /**
+     * Reads the config of the nodes not known before and drops the ones that are gone, along with
+     * their requests.
+     */
+    public void onNodesFound(Collection<String> nodeIds) {
+        Iterator<Node> nodes = mNodes.values().iterator();
+        while (nodes.hasNext()) {
+            Node node = nodes.next();
+            if (!nodeIds.contains(node.mId)) {
+                node.mPipeline.shutdown();
+                nodes.remove();
+            }
+        }
+        for (String nodeId : nodeIds) {
+            if (!mNodes.containsKey(nodeId)) {
+                mNodes.put(nodeId, new Node(nodeId));
+            }
+        }
+        Node primary = mPrimary;
+        if (mNodes.containsKey(mPreferredNodeId)) {
+            mPrimary = mNodes.get(mPreferredNodeId);
+        } else if (mPrimary == null || !mNodes.containsKey(mPrimary.mId)) {
+            mPrimary = mNodes.isEmpty() ? null : mNodes.values().iterator().next();
+        }
+        if (mPrimary != primary && mPrimary != null && mPrimary.mFetched) {
+            mListener.onConfigChanged(mPrimary.mPipeline.getConfig());
+        }
+        for (Node node : mNodes.values()) {
+            if (!node.mFetched) {
+                node.mPipeline.fetch();
+            }
+        }
+    }
+
+    public int getNodeCount() {
+        return mNodes.size();
+    }
+
+    /**
+     * Returns the id of the node the screen follows, null if there's no node.
+     */
+    public String getPrimaryNodeId() {
+        return mPrimary != null ? mPrimary.mId : null;
+    }
+
+    /**
+     * Returns the config of the primary node, see {@link ConfigRequestPipeline#getConfig()}.
+     */
+    public ConfigState getConfig() {
+        return mPrimary != null ? mPrimary.mPipeline.getConfig() : mEmpty;
+    }
+
+    /**
+     * Returns the revision of the config the node last wrote, 0 if it hasn't been read.
+     */
+    public long getAppliedRevision(String nodeId) {
+        Node node = mNodes.get(nodeId);
+        return node != null ? node.mPipeline.getWatchConfig().getRevision() : 0;
+    }
+
+    /**
+     * Returns whether a change is yet to be acknowledged by any of the nodes.
+     */
+    public boolean isSending() {
+        for (Node node : mNodes.values()) {
+            if (node.mPipeline.isSending()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends the values of the fields set in the change to all the nodes which don't have them
+     * yet, see {@link ConfigRequestPipeline#submit(ConfigState)}. Returns whether any of the
+     * nodes is sent anything.
+     */
+    public boolean submit(ConfigState values) {
+        for (int field = 0; field < ConfigSchema.FIELD_COUNT; field++) {
+            if (values.has(field)) {
+                mChanged.set(field, values.get(field, 0));
+            }
+        }
+        boolean sent = false;
+        for (Node node : mNodes.values()) {
+            if (node.mPipeline.submit(values)) {
+                sent = true;
+            } else {
+                mSkipped++;
+            }
+        }
+        return sent;
+    }
+
+    public void onFetched(String nodeId, int requestId, boolean success, byte[] data) {
+        Node node = mNodes.get(nodeId);
+        if (node != null && requestId == node.mFetchId) {
+            node.mPipeline.onFetched(node.mPipelineFetchId, success, data);
+        }
+    }
+
+    public void onSent(String nodeId, int requestId, boolean success) {
+        Node node = mNodes.get(nodeId);
+        if (node != null && requestId == node.mSendId) {
+            node.mPipeline.onSent(node.mPipelineSendId, success);
+        }
+    }
+
+    /**
+     * The node wrote its config, see {@link ConfigRequestPipeline#onWatchConfig(byte[])}. Ignored
+     * if the node isn't known.
+     */
+    public void onWatchConfig(String nodeId, byte[] data) {
+        Node node = mNodes.get(nodeId);
+        if (node != null) {
+            node.mPipeline.onWatchConfig(data);
+        }
+    }
+
+    /**
+     * Drops all the nodes and their requests, e.g. when the connection is closed. They're found
+     * and read again with the next {@link #findNodes()}.
+     */
+    public void shutdown() {
+        for (Node node : mNodes.values()) {
+            node.mPipeline.shutdown();
+        }
+        mNodes.clear();
+        mPrimary = null;
+        mChanged.clear();
+    }
+
+    /**
+     * Returns the request counts of each node, for the logs.
+     */
+    public String getStats() {
+        StringBuilder stats = new StringBuilder();
+        stats.append("nodes=").append(mNodes.size()).append(" skipped=").append(mSkipped);
+        for (Node node : mNodes.values()) {
+            stats.append(", ").append(node.mId).append(": ").append(node.mPipeline.getStats());
+        }
+        return stats.toString();
+    }
+
+    /**
+     * A connected node and the requests to it.
+     */
+    private class Node implements ConfigRequestPipeline.Transport, ConfigRequestPipeline.Listener {
+        final String mId;
+        final ConfigRequestPipeline mPipeline;
+        /**
+         * Whether the config has been read, or given up on, and the node brought up to date.
+         */
+        boolean mFetched;
+        /**
+         * The latest requests of the pipeline, under their ids and under those of the pipeline.
+         */
+        int mFetchId;
+        int mPipelineFetchId;
+        int mSendId;
+        int mPipelineSendId;
+
+        Node(String id) {
+            this.mId = id;
+            this.mPipeline = new ConfigRequestPipeline(this, mScheduler, mClock, this, mTimeoutMillis,
+                    mBackoffMillis, mMaxAttempts);
+        }
+
+        @Override
+        public void fetch(int requestId) {
+            mPipelineFetchId = requestId;
+            mFetchId = mNextRequestId++;
+            mTransport.fetch(mId, mFetchId);
+        }
+
+        @Override
+        public void send(int requestId, byte[] data) {
+            mPipelineSendId = requestId;
+            mSendId = mNextRequestId++;
+            mTransport.send(mId, mSendId, data);
+        }
+
+        @Override
+        public void onConfigChanged(ConfigState config) {
+            if (!mFetched && !mPipeline.isFetching()) {
+                mFetched = true;
+                // Skips what the node has already, if there's anything left the config changes again.
+                if (!mChanged.isEmpty() && mPipeline.submit(mChanged)) {
+                    return;
+                }
+            }
+            if (this == mPrimary) {
+                mListener.onConfigChanged(config);
+            }
+        }
+
+        @Override
+        public void onChangeFailed(ConfigState change) {
+            mListener.onChangeFailed(mId, change);
+        }
+    }
+}
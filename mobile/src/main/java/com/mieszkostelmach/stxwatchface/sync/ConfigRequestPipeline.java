@@ -0,0 +1,392 @@
+package com.mieszkostelmach.stxwatchface.sync;
+
+import com.mieszkostelmach.stxwatchface.protocol.ConfigCodec;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigSchema;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigState;
+
+/**
+ * Reads the config from the watch and sends the changes to it, without ever blocking the caller.
+ * Every request is given {@link #getTimeoutMillis()} to complete and is retried with an
+ * exponential backoff, up to {@link #getMaxAttempts()} attempts in all.
+ * <p/>
+ * The config shown is optimistic: the config the watch wrote with the changes it hasn't
+ * acknowledged yet on top. A change is acknowledged once the config the watch writes carries its
+ * revision, until then it's resent, which is safe as the watch drops the revisions it already
+ * has, and the config is read again in case the acknowledgement was missed. A change that isn't
+ * acknowledged after all the attempts is rolled back. Changes submitted while another one is in
+ * flight are merged and sent together after it, and the fields already on their way with the same
+ * value aren't sent again.
+ * <p/>
+ * Not thread safe, all the calls are meant to come from the main thread, where the
+ * GoogleApiClient callbacks come in. This class doesn't depend on the Android framework.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ConfigRequestPipeline {
+    /**
+     * The Data Layer side, e.g. a GoogleApiClient. The results may come in any order, or not at
+     * all, the stale ones are ignored.
+     */
+    public interface Transport {
+        /**
+         * Starts reading the config the watch wrote, {@link ConfigRequestPipeline#onFetched} is
+         * called with the request id once it arrives.
+         */
+        void fetch(int requestId);
+
+        /**
+         * Starts sending the encoded change to the watch, {@link ConfigRequestPipeline#onSent} is
+         * called with the request id once it's sent.
+         */
+        void send(int requestId, byte[] data);
+    }
+
+    /**
+     * Runs the timeouts and the retries, e.g. a Handler.
+     */
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+
+        void cancel(Runnable task);
+    }
+
+    /**
+     * The wall clock the revisions start from, so that they keep increasing even if the app is
+     * reinstalled or the config couldn't be read.
+     */
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    public interface Listener {
+        /**
+         * The config to show has changed, or has been fetched, or couldn't be.
+         */
+        void onConfigChanged(ConfigState config);
+
+        /**
+         * The change didn't get through after all the attempts and has been rolled back.
+         */
+        void onChangeFailed(ConfigState change);
+    }
+
+    private final Transport mTransport;
+    private final Scheduler mScheduler;
+    private final Clock mClock;
+    private final Listener mListener;
+    private final long mTimeoutMillis;
+    private final long mBackoffMillis;
+    private final int mMaxAttempts;
+
+    private final Runnable mFetchTimeoutTask = new Runnable() {
+        @Override
+        public void run() {
+            mTimeouts++;
+            mFetchId = 0;
+            retryFetch();
+        }
+    };
+    private final Runnable mFetchRetryTask = new Runnable() {
+        @Override
+        public void run() {
+            attemptFetch();
+        }
+    };
+    private final Runnable mSendTimeoutTask = new Runnable() {
+        @Override
+        public void run() {
+            mTimeouts++;
+            mSendId = 0;
+            // The acknowledgement may have been missed, and the watch doesn't write the same
+            // config again for the resent change.
+            fetch();
+            retrySend();
+        }
+    };
+    private final Runnable mSendRetryTask = new Runnable() {
+        @Override
+        public void run() {
+            attemptSend();
+        }
+    };
+
+    /**
+     * The config as the watch last wrote it.
+     */
+    private final ConfigState mWatchConfig = new ConfigState();
+    /**
+     * The change being sent, empty if there's none, and the changes waiting for it.
+     */
+    private final ConfigState mSending = new ConfigState();
+    private final ConfigState mQueued = new ConfigState();
+    private final ConfigState mShown = new ConfigState();
+    private byte[] mSendData;
+
+    private int mNextRequestId = 1;
+    private boolean mFetching;
+    /**
+     * Ids of the attempts in flight, 0 if there's none, so that the late results of the attempts
+     * that have timed out are ignored.
+     */
+    private int mFetchId;
+    private int mFetchAttempts;
+    private int mSendId;
+    private int mSendAttempts;
+
+    private int mFetches;
+    private int mSends;
+    private int mRetries;
+    private int mTimeouts;
+    private int mDeduplicated;
+    private int mFailures;
+
+    public ConfigRequestPipeline(Transport transport, Scheduler scheduler, Clock clock, Listener listener,
+                                 long timeoutMillis, long backoffMillis, int maxAttempts) {
+        this.mTransport = transport;
+        this.mScheduler = scheduler;
+        this.mClock = clock;
+        this.mListener = listener;
+        this.mTimeoutMillis = timeoutMillis;
+        this.mBackoffMillis = backoffMillis;
+        this.mMaxAttempts = maxAttempts;
+    }
+
+    public long getTimeoutMillis() {
+        return mTimeoutMillis;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    /**
+     * Returns the config to show, see {@link Listener#onConfigChanged(ConfigState)}.
+     */
+    public ConfigState getConfig() {
+        return mShown;
+    }
+
+    /**
+     * Returns the config as the watch last wrote it, without the changes still on their way.
+     */
+    public ConfigState getWatchConfig() {
+        return mWatchConfig;
+    }
+
+    /**
+     * Returns whether a change is yet to be acknowledged by the watch.
+     */
+    public boolean isSending() {
+        return !mSending.isEmpty();
+    }
+
+    public boolean isFetching() {
+        return mFetching;
+    }
+
+    /**
+     * Starts reading the config from the watch, unless it's being read already.
+     */
+    public void fetch() {
+        if (mFetching) {
+            return;
+        }
+        mFetching = true;
+        mFetchAttempts = 0;
+        attemptFetch();
+    }
+
+    /**
+     * Sends the values of the fields set in the change, in a new revision, their revisions in the
+     * change are ignored. The fields which the watch has, or is about to get, with the same value
+     * are dropped. Returns whether there's anything left to send.
+     */
+    public boolean submit(ConfigState values) {
+        ConfigState change = new ConfigState();
+        change.setRevision(Math.max(mShown.getRevision() + 1, mClock.currentTimeMillis()));
+        for (int field = 0; field < ConfigSchema.FIELD_COUNT; field++) {
+            if (!values.has(field)) {
+                continue;
+            }
+            int value = values.get(field, 0);
+            if (mShown.has(field) && mShown.get(field, value) == value) {
+                mDeduplicated++;
+                continue;
+            }
+            change.set(field, value);
+        }
+        if (change.isEmpty()) {
+            return false;
+        }
+        mQueued.merge(change);
+        sendNext();
+        updateShown();
+        return true;
+    }
+
+    public void onFetched(int requestId, boolean success, byte[] data) {
+        if (requestId != mFetchId) {
+            return;
+        }
+        mScheduler.cancel(mFetchTimeoutTask);
+        mFetchId = 0;
+        if (!success) {
+            retryFetch();
+            return;
+        }
+        mFetching = false;
+        if (data != null) {
+            onWatchConfig(data);
+        } else {
+            // Nothing written yet, the defaults are shown.
+            mWatchConfig.clear();
+            reconcile();
+        }
+    }
+
+    public void onSent(int requestId, boolean success) {
+        if (requestId != mSendId || success) {
+            // Sent, the attempt goes on until the watch acknowledges it.
+            return;
+        }
+        mScheduler.cancel(mSendTimeoutTask);
+        mSendId = 0;
+        retrySend();
+    }
+
+    /**
+     * The watch wrote its config, e.g. the DataItem has changed. Acknowledges the change in
+     * flight if the config carries it.
+     */
+    public void onWatchConfig(byte[] data) {
+        try {
+            ConfigState config = new ConfigState();
+            ConfigCodec.decode(data, config);
+            mWatchConfig.copyFrom(config);
+        } catch (IllegalArgumentException e) {
+            // Written by an older version of the watch face, the next change replaces it.
+            mWatchConfig.clear();
+        }
+        reconcile();
+    }
+
+    /**
+     * Drops all the requests, e.g. when the connection is closed. The changes that didn't get
+     * through are rolled back with the next fetch.
+     */
+    public void shutdown() {
+        mScheduler.cancel(mFetchTimeoutTask);
+        mScheduler.cancel(mFetchRetryTask);
+        mScheduler.cancel(mSendTimeoutTask);
+        mScheduler.cancel(mSendRetryTask);
+        mFetching = false;
+        mFetchId = 0;
+        mSendId = 0;
+        mSending.clear();
+        mQueued.clear();
+        mShown.copyFrom(mWatchConfig);
+    }
+
+    private void attemptFetch() {
+        mFetchId = mNextRequestId++;
+        if (mFetchAttempts++ > 0) {
+            mRetries++;
+        }
+        mFetches++;
+        mScheduler.schedule(mFetchTimeoutTask, mTimeoutMillis);
+        mTransport.fetch(mFetchId);
+    }
+
+    private void retryFetch() {
+        if (mFetchAttempts < mMaxAttempts) {
+            mScheduler.schedule(mFetchRetryTask, getBackoffMillis(mFetchAttempts));
+            return;
+        }
+        // Shown as it is, the defaults if it has never been read.
+        mFetching = false;
+        mFailures++;
+        updateShown();
+    }
+
+    private void sendNext() {
+        if (!mSending.isEmpty() || mQueued.isEmpty()) {
+            return;
+        }
+        mSending.copyFrom(mQueued);
+        mQueued.clear();
+        mSendData = ConfigCodec.encode(mSending);
+        mSendAttempts = 0;
+        attemptSend();
+    }
+
+    private void attemptSend() {
+        mSendId = mNextRequestId++;
+        if (mSendAttempts++ > 0) {
+            mRetries++;
+        }
+        mSends++;
+        mScheduler.schedule(mSendTimeoutTask, mTimeoutMillis);
+        mTransport.send(mSendId, mSendData);
+    }
+
+    private void retrySend() {
+        if (mSendAttempts < mMaxAttempts) {
+            mScheduler.schedule(mSendRetryTask, getBackoffMillis(mSendAttempts));
+            return;
+        }
+        ConfigState failed = new ConfigState();
+        failed.copyFrom(mSending);
+        mSending.clear();
+        mFailures++;
+        sendNext();
+        updateShown();
+        mListener.onChangeFailed(failed);
+    }
+
+    /**
+     * Doubles with each attempt made so far.
+     */
+    private long getBackoffMillis(int attempts) {
+        return mBackoffMillis << (attempts - 1);
+    }
+
+    private void reconcile() {
+        if (!mSending.isEmpty() && isAcknowledged(mSending)) {
+            mScheduler.cancel(mSendTimeoutTask);
+            mScheduler.cancel(mSendRetryTask);
+            mSendId = 0;
+            mSending.clear();
+            sendNext();
+        }
+        updateShown();
+    }
+
+    /**
+     * Returns whether the watch has all the fields of the change in its revision or a newer one,
+     * the latter if they were changed elsewhere since.
+     */
+    private boolean isAcknowledged(ConfigState change) {
+        for (int field = 0; field < ConfigSchema.FIELD_COUNT; field++) {
+            if (change.has(field) && (!mWatchConfig.has(field)
+                    || mWatchConfig.getFieldRevision(field) < change.getFieldRevision(field))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void updateShown() {
+        mShown.copyFrom(mWatchConfig);
+        mShown.merge(mSending);
+        mShown.merge(mQueued);
+        mListener.onConfigChanged(mShown);
+    }
+
+    /**
+     * Returns the request counts, for the logs.
+     */
+    public String getStats() {
+        return "fetches=" + mFetches + " sends=" + mSends + " retries=" + mRetries + " timeouts=" + mTimeouts
+                + " deduplicated=" + mDeduplicated + " failures=" + mFailures;
+    }
+}
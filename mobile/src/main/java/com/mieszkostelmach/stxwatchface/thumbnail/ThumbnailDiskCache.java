@@ -0,0 +1,195 @@
+package com.mieszkostelmach.stxwatchface.thumbnail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Size bounded cache of thumbnail files in a directory, the least recently used ones are deleted
+ * first. The recency survives restarts through the modification times of the files, so the
+ * thumbnails of the faces that are actually looked at stay cached.
+ * <p/>
+ * Files are written under a temporary name and renamed when complete, a write cut short leaves
+ * nothing behind that could be read later. The directory is scanned on first use rather than when
+ * the cache is created, so that it doesn't happen on the main thread.
+ * <p/>
+ * Not thread safe, meant to be used from the one thread which loads the thumbnails. This class
+ * doesn't depend on the Android framework.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ThumbnailDiskCache {
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Pattern VALID_KEY = Pattern.compile("[a-z0-9_.-]+");
+
+    private final File mDir;
+    private final long mMaxBytes;
+
+    /**
+     * File sizes by key, least recently used first.
+     */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mSize;
+    private boolean mScanned;
+
+    private int mHits;
+    private int mMisses;
+
+    public ThumbnailDiskCache(File dir, long maxBytes) {
+        this.mDir = dir;
+        this.mMaxBytes = maxBytes;
+    }
+
+    /**
+     * The key of a thumbnail: the resource it's made of, the screen density the resource was
+     * picked for, the thumbnail size in pixels and the version of the app, whose update may come
+     * with different drawables.
+     */
+    public static String key(String resourceName, int densityDpi, int size, int version) {
+        String key = resourceName + "-" + densityDpi + "dpi-" + size + "px-v" + version;
+        if (!VALID_KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Not a file name: " + key);
+        }
+        return key;
+    }
+
+    /**
+     * Returns the cached data, null if there's none or it can't be read.
+     */
+    public byte[] get(String key) {
+        scan();
+        Long size = mEntries.get(key);
+        if (size == null) {
+            mMisses++;
+            return null;
+        }
+        File file = new File(mDir, key);
+        byte[] data = new byte[(int) size.longValue()];
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                int read = 0;
+                while (read < data.length) {
+                    int count = in.read(data, read, data.length - read);
+                    if (count < 0) {
+                        throw new IOException("Truncated " + file);
+                    }
+                    read += count;
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            remove(key);
+            mMisses++;
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        mHits++;
+        return data;
+    }
+
+    /**
+     * Stores the data, evicting the least recently used entries if the cache grows over its size.
+     */
+    public void put(String key, byte[] data) throws IOException {
+        scan();
+        if (!mDir.isDirectory() && !mDir.mkdirs()) {
+            throw new IOException("Can't create " + mDir);
+        }
+        File temp = new File(mDir, key + TEMP_SUFFIX);
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        File file = new File(mDir, key);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Can't rename " + temp);
+        }
+        Long previous = mEntries.put(key, (long) data.length);
+        if (previous != null) {
+            mSize -= previous;
+        }
+        mSize += data.length;
+        trim();
+    }
+
+    public void remove(String key) {
+        scan();
+        Long size = mEntries.remove(key);
+        if (size != null) {
+            mSize -= size;
+        }
+        new File(mDir, key).delete();
+    }
+
+    public long getSize() {
+        scan();
+        return mSize;
+    }
+
+    public int getCount() {
+        scan();
+        return mEntries.size();
+    }
+
+    public int getHits() {
+        return mHits;
+    }
+
+    public int getMisses() {
+        return mMisses;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> entries = mEntries.entrySet().iterator();
+        while (mSize > mMaxBytes && entries.hasNext()) {
+            Map.Entry<String, Long> entry = entries.next();
+            entries.remove();
+            mSize -= entry.getValue();
+            new File(mDir, entry.getKey()).delete();
+        }
+    }
+
+    private void scan() {
+        if (mScanned) {
+            return;
+        }
+        mScanned = true;
+        File[] files = mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX) || !VALID_KEY.matcher(name).matches()) {
+                // Left over by a write which didn't finish, or not a thumbnail at all.
+                file.delete();
+                continue;
+            }
+            mEntries.put(name, file.length());
+            mSize += file.length();
+        }
+        trim();
+    }
+}
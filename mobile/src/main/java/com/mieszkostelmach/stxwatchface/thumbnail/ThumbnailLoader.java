@@ -0,0 +1,211 @@
+package com.mieszkostelmach.stxwatchface.thumbnail;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Loads the face thumbnails of the config screen on a background thread, so that opening it
+ * doesn't decode the backgrounds on the main thread.
+ * <p/>
+ * A drawable is decoded once, subsampled ({@code inSampleSize}) and scaled to the thumbnail size,
+ * and its pixels are kept in a {@link ThumbnailDiskCache}. The next time the screen is opened,
+ * even in a new process, the thumbnail is just the raw pixels read back from the disk, no PNG
+ * decoding or scaling. The results are delivered on the thread which created the loader in the
+ * order they were requested, each as soon as it's ready.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ThumbnailLoader {
+    private static final String TAG = "ThumbnailLoader";
+
+    public interface Callback {
+        /**
+         * Called with the thumbnail, {@code null} if the drawable can't be decoded.
+         */
+        void onThumbnailLoaded(int drawableId, Bitmap bitmap);
+    }
+
+    private static final String CACHE_DIR = "thumbnails";
+    private static final long CACHE_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Width, height and whether the pixels are ARGB_8888 rather than RGB_565, before the pixels.
+     */
+    private static final int HEADER_BYTES = 12;
+
+    private final Resources mResources;
+    private final int mSize;
+    private final int mVersion;
+    private final ThumbnailDiskCache mDiskCache;
+    private final Handler mResultHandler = new Handler();
+    private HandlerThread mThread;
+    private Handler mLoadHandler;
+
+    /**
+     * Loads square thumbnails, {@code size} pixels wide.
+     */
+    public ThumbnailLoader(Context context, int size) {
+        this.mResources = context.getResources();
+        this.mSize = size;
+        this.mVersion = getVersionCode(context);
+        this.mDiskCache = new ThumbnailDiskCache(new File(context.getCacheDir(), CACHE_DIR), CACHE_BYTES);
+    }
+
+    private static int getVersionCode(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    public void load(final int drawableId, final Callback callback) {
+        if (mThread == null) {
+            mThread = new HandlerThread(TAG, android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            mThread.start();
+            mLoadHandler = new Handler(mThread.getLooper());
+        }
+        mLoadHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = loadNow(drawableId);
+                mResultHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mThread != null) {
+                            callback.onThumbnailLoaded(drawableId, bitmap);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stops loading, the pending thumbnails are never delivered.
+     */
+    public void quit() {
+        if (mThread != null) {
+            mThread.quit();
+            mThread = null;
+            mLoadHandler = null;
+        }
+    }
+
+    /**
+     * Disk cache hits and misses so far, only consistent once the requested thumbnails arrived.
+     */
+    public String getStats() {
+        return "disk hits " + mDiskCache.getHits() + ", misses " + mDiskCache.getMisses();
+    }
+
+    private Bitmap loadNow(int drawableId) {
+        long start = System.currentTimeMillis();
+        String key = ThumbnailDiskCache.key(mResources.getResourceEntryName(drawableId),
+                mResources.getDisplayMetrics().densityDpi, mSize, mVersion);
+        byte[] data = mDiskCache.get(key);
+        if (data != null) {
+            Bitmap bitmap = fromBytes(data);
+            if (bitmap != null) {
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Read " + key + " in " + (System.currentTimeMillis() - start) + " ms");
+                }
+                return bitmap;
+            }
+            Log.w(TAG, "Corrupt thumbnail " + key);
+            mDiskCache.remove(key);
+        }
+
+        Bitmap bitmap = decodeScaled(drawableId);
+        if (bitmap == null) {
+            return null;
+        }
+        try {
+            mDiskCache.put(key, toBytes(bitmap));
+        } catch (IOException e) {
+            Log.w(TAG, "Can't cache " + key, e);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Decoded " + key + " in " + (System.currentTimeMillis() - start) + " ms"
+                    + (Looper.myLooper() == Looper.getMainLooper() ? " on the main thread" : ""));
+        }
+        return bitmap;
+    }
+
+    private Bitmap decodeScaled(int drawableId) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        // The raw pixels of the drawable picked for the density, scaled to the thumbnail below.
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, drawableId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.e(TAG, "Can't decode thumbnail " + drawableId);
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= mSize && options.outHeight / (sampleSize * 2) >= mSize) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        // Honoured by the decoder only for images without an alpha channel.
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap sampled = BitmapFactory.decodeResource(mResources, drawableId, options);
+        if (sampled == null) {
+            Log.e(TAG, "Can't decode thumbnail " + drawableId);
+            return null;
+        }
+
+        Bitmap.Config config = sampled.hasAlpha() ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+        if (sampled.getWidth() == mSize && sampled.getHeight() == mSize && sampled.getConfig() == config) {
+            return sampled;
+        }
+        Bitmap result = Bitmap.createBitmap(mSize, mSize, config);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        new Canvas(result).drawBitmap(sampled, null, new Rect(0, 0, mSize, mSize), paint);
+        sampled.recycle();
+        return result;
+    }
+
+    private static byte[] toBytes(Bitmap bitmap) {
+        byte[] data = new byte[HEADER_BYTES + bitmap.getByteCount()];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.putInt(bitmap.getWidth());
+        buffer.putInt(bitmap.getHeight());
+        buffer.putInt(bitmap.getConfig() == Bitmap.Config.ARGB_8888 ? 1 : 0);
+        bitmap.copyPixelsToBuffer(buffer);
+        return data;
+    }
+
+    private static Bitmap fromBytes(byte[] data) {
+        if (data.length < HEADER_BYTES) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        boolean argb = buffer.getInt() == 1;
+        int bytesPerPixel = argb ? 4 : 2;
+        if (width <= 0 || height <= 0 || data.length != HEADER_BYTES + width * height * bytesPerPixel) {
+            return null;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(width, height, argb ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565);
+        bitmap.copyPixelsFromBuffer(buffer);
+        return bitmap;
+    }
+}
@@ -0,0 +1,347 @@
+package com.mieszkostelmach.stxwatchface.sync;
+
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigCodec;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigSchema;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigState;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fans the config out to a simulated set of up to 20 watches, each with its own latency.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ConfigFanOutTest {
+    private static final long TIMEOUT_MILLIS = 5000;
+    private static final long BACKOFF_MILLIS = 500;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long MAX_LATENCY_MILLIS = 1500;
+    private static final long WRITE_DELAY_MILLIS = 500;
+    private static final long FIND_MILLIS = 50;
+
+    private final FakeScheduler mScheduler = new FakeScheduler();
+    private final FakeNetwork mNetwork = new FakeNetwork();
+    private final RecordingListener mListener = new RecordingListener();
+    private final Random mRandom = new Random(7);
+
+    @Test
+    public void changeReachesAllTheNodesAtOnce() {
+        for (int count : new int[]{1, 2, 5, 20}) {
+            mNetwork.mWatches.clear();
+            addWatches(count);
+            ConfigFanOut fanOut = newFanOut(null);
+            connect(fanOut);
+            assertEquals(count, fanOut.getNodeCount());
+
+            long start = mScheduler.currentTimeMillis();
+            assertTrue(fanOut.submit(change(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERWHERO)));
+            assertTrue(fanOut.isSending());
+            // The slowest node sets the pace, not the sum of them.
+            mScheduler.advance(MAX_LATENCY_MILLIS + WRITE_DELAY_MILLIS);
+            assertFalse(fanOut.isSending());
+            assertTrue(mScheduler.currentTimeMillis() - start < TIMEOUT_MILLIS);
+            for (FakeWatch watch : mNetwork.mWatches.values()) {
+                assertEquals(FaceRegistry.SUPERWHERO, watch.mConfig.get(ConfigSchema.FIELD_FACE, -1));
+                assertEquals(1, watch.mMessages);
+                assertEquals(watch.mConfig.getRevision(), fanOut.getAppliedRevision(watch.mId));
+            }
+            fanOut.shutdown();
+        }
+    }
+
+    @Test
+    public void currentNodesAreSkipped() {
+        addWatches(10);
+        int current = 0;
+        for (FakeWatch watch : mNetwork.mWatches.values()) {
+            if (mRandom.nextBoolean()) {
+                watch.mConfig.setRevision(100);
+                watch.mConfig.set(ConfigSchema.FIELD_SWEEP_FPS, 30);
+                current++;
+            }
+        }
+        ConfigFanOut fanOut = newFanOut(null);
+        connect(fanOut);
+        fanOut.submit(change(ConfigSchema.FIELD_SWEEP_FPS, 30));
+        mScheduler.advance(MAX_LATENCY_MILLIS + WRITE_DELAY_MILLIS);
+
+        int messages = 0;
+        for (FakeWatch watch : mNetwork.mWatches.values()) {
+            assertEquals(30, watch.mConfig.get(ConfigSchema.FIELD_SWEEP_FPS, -1));
+            messages += watch.mMessages;
+        }
+        assertEquals(10 - current, messages);
+        assertTrue(fanOut.getStats(), fanOut.getStats().startsWith("nodes=10 skipped=" + current));
+
+        // All current now, nothing goes out.
+        assertFalse(fanOut.submit(change(ConfigSchema.FIELD_SWEEP_FPS, 30)));
+    }
+
+    @Test
+    public void screenFollowsThePreferredNode() {
+        addWatches(5);
+        FakeWatch preferred = mNetwork.mWatches.get("node3");
+        preferred.mConfig.setRevision(10);
+        preferred.mConfig.set(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERHERO_ALPHA);
+        ConfigFanOut fanOut = newFanOut("node3");
+        connect(fanOut);
+        assertEquals("node3", fanOut.getPrimaryNodeId());
+        assertEquals(1, mListener.mChanges);
+        assertEquals(FaceRegistry.SUPERHERO_ALPHA, mListener.mShown.get(ConfigSchema.FIELD_FACE, -1));
+
+        // Gone, the first node takes over.
+        mNetwork.mWatches.remove("node3");
+        fanOut.findNodes();
+        mScheduler.advance(FIND_MILLIS);
+        assertEquals("node0", fanOut.getPrimaryNodeId());
+        assertTrue(fanOut.getConfig().isEmpty());
+        assertEquals(4, fanOut.getNodeCount());
+    }
+
+    @Test
+    public void nodeFoundLaterCatchesUp() {
+        addWatches(3);
+        ConfigFanOut fanOut = newFanOut(null);
+        connect(fanOut);
+        fanOut.submit(change(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERWHERO_ALPHA));
+        fanOut.submit(change(ConfigSchema.FIELD_SWEEP_FPS, 15));
+        mScheduler.advance(MAX_LATENCY_MILLIS + WRITE_DELAY_MILLIS);
+
+        FakeWatch late = new FakeWatch("late", 700);
+        late.mConfig.setRevision(5);
+        late.mConfig.set(ConfigSchema.FIELD_SWEEP_FPS, 15);
+        mNetwork.mWatches.put(late.mId, late);
+        fanOut.findNodes();
+        mScheduler.advance(FIND_MILLIS + 2 * MAX_LATENCY_MILLIS + WRITE_DELAY_MILLIS);
+
+        assertEquals(FaceRegistry.SUPERWHERO_ALPHA, late.mConfig.get(ConfigSchema.FIELD_FACE, -1));
+        assertEquals(15, late.mConfig.get(ConfigSchema.FIELD_SWEEP_FPS, -1));
+        assertEquals(1, late.mMessages);
+        assertFalse(fanOut.isSending());
+    }
+
+    @Test
+    public void resultsOfANodeFoundAgainAreNotMixedUp() {
+        addWatches(2);
+        ConfigFanOut fanOut = newFanOut(null);
+        connect(fanOut);
+        FakeWatch watch = mNetwork.mWatches.get("node1");
+        watch.mLatencyMillis = 3000;
+        fanOut.submit(change(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERWHERO));
+
+        mNetwork.mWatches.remove("node1");
+        fanOut.findNodes();
+        mScheduler.advance(FIND_MILLIS);
+        mNetwork.mWatches.put("node1", watch);
+        watch.mConfig.setRevision(1);
+        watch.mConfig.set(ConfigSchema.FIELD_SWEEP_FPS, 60);
+        watch.mLatencyMillis = 100;
+        fanOut.findNodes();
+        // The late result of the send before it was gone mustn't pass for the new fetch.
+        mScheduler.advance(FIND_MILLIS + 3000);
+
+        assertEquals(FaceRegistry.SUPERWHERO, watch.mConfig.get(ConfigSchema.FIELD_FACE, -1));
+        assertEquals(60, watch.mConfig.get(ConfigSchema.FIELD_SWEEP_FPS, -1));
+        assertEquals(watch.mConfig.getRevision(), fanOut.getAppliedRevision("node1"));
+        assertEquals(2, fanOut.getNodeCount());
+        assertFalse(fanOut.isSending());
+        assertEquals(0, mListener.mFailures);
+    }
+
+    @Test
+    public void noNodes() {
+        ConfigFanOut fanOut = newFanOut("node0");
+        connect(fanOut);
+        assertNull(fanOut.getPrimaryNodeId());
+        assertTrue(fanOut.getConfig().isEmpty());
+        assertFalse(fanOut.submit(change(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERWHERO)));
+    }
+
+    private ConfigFanOut newFanOut(String preferredNodeId) {
+        ConfigFanOut fanOut = new ConfigFanOut(mNetwork, mScheduler, mScheduler, mListener, preferredNodeId,
+                TIMEOUT_MILLIS, BACKOFF_MILLIS, MAX_ATTEMPTS);
+        mNetwork.mFanOut = fanOut;
+        return fanOut;
+    }
+
+    /**
+     * Finds the nodes and reads their config.
+     */
+    private void connect(ConfigFanOut fanOut) {
+        fanOut.findNodes();
+        mScheduler.advance(FIND_MILLIS + MAX_LATENCY_MILLIS);
+    }
+
+    private void addWatches(int count) {
+        for (int i = 0; i < count; i++) {
+            FakeWatch watch = new FakeWatch("node" + i, 20 + mRandom.nextInt((int) MAX_LATENCY_MILLIS - 20));
+            mNetwork.mWatches.put(watch.mId, watch);
+        }
+    }
+
+    private static ConfigState change(int field, int value) {
+        ConfigState change = new ConfigState();
+        change.set(field, value);
+        return change;
+    }
+
+    /**
+     * A watch and its link to the phone, which it writes its config back through.
+     */
+    private class FakeWatch {
+        final String mId;
+        final ConfigState mConfig = new ConfigState();
+        long mLatencyMillis;
+        int mMessages;
+        private boolean mWriteScheduled;
+
+        private final Runnable mWriteTask = new Runnable() {
+            @Override
+            public void run() {
+                mWriteScheduled = false;
+                if (mNetwork.mWatches.get(mId) == FakeWatch.this) {
+                    mNetwork.mFanOut.onWatchConfig(mId, ConfigCodec.encode(mConfig));
+                }
+            }
+        };
+
+        FakeWatch(String id, long latencyMillis) {
+            this.mId = id;
+            this.mLatencyMillis = latencyMillis;
+        }
+
+        void receive(byte[] data) {
+            mMessages++;
+            ConfigState change = new ConfigState();
+            ConfigCodec.decode(data, change);
+            if (mConfig.merge(change) && !mWriteScheduled) {
+                mWriteScheduled = true;
+                mScheduler.schedule(mWriteTask, WRITE_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private class FakeNetwork implements ConfigFanOut.Transport {
+        final Map<String, FakeWatch> mWatches = new LinkedHashMap<>();
+        ConfigFanOut mFanOut;
+
+        @Override
+        public void findNodes() {
+            final List<String> nodeIds = new ArrayList<>(mWatches.keySet());
+            mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    mFanOut.onNodesFound(Collections.unmodifiableList(nodeIds));
+                }
+            }, FIND_MILLIS);
+        }
+
+        @Override
+        public void fetch(final String nodeId, final int requestId) {
+            final FakeWatch watch = mWatches.get(nodeId);
+            if (watch == null) {
+                return;
+            }
+            mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    mFanOut.onFetched(nodeId, requestId, true,
+                            watch.mConfig.isEmpty() ? null : ConfigCodec.encode(watch.mConfig));
+                }
+            }, watch.mLatencyMillis);
+        }
+
+        @Override
+        public void send(final String nodeId, final int requestId, final byte[] data) {
+            final FakeWatch watch = mWatches.get(nodeId);
+            if (watch == null) {
+                return;
+            }
+            mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    watch.receive(data);
+                    mFanOut.onSent(nodeId, requestId, true);
+                }
+            }, watch.mLatencyMillis);
+        }
+    }
+
+    private static class RecordingListener implements ConfigFanOut.Listener {
+        final ConfigState mShown = new ConfigState();
+        int mChanges;
+        int mFailures;
+
+        @Override
+        public void onConfigChanged(ConfigState config) {
+            mShown.copyFrom(config);
+            mChanges++;
+        }
+
+        @Override
+        public void onChangeFailed(String nodeId, ConfigState change) {
+            mFailures++;
+        }
+    }
+
+    private static class FakeScheduler implements ConfigRequestPipeline.Scheduler, ConfigRequestPipeline.Clock {
+        private final List<Runnable> mTasks = new ArrayList<>();
+        private final List<Long> mDeadlines = new ArrayList<>();
+        private long mNow;
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            mTasks.add(task);
+            mDeadlines.add(mNow + delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            for (int i = mTasks.size() - 1; i >= 0; i--) {
+                if (mTasks.get(i) == task) {
+                    mTasks.remove(i);
+                    mDeadlines.remove(i);
+                }
+            }
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+
+        /**
+         * Runs the tasks due in the order of their deadlines, moving the clock along.
+         */
+        void advance(long millis) {
+            long end = mNow + millis;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < mTasks.size(); i++) {
+                    if (mDeadlines.get(i) <= end && (next < 0 || mDeadlines.get(i) < mDeadlines.get(next))) {
+                        next = i;
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                mNow = Math.max(mNow, mDeadlines.remove(next));
+                mTasks.remove(next).run();
+            }
+            mNow = end;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.mieszkostelmach.stxwatchface.sync;
+
+import com.mieszkostelmach.stxwatchface.config.WatchFaceConfig;
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigCodec;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigSchema;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigState;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the config requests against a fake Wearable API which delays, fails and drops them, and
+ * checks that the phone and the watch end up agreeing.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ConfigRequestPipelineTest {
+    private static final long TIMEOUT_MILLIS = 2000;
+    private static final long BACKOFF_MILLIS = 250;
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long LATENCY_MILLIS = 150;
+    /**
+     * How long the watch collects the messages before it writes the config.
+     */
+    private static final long WRITE_DELAY_MILLIS = 500;
+
+    private final FakeScheduler mScheduler = new FakeScheduler();
+    private final FakeWearable mWearable = new FakeWearable();
+    private final RecordingListener mListener = new RecordingListener();
+    private final ConfigRequestPipeline mPipeline = new ConfigRequestPipeline(mWearable, mScheduler,
+            mScheduler, mListener, TIMEOUT_MILLIS, BACKOFF_MILLIS, MAX_ATTEMPTS);
+
+    @Test
+    public void fetchShowsTheWatchConfig() {
+        mWearable.mWatch.setRevision(7);
+        mWearable.mWatch.set(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERWHERO);
+        mPipeline.fetch();
+        mPipeline.fetch();
+        assertEquals(0, mListener.mChanges);
+
+        mScheduler.advance(LATENCY_MILLIS);
+        assertEquals(1, mWearable.mFetches);
+        assertEquals(1, mListener.mChanges);
+        assertEquals(FaceRegistry.SUPERWHERO, mPipeline.getConfig().get(ConfigSchema.FIELD_FACE, -1));
+    }
+
+    @Test
+    public void droppedFetchTimesOutAndIsRetriedWithBackoff() {
+        mWearable.mDropNext = 2;
+        mPipeline.fetch();
+        mScheduler.advance(TIMEOUT_MILLIS + BACKOFF_MILLIS - 1);
+        assertEquals(1, mWearable.mFetches);
+        mScheduler.advance(1);
+        assertEquals(2, mWearable.mFetches);
+        mScheduler.advance(TIMEOUT_MILLIS + 2 * BACKOFF_MILLIS - 1);
+        assertEquals(2, mWearable.mFetches);
+        mScheduler.advance(1 + LATENCY_MILLIS);
+        assertEquals(3, mWearable.mFetches);
+        assertEquals(1, mListener.mChanges);
+        assertTrue(mPipeline.getStats(), mPipeline.getStats().contains("retries=2 timeouts=2"));
+    }
+
+    @Test
+    public void failedFetchShowsTheDefaultsAfterAllTheAttempts() {
+        mWearable.mFailNext = MAX_ATTEMPTS;
+        mPipeline.fetch();
+        mScheduler.advance(10 * TIMEOUT_MILLIS);
+        assertEquals(MAX_ATTEMPTS, mWearable.mFetches);
+        assertEquals(1, mListener.mChanges);
+        assertTrue(mPipeline.getConfig().isEmpty());
+        assertTrue(mPipeline.getStats().contains("failures=1"));
+    }
+
+    @Test
+    public void changeIsShownRightAwayAndAcknowledgedOnceWritten() {
+        fetchEmpty();
+        submit(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERHERO_ALPHA);
+        assertEquals(FaceRegistry.SUPERHERO_ALPHA, mListener.mShown.get(ConfigSchema.FIELD_FACE, -1));
+        assertTrue(mPipeline.isSending());
+
+        mScheduler.advance(LATENCY_MILLIS);
+        assertEquals(1, mWearable.mMessages);
+        assertTrue(mPipeline.isSending());
+        mScheduler.advance(WRITE_DELAY_MILLIS);
+        assertFalse(mPipeline.isSending());
+        assertEquals(FaceRegistry.SUPERHERO_ALPHA, mPipeline.getConfig().get(ConfigSchema.FIELD_FACE, -1));
+        mScheduler.advance(10 * TIMEOUT_MILLIS);
+        assertEquals(1, mWearable.mMessages);
+    }
+
+    @Test
+    public void identicalSendsInFlightAreSentOnce() {
+        fetchEmpty();
+        for (int i = 0; i < 5; i++) {
+            submit(ConfigSchema.FIELD_SWEEP_FPS, 30);
+        }
+        // Queued behind the first one and merged.
+        submit(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERWHERO);
+        submit(ConfigSchema.FIELD_SWEEP_FPS, 60);
+        submit(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERWHERO);
+        mScheduler.advance(10 * TIMEOUT_MILLIS);
+
+        assertEquals(2, mWearable.mMessages);
+        assertTrue(mPipeline.getStats(), mPipeline.getStats().contains("deduplicated=5"));
+        assertEquals(60, mWearable.mWatch.get(ConfigSchema.FIELD_SWEEP_FPS, -1));
+        assertEquals(FaceRegistry.SUPERWHERO, mWearable.mWatch.get(ConfigSchema.FIELD_FACE, -1));
+    }
+
+    @Test
+    public void missedAcknowledgementIsFetched() {
+        fetchEmpty();
+        mWearable.mDropDataEvents = true;
+        submit(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERWHERO);
+        mScheduler.advance(TIMEOUT_MILLIS + LATENCY_MILLIS);
+        assertFalse(mPipeline.isSending());
+        assertEquals(0, mListener.mFailures);
+        assertEquals(1, mWearable.mWrites);
+    }
+
+    @Test
+    public void undeliverableChangeIsRolledBack() {
+        mWearable.mWatch.setRevision(3);
+        mWearable.mWatch.set(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERHERO);
+        mPipeline.fetch();
+        mScheduler.advance(LATENCY_MILLIS);
+
+        mWearable.mFailNext = Integer.MAX_VALUE;
+        submit(ConfigSchema.FIELD_FACE, FaceRegistry.SUPERWHERO_ALPHA);
+        assertEquals(FaceRegistry.SUPERWHERO_ALPHA, mPipeline.getConfig().get(ConfigSchema.FIELD_FACE, -1));
+        mScheduler.advance(20 * TIMEOUT_MILLIS);
+
+        assertEquals(1, mListener.mFailures);
+        assertEquals(FaceRegistry.SUPERWHERO_ALPHA, mListener.mFailed.get(ConfigSchema.FIELD_FACE, -1));
+        assertEquals(FaceRegistry.SUPERHERO, mPipeline.getConfig().get(ConfigSchema.FIELD_FACE, -1));
+        assertFalse(mPipeline.isSending());
+    }
+
+    @Test
+    public void lateResultOfATimedOutAttemptIsIgnored() {
+        fetchEmpty();
+        mWearable.mLatencyMillis = TIMEOUT_MILLIS + BACKOFF_MILLIS + 1;
+        submit(ConfigSchema.FIELD_SWEEP_FPS, 15);
+        mScheduler.advance(TIMEOUT_MILLIS + BACKOFF_MILLIS);
+        mWearable.mLatencyMillis = LATENCY_MILLIS;
+        // The first attempt arrives while the second is in flight, both are merged by revision.
+        mScheduler.advance(10 * TIMEOUT_MILLIS);
+        assertEquals(2, mWearable.mMessages);
+        assertEquals(1, mWearable.mWrites);
+        assertFalse(mPipeline.isSending());
+        assertEquals(0, mListener.mFailures);
+    }
+
+    @Test
+    public void latencyAndFailuresConverge() {
+        Random random = new Random(42);
+        mWearable.mRandom = random;
+        mPipeline.fetch();
+        int[] fps = {WatchFaceConfig.SWEEP_OFF, 15, 30, 60};
+        for (int i = 0; i < 500; i++) {
+            mWearable.mLatencyMillis = 50 + random.nextInt(3000);
+            if (random.nextBoolean()) {
+                submit(ConfigSchema.FIELD_FACE, random.nextInt(FaceRegistry.getCount()));
+            } else {
+                submit(ConfigSchema.FIELD_SWEEP_FPS, fps[random.nextInt(fps.length)]);
+            }
+            mScheduler.advance(random.nextInt(1000));
+        }
+        mWearable.mRandom = null;
+        mWearable.mLatencyMillis = LATENCY_MILLIS;
+        mScheduler.advance(100 * TIMEOUT_MILLIS);
+        mPipeline.fetch();
+        mScheduler.advance(LATENCY_MILLIS);
+
+        assertFalse(mPipeline.isSending());
+        for (int field = 0; field < ConfigSchema.FIELD_COUNT; field++) {
+            assertEquals(mWearable.mWatch.get(field, -1), mPipeline.getConfig().get(field, -1));
+        }
+        // Bounded: never more than the attempts for each change.
+        assertTrue(mPipeline.getStats(), mWearable.mMessages <= 500 * MAX_ATTEMPTS);
+    }
+
+    private void fetchEmpty() {
+        mPipeline.fetch();
+        mScheduler.advance(LATENCY_MILLIS);
+    }
+
+    private void submit(int field, int value) {
+        ConfigState change = new ConfigState();
+        change.set(field, value);
+        mPipeline.submit(change);
+    }
+
+    /**
+     * The Data Layer and the watch behind it: the watch merges the messages and writes the config
+     * a while after, the way the listener service does. Requests can be made to fail or vanish.
+     */
+    private class FakeWearable implements ConfigRequestPipeline.Transport {
+        final ConfigState mWatch = new ConfigState();
+        long mLatencyMillis = LATENCY_MILLIS;
+        int mFailNext;
+        int mDropNext;
+        boolean mDropDataEvents;
+        /**
+         * If set, a third of the requests fail and a third vanish.
+         */
+        Random mRandom;
+        int mFetches;
+        int mMessages;
+        int mWrites;
+        private boolean mWriteScheduled;
+
+        private final Runnable mWriteTask = new Runnable() {
+            @Override
+            public void run() {
+                mWriteScheduled = false;
+                mWrites++;
+                if (!mDropDataEvents && !vanishes()) {
+                    mPipeline.onWatchConfig(ConfigCodec.encode(mWatch));
+                }
+            }
+        };
+
+        @Override
+        public void fetch(final int requestId) {
+            mFetches++;
+            if (vanishes()) {
+                return;
+            }
+            final boolean success = !fails();
+            mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] data = success && !mWatch.isEmpty() ? ConfigCodec.encode(mWatch) : null;
+                    mPipeline.onFetched(requestId, success, data);
+                }
+            }, mLatencyMillis);
+        }
+
+        @Override
+        public void send(final int requestId, final byte[] data) {
+            if (vanishes()) {
+                return;
+            }
+            final boolean success = !fails();
+            mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (success) {
+                        receive(data);
+                    }
+                    mPipeline.onSent(requestId, success);
+                }
+            }, mLatencyMillis);
+        }
+
+        private void receive(byte[] data) {
+            mMessages++;
+            ConfigState change = new ConfigState();
+            ConfigCodec.decode(data, change);
+            if (mWatch.merge(change) && !mWriteScheduled) {
+                mWriteScheduled = true;
+                mScheduler.schedule(mWriteTask, WRITE_DELAY_MILLIS);
+            }
+        }
+
+        private boolean fails() {
+            if (mFailNext > 0) {
+                mFailNext--;
+                return true;
+            }
+            return mRandom != null && mRandom.nextInt(3) == 0;
+        }
+
+        private boolean vanishes() {
+            if (mDropNext > 0) {
+                mDropNext--;
+                return true;
+            }
+            return mRandom != null && mRandom.nextInt(3) == 0;
+        }
+    }
+
+    private static class RecordingListener implements ConfigRequestPipeline.Listener {
+        final ConfigState mShown = new ConfigState();
+        final ConfigState mFailed = new ConfigState();
+        int mChanges;
+        int mFailures;
+
+        @Override
+        public void onConfigChanged(ConfigState config) {
+            mShown.copyFrom(config);
+            mChanges++;
+        }
+
+        @Override
+        public void onChangeFailed(ConfigState change) {
+            mFailed.copyFrom(change);
+            mFailures++;
+        }
+    }
+
+    private static class FakeScheduler implements ConfigRequestPipeline.Scheduler, ConfigRequestPipeline.Clock {
+        private final List<Runnable> mTasks = new ArrayList<>();
+        private final List<Long> mDeadlines = new ArrayList<>();
+        private long mNow;
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            mTasks.add(task);
+            mDeadlines.add(mNow + delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            for (int i = mTasks.size() - 1; i >= 0; i--) {
+                if (mTasks.get(i) == task) {
+                    mTasks.remove(i);
+                    mDeadlines.remove(i);
+                }
+            }
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+
+        /**
+         * Runs the tasks due in the order of their deadlines, moving the clock along.
+         */
+        void advance(long millis) {
+            long end = mNow + millis;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < mTasks.size(); i++) {
+                    if (mDeadlines.get(i) <= end && (next < 0 || mDeadlines.get(i) < mDeadlines.get(next))) {
+                        next = i;
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                mNow = Math.max(mNow, mDeadlines.remove(next));
+                mTasks.remove(next).run();
+            }
+            mNow = end;
+        }
+    }
+}
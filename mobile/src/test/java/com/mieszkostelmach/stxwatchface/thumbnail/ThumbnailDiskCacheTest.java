@@ -0,0 +1,122 @@
+package com.mieszkostelmach.stxwatchface.thumbnail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The thumbnail cache on a temporary directory: the least recently used thumbnails are evicted,
+ * and the cache is picked up again, recency included, by a new process.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ThumbnailDiskCacheTest {
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("thumbnails", "");
+        assertTrue(mDir.delete());
+        mDir.deleteOnExit();
+    }
+
+    @Test
+    public void returnsWhatWasPut() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(mDir, 1024);
+        assertNull(cache.get("a"));
+        cache.put("a", data(10, 1));
+        assertTrue(Arrays.equals(data(10, 1), cache.get("a")));
+        cache.put("a", data(20, 2));
+        assertTrue(Arrays.equals(data(20, 2), cache.get("a")));
+        assertEquals(20, cache.getSize());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(mDir, 100);
+        cache.put("a", data(40, 1));
+        cache.put("b", data(40, 2));
+        cache.get("a");
+        cache.put("c", data(40, 3));
+
+        assertNull(cache.get("b"));
+        assertFalse(new File(mDir, "b").exists());
+        assertTrue(Arrays.equals(data(40, 1), cache.get("a")));
+        assertTrue(Arrays.equals(data(40, 3), cache.get("c")));
+        assertEquals(80, cache.getSize());
+    }
+
+    @Test
+    public void keepsRecencyAcrossRestarts() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(mDir, 100);
+        cache.put("a", data(40, 1));
+        cache.put("b", data(40, 2));
+        // Used a while later, the file times only have a second's resolution on some systems.
+        assertTrue(new File(mDir, "a").setLastModified(System.currentTimeMillis() + 10000));
+
+        cache = new ThumbnailDiskCache(mDir, 100);
+        assertEquals(2, cache.getCount());
+        cache.put("c", data(40, 3));
+        assertNull(cache.get("b"));
+        assertTrue(Arrays.equals(data(40, 1), cache.get("a")));
+    }
+
+    @Test
+    public void ignoresUnfinishedWrites() throws IOException {
+        assertTrue(mDir.mkdirs());
+        File temp = new File(mDir, "a.tmp");
+        write(temp, data(10, 1));
+
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(mDir, 100);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getCount());
+        assertFalse(temp.exists());
+    }
+
+    @Test
+    public void dropsFilesWhichCantBeRead() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(mDir, 100);
+        cache.put("a", data(40, 1));
+        write(new File(mDir, "a"), data(10, 1));
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void keysTheResourceDensitySizeAndVersion() {
+        assertEquals("superhero-480dpi-318px-v3", ThumbnailDiskCache.key("superhero", 480, 318, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsKeysWhichArentFileNames() {
+        ThumbnailDiskCache.key("../superhero", 480, 318, 3);
+    }
+
+    private static byte[] data(int length, int value) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) value);
+        return data;
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+}
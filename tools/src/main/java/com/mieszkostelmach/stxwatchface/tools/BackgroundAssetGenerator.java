@@ -0,0 +1,169 @@
+package com.mieszkostelmach.stxwatchface.tools;
+
+import com.mieszkostelmach.stxwatchface.face.BackgroundAssets;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Scales the face backgrounds to each of the common screen sizes at build time, see
+ * {@link BackgroundAssets}, so that the watch decodes the one matching its screen as is, with no
+ * subsampling and no scaling pass.
+ * <p/>
+ * The drawables are scaled down in halving steps and then to the exact size with bicubic
+ * filtering, which looks better than the single bilinear pass the watch does. The backgrounds
+ * without transparent pixels are quantized to RGB 565 with error diffusion and written without the
+ * alpha channel: the watch decodes those straight into an {@code RGB_565} bitmap, at half the
+ * memory of the {@code ARGB_8888} one the drawables decode to, and as every color is exactly
+ * representable the decoder neither rounds nor dithers.
+ * <p/>
+ * Arguments: the assets directory, the sizes as e.g. {@code 280x280,320x290}, then the drawables.
+ * The backgrounds are named after the drawables. Sizes larger than a drawable are skipped, an
+ * upscaled background is no sharper than the one the watch scales itself.
+ *
+ * @author Mieszko Stelmach
+ */
+public class BackgroundAssetGenerator {
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args[0], BackgroundAssets.DIRECTORY);
+        String[] sizes = args[1].split(",");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        // Drop the backgrounds of the sizes or drawables no longer asked for.
+        File[] stale = directory.listFiles();
+        if (stale != null) {
+            for (File file : stale) {
+                if (!file.delete()) {
+                    throw new IOException("Can't delete " + file);
+                }
+            }
+        }
+
+        int count = 0;
+        long bytes = 0;
+        for (int i = 2; i < args.length; i++) {
+            File drawable = new File(args[i]);
+            String background = drawable.getName().substring(0, drawable.getName().lastIndexOf('.'));
+            BufferedImage image = ImageIO.read(drawable);
+            if (image == null) {
+                throw new IOException("Can't read " + drawable);
+            }
+            for (String size : sizes) {
+                int separator = size.indexOf('x');
+                int width = Integer.parseInt(size.substring(0, separator).trim());
+                int height = Integer.parseInt(size.substring(separator + 1).trim());
+                if (width > image.getWidth() || height > image.getHeight()) {
+                    System.out.println("Skipped " + background + " at " + width + "x" + height + ", it's "
+                            + image.getWidth() + "x" + image.getHeight());
+                    continue;
+                }
+                File file = new File(directory, BackgroundAssets.getFileName(background, width, height));
+                ImageIO.write(generate(image, width, height), "png", file);
+                count++;
+                bytes += file.length();
+            }
+        }
+        System.out.println("Generated " + count + " backgrounds, " + bytes
+                + " bytes, in " + directory);
+    }
+
+    /**
+     * Returns the image scaled to the size, quantized to RGB 565 if it's opaque.
+     */
+    public static BufferedImage generate(BufferedImage image, int width, int height) {
+        BufferedImage scaled = scale(image, width, height);
+        return isOpaque(scaled) ? quantize565(scaled) : scaled;
+    }
+
+    public static BufferedImage scale(BufferedImage image, int width, int height) {
+        BufferedImage current = image;
+        while (current.getWidth() / 2 >= width && current.getHeight() / 2 >= height) {
+            current = draw(current, current.getWidth() / 2, current.getHeight() / 2,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        return draw(current, width, height, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+    }
+
+    public static boolean isOpaque(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return true;
+        }
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if (image.getRGB(x, y) >>> 24 != 0xff) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the opaque image with each channel reduced to the precision of RGB 565, expanded back
+     * to 8 bits the way the decoder does, and the rounding error diffused to the neighbouring
+     * pixels (Floyd-Steinberg), so that the gradients don't band.
+     */
+    public static BufferedImage quantize565(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        // Errors carried to the current and the next row, three channels per pixel, one pixel of
+        // padding on each side.
+        float[] current = new float[(width + 2) * 3];
+        float[] next = new float[(width + 2) * 3];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = image.getRGB(x, y);
+                int quantized = 0;
+                for (int channel = 0; channel < 3; channel++) {
+                    int shift = 16 - channel * 8;
+                    int bits = channel == 1 ? 6 : 5;
+                    int index = (x + 1) * 3 + channel;
+                    float value = ((rgb >> shift) & 0xff) + current[index];
+                    int level = Math.round(Math.max(0, Math.min(255, value)) * ((1 << bits) - 1) / 255f);
+                    int expanded = expand(level, bits);
+                    quantized |= expanded << shift;
+                    float error = value - expanded;
+                    current[index + 3] += error * 7 / 16;
+                    next[index - 3] += error * 3 / 16;
+                    next[index] += error * 5 / 16;
+                    next[index + 3] += error / 16;
+                }
+                result.setRGB(x, y, quantized);
+            }
+            float[] done = current;
+            current = next;
+            next = done;
+            Arrays.fill(next, 0);
+        }
+        return result;
+    }
+
+    /**
+     * Expands the level to 8 bits by repeating its high bits, which maps it back to the same level
+     * when the low bits are dropped.
+     */
+    static int expand(int level, int bits) {
+        return (level << (8 - bits)) | (level >> (2 * bits - 8));
+    }
+
+    private static BufferedImage draw(BufferedImage image, int width, int height, Object interpolation) {
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = result.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,114 @@
+package com.mieszkostelmach.stxwatchface.tools;
+
+import com.mieszkostelmach.stxwatchface.face.BackgroundAssets;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Generates the pre-scaled backgrounds from the real drawables of the wear module (the
+ * {@code stx.res} system property points at its res directory) and checks what the watch gets.
+ *
+ * @author Mieszko Stelmach
+ */
+public class BackgroundAssetGeneratorTest {
+    private final File mRes = new File(System.getProperty("stx.res", "../wear/src/main/res"));
+
+    @Test
+    public void expandedLevelsDecodeBackToThemselves() {
+        for (int level = 0; level < 32; level++) {
+            assertEquals(level, BackgroundAssetGenerator.expand(level, 5) >> 3);
+        }
+        for (int level = 0; level < 64; level++) {
+            assertEquals(level, BackgroundAssetGenerator.expand(level, 6) >> 2);
+        }
+        assertEquals(255, BackgroundAssetGenerator.expand(31, 5));
+        assertEquals(255, BackgroundAssetGenerator.expand(63, 6));
+    }
+
+    @Test
+    public void quantizedColorsAreExactIn565AndKeepTheAverage() {
+        // A smooth gradient, where banding would show.
+        BufferedImage gradient = new BufferedImage(256, 64, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < gradient.getHeight(); y++) {
+            for (int x = 0; x < gradient.getWidth(); x++) {
+                gradient.setRGB(x, y, 0xff000000 | x << 16 | (255 - x) << 8 | (x + y) / 2);
+            }
+        }
+        BufferedImage quantized = BackgroundAssetGenerator.quantize565(gradient);
+        assertFalse(quantized.getColorModel().hasAlpha());
+        for (int x = 0; x < gradient.getWidth(); x++) {
+            long red = 0;
+            long green = 0;
+            long originalRed = 0;
+            long originalGreen = 0;
+            for (int y = 0; y < gradient.getHeight(); y++) {
+                int rgb = quantized.getRGB(x, y);
+                int r = (rgb >> 16) & 0xff;
+                int g = (rgb >> 8) & 0xff;
+                int b = rgb & 0xff;
+                assertEquals(r, BackgroundAssetGenerator.expand(r >> 3, 5));
+                assertEquals(g, BackgroundAssetGenerator.expand(g >> 2, 6));
+                assertEquals(b, BackgroundAssetGenerator.expand(b >> 3, 5));
+                red += r;
+                green += g;
+                originalRed += (gradient.getRGB(x, y) >> 16) & 0xff;
+                originalGreen += (gradient.getRGB(x, y) >> 8) & 0xff;
+            }
+            // The error is diffused, a column averages out to within a level of the original.
+            assertEquals(originalRed, red, 4 * gradient.getHeight());
+            assertEquals(originalGreen, green, 2 * gradient.getHeight());
+        }
+    }
+
+    @Test
+    public void generatesEachSizeOfEachDrawable() throws IOException {
+        File assets = Files.createTempDirectory("stx-backgrounds").toFile();
+        File stale = new File(assets, BackgroundAssets.getPath("superhero", 1, 1));
+        assertTrue(stale.getParentFile().mkdirs() && stale.createNewFile());
+
+        BackgroundAssetGenerator.main(new String[]{assets.getPath(), "280x280,320x290,400x400",
+                new File(mRes, "drawable-hdpi/superhero.png").getPath(),
+                new File(mRes, "drawable-hdpi/superwhero_alpha.png").getPath()});
+
+        assertFalse(stale.exists());
+        // Not upscaled from the 320x320 drawables.
+        assertEquals(4, new File(assets, BackgroundAssets.DIRECTORY).list().length);
+        assertFalse(new File(assets, BackgroundAssets.getPath("superhero", 400, 400)).exists());
+        for (String background : new String[]{"superhero", "superwhero_alpha"}) {
+            BufferedImage image = ImageIO.read(new File(assets, BackgroundAssets.getPath(background, 320, 290)));
+            assertEquals(320, image.getWidth());
+            assertEquals(290, image.getHeight());
+            // Opaque, decoded as RGB_565 on the watch.
+            assertFalse(image.getColorModel().hasAlpha());
+        }
+    }
+
+    @Test
+    public void transparentBackgroundKeepsItsAlpha() {
+        BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(10, 10, 0xff336699);
+        BufferedImage generated = BackgroundAssetGenerator.generate(image, 40, 40);
+        assertTrue(generated.getColorModel().hasAlpha());
+        assertFalse(BackgroundAssetGenerator.isOpaque(generated));
+    }
+
+    @Test
+    public void scalesDownInSteps() throws IOException {
+        BufferedImage drawable = ImageIO.read(new File(mRes, "drawable-hdpi/superhero.png"));
+        BufferedImage scaled = BackgroundAssetGenerator.scale(drawable, 100, 100);
+        assertEquals(100, scaled.getWidth());
+        assertEquals(100, scaled.getHeight());
+        assertTrue(BackgroundAssetGenerator.isOpaque(scaled));
+    }
+}
@@ -0,0 +1,125 @@
+package com.mieszkostelmach.stxwatchface.clock;
+
+import java.util.TimeZone;
+
+/**
+ * Local time of day, as the hands show it, computed from the UTC milliseconds with plain integer
+ * arithmetic. Replaces {@code android.text.format.Time}, which recomputes all of the calendar
+ * fields on every call.
+ * <p/>
+ * The UTC offset of the time zone is cached together with the span of time it's known to be valid
+ * for. It's only looked up again when the time leaves that span, i.e. at a DST transition, or when
+ * the time zone changes, so {@link #set(long)} normally doesn't allocate or call into the time zone
+ * at all. This class doesn't depend on the Android framework.
+ *
+ * @author Mieszko Stelmach
+ */
+public class WatchClock {
+    static final long SECOND_MILLIS = 1000;
+    static final long MINUTE_MILLIS = 60 * SECOND_MILLIS;
+    static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+    static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    /**
+     * How far ahead the offset is checked when it's looked up. Time zones don't change their offset
+     * more than once in a day, so if the offset is the same at both ends of the span, it's the same
+     * all the way through.
+     */
+    static final long LOOKAHEAD_MILLIS = DAY_MILLIS;
+
+    /**
+     * Local time of day of the last {@link #set(long)}: 0-23, 0-59, 0-59 and 0-999.
+     */
+    public int hour;
+    public int minute;
+    public int second;
+    public int millis;
+
+    private TimeZone mTimeZone;
+    private int mOffset;
+    /**
+     * UTC span [from, until) over which {@link #mOffset} is valid. Empty when it has to be looked up.
+     */
+    private long mOffsetValidFrom;
+    private long mOffsetValidUntil;
+    private int mOffsetLookups;
+
+    public WatchClock(TimeZone timeZone) {
+        setTimeZone(timeZone);
+    }
+
+    /**
+     * Switches to another time zone, e.g. on {@code ACTION_TIMEZONE_CHANGED}. Takes effect with the
+     * next {@link #set(long)}.
+     */
+    public void setTimeZone(TimeZone timeZone) {
+        this.mTimeZone = timeZone;
+        this.mOffsetValidFrom = 0;
+        this.mOffsetValidUntil = 0;
+    }
+
+    public TimeZone getTimeZone() {
+        return mTimeZone;
+    }
+
+    public void setToNow() {
+        set(System.currentTimeMillis());
+    }
+
+    /**
+     * Sets the fields to the local time of day at the given UTC time.
+     */
+    public void set(long timeMillis) {
+        if (timeMillis < mOffsetValidFrom || timeMillis >= mOffsetValidUntil) {
+            lookUpOffset(timeMillis);
+        }
+        long millisOfDay = (timeMillis + mOffset) % DAY_MILLIS;
+        if (millisOfDay < 0) {
+            millisOfDay += DAY_MILLIS;
+        }
+        int time = (int) millisOfDay;
+        this.hour = time / (int) HOUR_MILLIS;
+        time -= hour * (int) HOUR_MILLIS;
+        this.minute = time / (int) MINUTE_MILLIS;
+        time -= minute * (int) MINUTE_MILLIS;
+        this.second = time / (int) SECOND_MILLIS;
+        this.millis = time - second * (int) SECOND_MILLIS;
+    }
+
+    /**
+     * Returns the UTC offset in effect at the last {@link #set(long)}.
+     */
+    public int getOffset() {
+        return mOffset;
+    }
+
+    /**
+     * Returns how many times the offset has been looked up in the time zone.
+     */
+    int getOffsetLookups() {
+        return mOffsetLookups;
+    }
+
+    private void lookUpOffset(long timeMillis) {
+        mOffsetLookups++;
+        TimeZone timeZone = mTimeZone;
+        int offset = timeZone.getOffset(timeMillis);
+        long until = timeMillis + LOOKAHEAD_MILLIS;
+        if (timeZone.getOffset(until) != offset) {
+            // There's a transition within the span, look for the first millisecond with the new
+            // offset.
+            long low = timeMillis;
+            while (until - low > 1) {
+                long middle = low + (until - low) / 2;
+                if (timeZone.getOffset(middle) == offset) {
+                    low = middle;
+                } else {
+                    until = middle;
+                }
+            }
+        }
+        this.mOffset = offset;
+        this.mOffsetValidFrom = timeMillis;
+        this.mOffsetValidUntil = until;
+    }
+}
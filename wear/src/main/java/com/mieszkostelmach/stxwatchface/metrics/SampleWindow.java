@@ -0,0 +1,91 @@
+package com.mieszkostelmach.stxwatchface.metrics;
+
+/**
+ * Fixed-size ring buffer of the most recent samples, with percentiles over them. Neither recording
+ * nor computing the percentiles allocates, so it's safe to use on the drawing thread.
+ *
+ * @author Mieszko Stelmach
+ */
+public class SampleWindow {
+    private final long[] mSamples;
+    private final long[] mSorted;
+    private int mNext;
+    private int mSize;
+    private long mTotalCount;
+    private long mMax;
+
+    public SampleWindow(int capacity) {
+        this.mSamples = new long[capacity];
+        this.mSorted = new long[capacity];
+    }
+
+    public synchronized void record(long sample) {
+        mSamples[mNext] = sample;
+        mNext = (mNext + 1) % mSamples.length;
+        if (mSize < mSamples.length) {
+            mSize++;
+        }
+        mTotalCount++;
+        if (sample > mMax) {
+            mMax = sample;
+        }
+    }
+
+    /**
+     * Number of samples in the window.
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Number of samples recorded since the last {@link #clear()}, including the ones which
+     * already dropped out of the window.
+     */
+    public synchronized long getTotalCount() {
+        return mTotalCount;
+    }
+
+    /**
+     * Largest sample recorded since the last {@link #clear()}.
+     */
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    public synchronized void clear() {
+        mNext = 0;
+        mSize = 0;
+        mTotalCount = 0;
+        mMax = 0;
+    }
+
+    /**
+     * Returns the given percentile (0-100) of the samples in the window, using the nearest-rank
+     * method, or 0 if the window is empty.
+     */
+    public synchronized long percentile(int percentile) {
+        if (mSize == 0) {
+            return 0;
+        }
+        System.arraycopy(mSamples, 0, mSorted, 0, mSize);
+        sort(mSorted, mSize);
+        int rank = (percentile * mSize + 99) / 100;
+        return mSorted[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Insertion sort, the windows are small and {@code Arrays.sort} doesn't promise not to allocate.
+     */
+    private static void sort(long[] values, int length) {
+        for (int i = 1; i < length; i++) {
+            long value = values[i];
+            int j = i - 1;
+            while (j >= 0 && values[j] > value) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = value;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.mieszkostelmach.stxwatchface.metrics;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot path timings of the watch face: how long frames take to draw, how late the update timer
+ * wakes up compared to the deadline it was scheduled for and how regular the ambient ticks are.
+ * Also how often the Data Layer connection is set up and the config fetched, and how long it takes
+ * to connect.
+ * Dumped with {@code adb shell dumpsys activity service STXWatchFaceService}.
+ *
+ * @author Mieszko Stelmach
+ */
+public class WatchFaceMetrics {
+    private static final int WINDOW_SIZE = 256;
+
+    private final SampleWindow mFrameDurationsNanos = new SampleWindow(WINDOW_SIZE);
+    private final SampleWindow mTimerLatenessMillis = new SampleWindow(WINDOW_SIZE);
+    private final SampleWindow mAmbientTickIntervalsMillis = new SampleWindow(WINDOW_SIZE);
+    private long mLastAmbientTickMillis;
+    private final SampleWindow mConnectLatencyMillis = new SampleWindow(WINDOW_SIZE);
+    private long mReconnects;
+    private long mFetches;
+    private long mSkippedFetches;
+
+    public void recordFrame(long durationNanos) {
+        mFrameDurationsNanos.record(durationNanos);
+    }
+
+    /**
+     * Records a timer wake-up, {@code deadlineMillis} being the wall time it was scheduled for.
+     */
+    public void recordTimerWakeUp(long deadlineMillis, long nowMillis) {
+        mTimerLatenessMillis.record(nowMillis - deadlineMillis);
+    }
+
+    public void recordAmbientTick(long nowMillis) {
+        if (mLastAmbientTickMillis != 0) {
+            mAmbientTickIntervalsMillis.record(nowMillis - mLastAmbientTickMillis);
+        }
+        mLastAmbientTickMillis = nowMillis;
+    }
+
+    /**
+     * Records a Data Layer connection, {@code reconnect} being whether it had been connected before.
+     */
+    public synchronized void recordConnected(long latencyMillis, boolean reconnect) {
+        mConnectLatencyMillis.record(latencyMillis);
+        if (reconnect) {
+            mReconnects++;
+        }
+    }
+
+    public synchronized void recordFetch() {
+        mFetches++;
+    }
+
+    /**
+     * Records a wake-up that found the connection up and nothing missed, so no fetch was needed.
+     */
+    public synchronized void recordFetchSkipped() {
+        mSkippedFetches++;
+    }
+
+    public synchronized long getReconnects() {
+        return mReconnects;
+    }
+
+    public synchronized long getFetches() {
+        return mFetches;
+    }
+
+    public synchronized long getSkippedFetches() {
+        return mSkippedFetches;
+    }
+
+    /**
+     * Forgets the last ambient tick, so the next interval isn't measured across interactive mode.
+     */
+    public void resetAmbientTicks() {
+        mLastAmbientTickMillis = 0;
+    }
+
+    public SampleWindow getFrameDurationsNanos() {
+        return mFrameDurationsNanos;
+    }
+
+    public SampleWindow getTimerLatenessMillis() {
+        return mTimerLatenessMillis;
+    }
+
+    public SampleWindow getAmbientTickIntervalsMillis() {
+        return mAmbientTickIntervalsMillis;
+    }
+
+    public SampleWindow getConnectLatencyMillis() {
+        return mConnectLatencyMillis;
+    }
+
+    public void clear() {
+        mFrameDurationsNanos.clear();
+        mTimerLatenessMillis.clear();
+        mAmbientTickIntervalsMillis.clear();
+        mLastAmbientTickMillis = 0;
+        mConnectLatencyMillis.clear();
+        synchronized (this) {
+            mReconnects = 0;
+            mFetches = 0;
+            mSkippedFetches = 0;
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        dump(prefix, writer, "frame duration (us)", mFrameDurationsNanos, TimeUnit.MICROSECONDS.toNanos(1));
+        dump(prefix, writer, "timer lateness (ms)", mTimerLatenessMillis, 1);
+        dump(prefix, writer, "ambient tick interval (ms)", mAmbientTickIntervalsMillis, 1);
+        dump(prefix, writer, "data layer connect (ms)", mConnectLatencyMillis, 1);
+        synchronized (this) {
+            writer.print(prefix);
+            writer.print("data layer: reconnects=");
+            writer.print(mReconnects);
+            writer.print(" fetches=");
+            writer.print(mFetches);
+            writer.print(" skipped fetches=");
+            writer.println(mSkippedFetches);
+        }
+    }
+
+    private static void dump(String prefix, PrintWriter writer, String name, SampleWindow window, long divisor) {
+        writer.print(prefix);
+        writer.print(name);
+        writer.print(": count=");
+        writer.print(window.getTotalCount());
+        writer.print(" p50=");
+        writer.print(window.percentile(50) / divisor);
+        writer.print(" p95=");
+        writer.print(window.percentile(95) / divisor);
+        writer.print(" p99=");
+        writer.print(window.percentile(99) / divisor);
+        writer.print(" max=");
+        writer.println(window.getMax() / divisor);
+    }
+}
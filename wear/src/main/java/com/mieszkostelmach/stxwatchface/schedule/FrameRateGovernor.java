@@ -0,0 +1,80 @@
+package com.mieszkostelmach.stxwatchface.schedule;
+
+/**
+ * Keeps the frame rate of the sweeping second hand within a frame time budget. The frames are
+ * judged in windows of {@link #WINDOW_FRAMES}: when too many frames of a window take longer than
+ * the budget, the frame rate is halved, down to the minimum. It's never raised again on its own,
+ * only {@link #reset(int)} starts over from the requested rate.
+ *
+ * @author Mieszko Stelmach
+ */
+public class FrameRateGovernor {
+    /**
+     * Part of the frame interval a frame may take to draw. The rest is left for the system to
+     * compose and post the frame, and for the CPU to sleep.
+     */
+    static final int BUDGET_PERCENT = 50;
+    static final int WINDOW_FRAMES = 30;
+    static final int MAX_SLOW_FRAMES = WINDOW_FRAMES / 4;
+
+    private final int mMinFps;
+    private int mFps;
+    private long mBudgetNanos;
+    private int mFrames;
+    private int mSlowFrames;
+    private int mStepDowns;
+
+    public FrameRateGovernor(int minFps) {
+        this.mMinFps = minFps;
+    }
+
+    /**
+     * Starts over from the requested frame rate.
+     */
+    public void reset(int fps) {
+        this.mFps = fps;
+        this.mBudgetNanos = fps > 0 ? 1000000000L * BUDGET_PERCENT / 100 / fps : 0;
+        this.mFrames = 0;
+        this.mSlowFrames = 0;
+    }
+
+    public int getFps() {
+        return mFps;
+    }
+
+    public long getBudgetNanos() {
+        return mBudgetNanos;
+    }
+
+    /**
+     * Returns how many times the frame rate has been stepped down since the governor was created.
+     */
+    public int getStepDowns() {
+        return mStepDowns;
+    }
+
+    /**
+     * Records the time a frame took to draw. Returns true if the frame rate has just been stepped
+     * down, in which case the frames have to be rescheduled at {@link #getFps()}.
+     */
+    public boolean recordFrame(long frameNanos) {
+        if (mFps <= 0) {
+            return false;
+        }
+        if (frameNanos > mBudgetNanos) {
+            mSlowFrames++;
+        }
+        if (++mFrames < WINDOW_FRAMES) {
+            return false;
+        }
+        boolean overBudget = mSlowFrames > MAX_SLOW_FRAMES;
+        mFrames = 0;
+        mSlowFrames = 0;
+        if (!overBudget || mFps / 2 < mMinFps) {
+            return false;
+        }
+        mStepDowns++;
+        reset(mFps / 2);
+        return true;
+    }
+}
@@ -0,0 +1,155 @@
+package com.mieszkostelmach.stxwatchface.schedule;
+
+/**
+ * Decides when the next frame is due and keeps a single alarm set for it.
+ * <p/>
+ * Deadlines are absolute instants derived from the wall clock (e.g. every whole second), never
+ * "previous deadline plus period", so a late wake-up delays only the frame it belongs to and the
+ * error doesn't accumulate. Frames missed altogether are skipped rather than drawn in a burst.
+ *
+ * @author Mieszko Stelmach
+ */
+public class FrameScheduler {
+    /**
+     * Source of the wall time, replaceable in tests.
+     */
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    /**
+     * The one alarm the scheduler sets. Setting it again replaces the pending one.
+     */
+    public interface Alarm {
+        void set(long delayMillis);
+
+        void cancel();
+    }
+
+    /**
+     * Frame rate policy, returns the first deadline strictly after the given time.
+     */
+    public interface Policy {
+        long nextDeadline(long timeMillis);
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * Aligned to whole seconds, for the ticking second hand.
+     */
+    public static final Policy EVERY_SECOND = new AlignedRate(1000, 1);
+
+    /**
+     * Aligned to whole minutes, when the second hand isn't shown to save battery.
+     */
+    public static final Policy EVERY_MINUTE = new AlignedRate(60 * 1000, 1);
+
+    /**
+     * Returns a policy of {@code fps} frames a second, aligned so that a frame always falls on the
+     * whole second, for the sweeping second hand.
+     */
+    public static Policy sweep(int fps) {
+        return new AlignedRate(1000, fps);
+    }
+
+    private final Clock mClock;
+    private final Alarm mAlarm;
+    private Policy mPolicy = EVERY_SECOND;
+    private boolean mRunning;
+    private long mDeadline;
+
+    public FrameScheduler(Clock clock, Alarm alarm) {
+        this.mClock = clock;
+        this.mAlarm = alarm;
+    }
+
+    public Policy getPolicy() {
+        return mPolicy;
+    }
+
+    /**
+     * Switches the policy. If the scheduler is running, the next frame is rescheduled accordingly.
+     */
+    public void setPolicy(Policy policy) {
+        if (mPolicy == policy) {
+            return;
+        }
+        this.mPolicy = policy;
+        if (mRunning) {
+            scheduleNext(mClock.currentTimeMillis());
+        }
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Starts the scheduler with a frame right away, followed by the ones set by the policy.
+     */
+    public void start() {
+        mRunning = true;
+        mDeadline = 0;
+        mAlarm.set(0);
+    }
+
+    public void stop() {
+        mRunning = false;
+        mDeadline = 0;
+        mAlarm.cancel();
+    }
+
+    /**
+     * Wall time the pending alarm is meant to go off at, 0 if it's not tied to a deadline (the
+     * first frame after {@link #start()}).
+     */
+    public long getDeadline() {
+        return mDeadline;
+    }
+
+    /**
+     * To be called when the alarm goes off, after drawing the frame. Sets the alarm for the next one.
+     */
+    public void onAlarm() {
+        if (!mRunning) {
+            return;
+        }
+        // An alarm going off a bit early mustn't schedule the same deadline again.
+        scheduleNext(Math.max(mClock.currentTimeMillis(), mDeadline));
+    }
+
+    private void scheduleNext(long timeMillis) {
+        mDeadline = mPolicy.nextDeadline(timeMillis);
+        mAlarm.set(mDeadline - mClock.currentTimeMillis());
+    }
+
+    /**
+     * {@code frames} frames evenly spread over every {@code periodMillis}, with the first one at
+     * the start of the period. Deadlines are rounded up to whole milliseconds.
+     */
+    static final class AlignedRate implements Policy {
+        private final long mPeriodMillis;
+        private final int mFrames;
+
+        AlignedRate(long periodMillis, int frames) {
+            if (periodMillis <= 0 || frames <= 0) {
+                throw new IllegalArgumentException("Invalid rate: " + frames + " frames per " + periodMillis + " ms");
+            }
+            this.mPeriodMillis = periodMillis;
+            this.mFrames = frames;
+        }
+
+        @Override
+        public long nextDeadline(long timeMillis) {
+            // Wall times are positive, so the integer division rounds down.
+            long frame = timeMillis * mFrames / mPeriodMillis + 1;
+            return (frame * mPeriodMillis + mFrames - 1) / mFrames;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.mieszkostelmach.stxwatchface.service;
+
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import com.mieszkostelmach.stxwatchface.face.BackgroundAssets;
+import com.mieszkostelmach.stxwatchface.face.BackgroundFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decodes face backgrounds straight at the surface size on a background thread, so that neither
+ * the full resolution drawable nor its scaling ever touches the drawing thread.
+ * <p/>
+ * The backgrounds pre-scaled at build time to the common screen sizes, see
+ * {@link BackgroundAssets}, are decoded from the assets as they are. For the other sizes the
+ * drawable is subsampled while it's decoded ({@code inSampleSize}) and only then scaled to the
+ * exact size. Backgrounds without transparent pixels end up as {@code RGB_565}, which halves their
+ * memory footprint. Results are delivered on the thread which created the decoder and kept in a
+ * {@link BitmapCache}, so a background is only decoded again once it's evicted.
+ *
+ * @author Mieszko Stelmach
+ */
+class BackgroundDecoder {
+    private static final String TAG = "BackgroundDecoder";
+
+    interface Callback {
+        /**
+         * Called with the decoded background, unless the request was superseded by a newer one or
+         * the decoding failed, in which case {@code bitmap} is {@code null}.
+         */
+        void onBackgroundDecoded(int drawableId, int width, int height, Bitmap bitmap);
+    }
+
+    /**
+     * The config preferred when decoding.
+     */
+    private static final Bitmap.Config PREFERRED_CONFIG = Bitmap.Config.RGB_565;
+
+    private final Resources mResources;
+    private final BitmapCache mCache;
+    private final Handler mResultHandler = new Handler();
+    private HandlerThread mThread;
+    /**
+     * The pre-scaled backgrounds in the assets, listed on the first decode.
+     */
+    private Set<String> mPrescaled;
+    private Handler mDecodeHandler;
+
+    /**
+     * Incremented with every request, only the latest one gets delivered.
+     */
+    private volatile int mGeneration;
+
+    BackgroundDecoder(Resources resources, BitmapCache cache) {
+        this.mResources = resources;
+        this.mCache = cache;
+    }
+
+    /**
+     * Decodes the drawable asynchronously and passes it to the callback, unless another request is
+     * made in the meantime. Cached backgrounds are passed to the callback right away.
+     */
+    void decode(final int drawableId, final int width, final int height, final Callback callback) {
+        final int generation = ++mGeneration;
+        Bitmap cached = mCache.get(drawableId, width, height);
+        if (cached != null) {
+            callback.onBackgroundDecoded(drawableId, width, height, cached);
+            return;
+        }
+        if (mThread == null) {
+            mThread = new HandlerThread(TAG, android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            mThread.start();
+            mDecodeHandler = new Handler(mThread.getLooper());
+        }
+        mDecodeHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mGeneration) {
+                    return;
+                }
+                final Bitmap bitmap = decodeNow(drawableId, width, height);
+                mResultHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        callback.onBackgroundDecoded(drawableId, width, height, bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Cancels the pending requests, {@link #decode} has to be called from the result thread for
+     * this to be reliable.
+     */
+    void cancel() {
+        mGeneration++;
+    }
+
+    void quit() {
+        cancel();
+        if (mThread != null) {
+            mThread.quit();
+            mThread = null;
+            mDecodeHandler = null;
+        }
+    }
+
+    /**
+     * Returns the drawable decoded at exactly the given size, decoding it on the calling thread if
+     * it isn't cached.
+     */
+    Bitmap decodeNow(int drawableId, int width, int height) {
+        Bitmap cached = mCache.get(drawableId, width, height);
+        if (cached != null) {
+            return cached;
+        }
+        Bitmap bitmap = decodePrescaled(drawableId, width, height);
+        if (bitmap == null) {
+            bitmap = decodeScaled(drawableId, width, height);
+        }
+        if (bitmap != null) {
+            mCache.put(drawableId, width, height, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the background pre-scaled to exactly the given size, null if there's none.
+     */
+    private Bitmap decodePrescaled(int drawableId, int width, int height) {
+        long start = System.currentTimeMillis();
+        String background = mResources.getResourceEntryName(drawableId);
+        if (!getPrescaled().contains(BackgroundAssets.getFileName(background, width, height))) {
+            return null;
+        }
+        String path = BackgroundAssets.getPath(background, width, height);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        // The opaque ones are written without alpha, already quantized, so they're decoded as they
+        // are.
+        options.inPreferredConfig = PREFERRED_CONFIG;
+        Bitmap bitmap = null;
+        InputStream in = null;
+        try {
+            in = mResources.getAssets().open(path, AssetManager.ACCESS_STREAMING);
+            bitmap = BitmapFactory.decodeStream(in, null, options);
+        } catch (IOException e) {
+            Log.e(TAG, "Can't read background " + path, e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing to do about it.
+                }
+            }
+        }
+        if (bitmap != null && (bitmap.getWidth() != width || bitmap.getHeight() != height)) {
+            Log.e(TAG, "Background " + path + " is " + bitmap.getWidth() + "x" + bitmap.getHeight());
+            bitmap.recycle();
+            bitmap = null;
+        }
+        if (bitmap != null && Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Decoded background " + path + " " + bitmap.getConfig() + " in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+        return bitmap;
+    }
+
+    private synchronized Set<String> getPrescaled() {
+        if (mPrescaled == null) {
+            mPrescaled = new HashSet<>();
+            try {
+                mPrescaled.addAll(Arrays.asList(mResources.getAssets().list(BackgroundAssets.DIRECTORY)));
+            } catch (IOException e) {
+                Log.e(TAG, "Can't list the pre-scaled backgrounds", e);
+            }
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Pre-scaled backgrounds: " + mPrescaled.size());
+            }
+        }
+        return mPrescaled;
+    }
+
+    private Bitmap decodeScaled(int drawableId, int width, int height) {
+        long start = System.currentTimeMillis();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        // Work with the raw pixels of the drawable, the density of the resource bucket doesn't
+        // matter since it's scaled to the surface anyway.
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, drawableId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.e(TAG, "Can't decode background " + drawableId);
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        // Honoured by the decoder only for images without an alpha channel.
+        options.inPreferredConfig = PREFERRED_CONFIG;
+        Bitmap sampled = BitmapFactory.decodeResource(mResources, drawableId, options);
+        if (sampled == null) {
+            Log.e(TAG, "Can't decode background " + drawableId);
+            return null;
+        }
+
+        // The drawables have an alpha channel even where all of their pixels are opaque.
+        boolean opaque = !sampled.hasAlpha() || isOpaque(sampled);
+        Bitmap.Config config = opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        Bitmap result;
+        if (sampled.getWidth() == width && sampled.getHeight() == height && sampled.getConfig() == config) {
+            result = sampled;
+        } else {
+            result = Bitmap.createBitmap(width, height, config);
+            Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            new Canvas(result).drawBitmap(sampled, null, new Rect(0, 0, width, height), paint);
+            sampled.recycle();
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Decoded background " + drawableId + " at " + width + "x" + height + " " + config
+                    + ", inSampleSize " + sampleSize + " in " + (System.currentTimeMillis() - start) + " ms"
+                    + (Looper.myLooper() == Looper.getMainLooper() ? " on the main thread" : ""));
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether all the pixels of the bitmap are opaque, see {@link BackgroundFormat}.
+     */
+    private static boolean isOpaque(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int[] row = new int[width];
+        for (int y = 0; y < bitmap.getHeight(); y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            if (!BackgroundFormat.isOpaque(row, 0, width)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
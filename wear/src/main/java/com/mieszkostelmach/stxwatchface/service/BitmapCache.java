@@ -0,0 +1,105 @@
+package com.mieszkostelmach.stxwatchface.service;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * Size bounded LRU cache of decoded backgrounds, keyed by the drawable and the size it was decoded
+ * at. The bitmaps count with the memory they actually take. Makes switching back and forth between
+ * faces instant.
+ * <p/>
+ * Cached bitmaps may be in use on the surface at any time, so they're never recycled, evicted
+ * entries are simply left to the garbage collector.
+ *
+ * @author Mieszko Stelmach
+ */
+class BitmapCache {
+    private static final String TAG = "BitmapCache";
+
+    private final LruCache<Key, Bitmap> mCache;
+
+    BitmapCache(int maxBytes) {
+        this.mCache = new LruCache<Key, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Key key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Key key, Bitmap oldValue, Bitmap newValue) {
+                if (evicted && Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Evicted " + key + ", " + getStats());
+                }
+            }
+        };
+    }
+
+    Bitmap get(int drawableId, int width, int height) {
+        Bitmap bitmap = mCache.get(new Key(drawableId, width, height));
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, (bitmap != null ? "Hit " : "Miss ") + drawableId + " " + width + "x" + height + ", " + getStats());
+        }
+        return bitmap;
+    }
+
+    void put(int drawableId, int width, int height, Bitmap bitmap) {
+        mCache.put(new Key(drawableId, width, height), bitmap);
+    }
+
+    /**
+     * Gives memory back to the system, see {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mCache.trimToSize(mCache.maxSize() / 2);
+        }
+        Log.i(TAG, "onTrimMemory " + level + ", " + getStats());
+    }
+
+    String getStats() {
+        return "size " + mCache.size() + "/" + mCache.maxSize() + " bytes, hits " + mCache.hitCount()
+                + ", misses " + mCache.missCount() + ", evictions " + mCache.evictionCount();
+    }
+
+    private static final class Key {
+        final int mDrawableId;
+        final int mWidth;
+        final int mHeight;
+
+        Key(int drawableId, int width, int height) {
+            this.mDrawableId = drawableId;
+            this.mWidth = width;
+            this.mHeight = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mDrawableId == key.mDrawableId && mWidth == key.mWidth && mHeight == key.mHeight;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mDrawableId;
+            result = 31 * result + mWidth;
+            result = 31 * result + mHeight;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return mDrawableId + " " + mWidth + "x" + mHeight;
+        }
+    }
+}
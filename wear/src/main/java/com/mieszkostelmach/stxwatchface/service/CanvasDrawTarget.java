@@ -0,0 +1,162 @@
+package com.mieszkostelmach.stxwatchface.service;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+
+import com.mieszkostelmach.stxwatchface.render.DrawTarget;
+import com.mieszkostelmach.stxwatchface.render.HandGeometry;
+import com.mieszkostelmach.stxwatchface.render.WatchFaceRenderer;
+
+/**
+ * {@link DrawTarget} backed by the Android {@link Canvas} of the watch face surface. Keeps the
+ * static layers of the {@link WatchFaceRenderer} as bitmaps and redraws them lazily.
+ * <p/>
+ * The layer bitmaps are only allocated when the surface size changes, so drawing a frame doesn't
+ * allocate anything, even when a layer has to be redrawn.
+ *
+ * @author Mieszko Stelmach
+ */
+class CanvasDrawTarget implements DrawTarget {
+    private static final String TAG = "CanvasDrawTarget";
+
+    private final WatchFaceRenderer mRenderer;
+    private final Paint[] mPaints = new Paint[PAINT_COUNT];
+    private final Paint mBackgroundPaint;
+    private final Rect mBackgroundBounds = new Rect();
+
+    /**
+     * Background and ticks composited once per mode.
+     */
+    private final Bitmap[] mStaticLayers = new Bitmap[WatchFaceRenderer.LAYER_COUNT];
+    private final boolean[] mStaticLayerDirty = new boolean[WatchFaceRenderer.LAYER_COUNT];
+    private final Canvas mLayerCanvas = new Canvas();
+
+    private Canvas mCanvas;
+    private Bitmap mBackgroundBitmap;
+
+    CanvasDrawTarget(WatchFaceRenderer renderer) {
+        this.mRenderer = renderer;
+        this.mBackgroundPaint = new Paint();
+        mBackgroundPaint.setFilterBitmap(true);
+    }
+
+    void setPaint(int paint, Paint value) {
+        mPaints[paint] = value;
+    }
+
+    void setCanvas(Canvas canvas) {
+        this.mCanvas = canvas;
+    }
+
+    /**
+     * Replaces the background, which should already be scaled to the surface size.
+     */
+    void setBackgroundBitmap(Bitmap backgroundBitmap) {
+        this.mBackgroundBitmap = backgroundBitmap;
+        invalidateStaticLayers();
+    }
+
+    boolean hasBackgroundBitmap() {
+        return mBackgroundBitmap != null;
+    }
+
+    /**
+     * (Re)allocates the static layer bitmaps for the new surface size. Should be called when the
+     * surface changes, so that it doesn't happen while drawing a frame.
+     */
+    void setSurfaceSize(int width, int height) {
+        for (int layer = 0; layer < WatchFaceRenderer.LAYER_COUNT; layer++) {
+            Bitmap bitmap = mStaticLayers[layer];
+            if (bitmap != null && bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                continue;
+            }
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "setSurfaceSize: allocating layer " + layer + " " + width + "x" + height);
+            }
+            // Ambient layers are opaque, so they don't need the alpha channel.
+            Bitmap.Config config = layer == WatchFaceRenderer.LAYER_INTERACTIVE
+                    ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+            mStaticLayers[layer] = Bitmap.createBitmap(width, height, config);
+            mStaticLayerDirty[layer] = true;
+        }
+    }
+
+    /**
+     * Marks all the static layers as outdated. They're lazily redrawn when they're drawn next time.
+     */
+    void invalidateStaticLayers() {
+        for (int layer = 0; layer < WatchFaceRenderer.LAYER_COUNT; layer++) {
+            mStaticLayerDirty[layer] = true;
+        }
+    }
+
+    @Override
+    public void drawColor(int color) {
+        mCanvas.drawColor(color);
+    }
+
+    @Override
+    public void drawBackground() {
+        if (mBackgroundBitmap == null) {
+            mCanvas.drawColor(Color.BLACK);
+            return;
+        }
+        // A no-op scale unless the background is still being decoded for a new surface size.
+        mBackgroundBounds.set(0, 0, mCanvas.getWidth(), mCanvas.getHeight());
+        mCanvas.drawBitmap(mBackgroundBitmap, null, mBackgroundBounds, mBackgroundPaint);
+    }
+
+    @Override
+    public void drawStaticLayer(int layer) {
+        if (mStaticLayers[layer] == null) {
+            // The surface size wasn't known up front.
+            HandGeometry geometry = mRenderer.getGeometry();
+            setSurfaceSize(geometry.getWidth(), geometry.getHeight());
+        }
+        if (mStaticLayerDirty[layer]) {
+            redrawStaticLayer(layer);
+        }
+        mCanvas.drawBitmap(mStaticLayers[layer], 0, 0, null);
+    }
+
+    private void redrawStaticLayer(int layer) {
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "redrawStaticLayer: " + layer);
+        }
+        Bitmap bitmap = mStaticLayers[layer];
+        bitmap.eraseColor(Color.TRANSPARENT);
+        mLayerCanvas.setBitmap(bitmap);
+
+        Canvas surfaceCanvas = mCanvas;
+        this.mCanvas = mLayerCanvas;
+        try {
+            mRenderer.drawStaticLayer(this, layer);
+        } finally {
+            this.mCanvas = surfaceCanvas;
+            mLayerCanvas.setBitmap(null);
+        }
+        mStaticLayerDirty[layer] = false;
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+        mCanvas.drawLine(startX, startY, stopX, stopY, mPaints[paint]);
+    }
+
+    @Override
+    public void drawLines(float[] points, int offset, int count, int paint) {
+        mCanvas.drawLines(points, offset, count, mPaints[paint]);
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, int paint) {
+        mCanvas.drawOval(left, top, right, bottom, mPaints[paint]);
+    }
+}
@@ -0,0 +1,57 @@
+package com.mieszkostelmach.stxwatchface.service;
+
+import android.util.Log;
+
+import com.google.android.gms.wearable.DataMap;
+import com.mieszkostelmach.stxwatchface.config.WatchFaceConfig;
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigCodec;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigSchema;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigState;
+
+/**
+ * Reads the config DataItem, which holds a {@link ConfigCodec} encoded config, or a DataMap with
+ * the face name when it was written by a version before the binary protocol.
+ *
+ * @author Mieszko Stelmach
+ */
+final class ConfigDataItems {
+    private static final String TAG = "STXConfigDataItems";
+
+    private ConfigDataItems() {
+    }
+
+    /**
+     * Reads the DataItem data into the config, leaves the config empty if there's nothing to read.
+     */
+    static void read(byte[] data, ConfigState config) {
+        config.clear();
+        if (data == null || data.length == 0) {
+            return;
+        }
+        try {
+            ConfigCodec.decode(data, config);
+            return;
+        } catch (IllegalArgumentException e) {
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Not a binary config, reading it as a DataMap: " + e.getMessage());
+            }
+        }
+        config.clear();
+        DataMap dataMap;
+        try {
+            dataMap = DataMap.fromByteArray(data);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unreadable config DataItem", e);
+            return;
+        }
+        // Revision 0, so that any change from the phone overrides it.
+        int face = WatchFaceConfig.parseFace(dataMap.getString(WatchFaceConfig.KEY_WATCH_FACE));
+        if (face != FaceRegistry.UNKNOWN && dataMap.containsKey(WatchFaceConfig.KEY_WATCH_FACE)) {
+            config.set(ConfigSchema.FIELD_FACE, face);
+        }
+        if (dataMap.containsKey(WatchFaceConfig.KEY_SWEEP_FPS)) {
+            config.set(ConfigSchema.FIELD_SWEEP_FPS, dataMap.getInt(WatchFaceConfig.KEY_SWEEP_FPS));
+        }
+    }
+}
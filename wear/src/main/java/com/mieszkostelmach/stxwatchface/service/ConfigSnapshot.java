@@ -0,0 +1,57 @@
+package com.mieszkostelmach.stxwatchface.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+import android.util.Log;
+
+import com.mieszkostelmach.stxwatchface.protocol.ConfigCodec;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigState;
+
+/**
+ * Local copy of the last applied config, so that the engine can draw the selected face from the
+ * very first frame instead of waiting for the Data Layer. Kept {@link ConfigCodec} encoded in the
+ * SharedPreferences, a few bytes that are read once when the engine is created.
+ *
+ * @author Mieszko Stelmach
+ */
+class ConfigSnapshot {
+    private static final String TAG = "STXConfigSnapshot";
+    private static final String PREFERENCES_NAME = "config_snapshot";
+    private static final String KEY_CONFIG = "config";
+
+    private final SharedPreferences mPreferences;
+
+    ConfigSnapshot(Context context) {
+        this.mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Reads the snapshot into the config. Returns false, leaving the config empty, if there's no
+     * snapshot yet or it can't be read.
+     */
+    boolean load(ConfigState config) {
+        config.clear();
+        String encoded = mPreferences.getString(KEY_CONFIG, null);
+        if (encoded == null) {
+            return false;
+        }
+        try {
+            ConfigCodec.decode(Base64.decode(encoded, Base64.NO_WRAP), config);
+            return true;
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Dropping unreadable config snapshot", e);
+            config.clear();
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the snapshot, the write to the disk happens in the background.
+     */
+    void save(ConfigState config) {
+        mPreferences.edit()
+                .putString(KEY_CONFIG, Base64.encodeToString(ConfigCodec.encode(config), Base64.NO_WRAP))
+                .apply();
+    }
+}
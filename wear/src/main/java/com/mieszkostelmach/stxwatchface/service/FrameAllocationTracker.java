@@ -0,0 +1,57 @@
+package com.mieszkostelmach.stxwatchface.service;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Counts the objects allocated by the drawing thread during a frame and logs the frames which
+ * allocated anything. Meant for debug builds only, allocation counting slows the VM down.
+ *
+ * @author Mieszko Stelmach
+ */
+@SuppressWarnings("deprecation")
+class FrameAllocationTracker {
+    private static final String TAG = "FrameAllocationTracker";
+
+    private boolean mStarted;
+    private long mFrames;
+    private long mAllocatingFrames;
+
+    void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        Debug.startAllocCounting();
+    }
+
+    void stop() {
+        if (!mStarted) {
+            return;
+        }
+        mStarted = false;
+        Debug.stopAllocCounting();
+    }
+
+    void beginFrame() {
+        if (mStarted) {
+            Debug.resetThreadAllocCount();
+            Debug.resetThreadAllocSize();
+        }
+    }
+
+    void endFrame() {
+        if (!mStarted) {
+            return;
+        }
+        // Read both counters before logging, which allocates on its own.
+        int count = Debug.getThreadAllocCount();
+        int size = Debug.getThreadAllocSize();
+        mFrames++;
+        if (count > 0) {
+            mAllocatingFrames++;
+            Log.w(TAG, "Frame " + mFrames + " allocated " + count + " objects (" + size + " bytes), "
+                    + mAllocatingFrames + " allocating frames so far");
+        }
+    }
+}
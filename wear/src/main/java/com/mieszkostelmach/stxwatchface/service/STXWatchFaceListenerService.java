@@ -1,17 +1,24 @@
 package com.mieszkostelmach.stxwatchface.service;
 
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.util.Log;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.MessageEvent;
-import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 import com.google.android.gms.wearable.WearableListenerService;
+import com.mieszkostelmach.stxwatchface.config.WatchFaceConfig;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigCodec;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigState;
+import com.mieszkostelmach.stxwatchface.sync.ConfigCoalescer;
 
 import java.util.concurrent.TimeUnit;
 
@@ -22,49 +29,141 @@ import java.util.concurrent.TimeUnit;
 public class STXWatchFaceListenerService extends WearableListenerService implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
     private static final String TAG = "STXWatchFaceListener";
 
+    /**
+     * How long the config messages are collected before they're written in one go, long enough to
+     * cover the user tapping through the faces in the companion app.
+     */
+    private static final long COALESCE_WINDOW_MS = 500;
+
     private GoogleApiClient mGoogleApiClient;
 
+    /**
+     * Background thread the config is written on, so that waiting for the client to connect and
+     * for the current config doesn't block the listener thread.
+     */
+    private HandlerThread mWriterThread;
+    private Handler mWriterHandler;
+    private ConfigCoalescer mConfigCoalescer;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // One client for the lifetime of the service, connected up front rather than per message.
+        this.mGoogleApiClient = new GoogleApiClient.Builder(this)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .addApi(Wearable.API)
+                .build();
+        mGoogleApiClient.connect();
+
+        this.mWriterThread = new HandlerThread("STXConfigWriter");
+        mWriterThread.start();
+        this.mWriterHandler = new Handler(mWriterThread.getLooper());
+        this.mConfigCoalescer = new ConfigCoalescer(new ConfigCoalescer.Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                mWriterHandler.postDelayed(task, delayMillis);
+            }
+        }, new DataItemConfigStore(), COALESCE_WINDOW_MS);
+    }
+
+    @Override
+    public void onDestroy() {
+        // Write whatever is still pending before letting go of the client.
+        mWriterHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mConfigCoalescer.flush();
+                mGoogleApiClient.disconnect();
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Config writes: " + mConfigCoalescer.getStats());
+                }
+            }
+        });
+        mWriterThread.quitSafely();
+        super.onDestroy();
+    }
+
     @Override
     public void onMessageReceived(MessageEvent messageEvent) {
-        if (!messageEvent.getPath().equals(STXWatchFaceService.PATH_WITH_FEATURE)) {
+        if (!messageEvent.getPath().equals(WatchFaceConfig.PATH_WITH_FEATURE)) {
             return;
         }
         byte[] rawData = messageEvent.getData();
-        // It's allowed that the message carries only some of the keys used in the config DataItem
-        // and skips the ones that we don't want to change.
-        DataMap config = DataMap.fromByteArray(rawData);
+        // The message carries only the fields that changed, in a new revision of the config.
+        ConfigState changes = new ConfigState();
+        try {
+            ConfigCodec.decode(rawData, changes);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Dropping malformed config message", e);
+            return;
+        }
         if (Log.isLoggable(TAG, Log.DEBUG)) {
-            Log.d(TAG, "Received watch face config message: " + config);
+            Log.d(TAG, "Received watch face config message: " + changes);
         }
+        mConfigCoalescer.offer(changes);
+    }
 
-        if (mGoogleApiClient == null) {
-            this.mGoogleApiClient = new GoogleApiClient.Builder(this)
-                    .addConnectionCallbacks(this)
-                    .addOnConnectionFailedListener(this)
-                    .addApi(Wearable.API)
+    /**
+     * Keeps the config in the DataItem the watch face listens to. Runs on the writer thread, so it
+     * can wait for the results.
+     */
+    private class DataItemConfigStore implements ConfigCoalescer.Store {
+        @Override
+        public boolean load(ConfigState config) {
+            if (!ensureConnected()) {
+                return false;
+            }
+            NodeApi.GetLocalNodeResult localNode = Wearable.NodeApi.getLocalNode(mGoogleApiClient).await();
+            if (!localNode.getStatus().isSuccess()) {
+                return false;
+            }
+            Uri uri = new Uri.Builder()
+                    .scheme("wear")
+                    .path(WatchFaceConfig.PATH_WITH_FEATURE)
+                    .authority(localNode.getNode().getId())
                     .build();
+            DataItemBuffer dataItems = Wearable.DataApi.getDataItems(mGoogleApiClient, uri).await();
+            try {
+                if (!dataItems.getStatus().isSuccess()) {
+                    Log.e(TAG, "Failed to read the config DataItem: " + dataItems.getStatus());
+                    return false;
+                }
+                if (dataItems.getCount() > 0) {
+                    ConfigDataItems.read(dataItems.get(0).getData(), config);
+                }
+                return true;
+            } finally {
+                dataItems.release();
+            }
+        }
+
+        @Override
+        public boolean write(ConfigState config) {
+            if (!ensureConnected()) {
+                return false;
+            }
+            PutDataRequest putDataRequest = PutDataRequest.create(WatchFaceConfig.PATH_WITH_FEATURE)
+                    .setData(ConfigCodec.encode(config));
+            DataApi.DataItemResult dataItemResult = Wearable.DataApi
+                    .putDataItem(mGoogleApiClient, putDataRequest).await();
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "putDataItem result status: " + dataItemResult.getStatus());
+            }
+            return dataItemResult.getStatus().isSuccess();
         }
-        if (!mGoogleApiClient.isConnected()) {
-            ConnectionResult connectionResult = mGoogleApiClient.blockingConnect(30, TimeUnit.SECONDS);
 
+        private boolean ensureConnected() {
+            if (mGoogleApiClient.isConnected()) {
+                return true;
+            }
+            ConnectionResult connectionResult = mGoogleApiClient.blockingConnect(30, TimeUnit.SECONDS);
             if (!connectionResult.isSuccess()) {
                 Log.e(TAG, "Failed to connect to GoogleApiClient.");
-                return;
+                return false;
             }
+            return true;
         }
-
-        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(STXWatchFaceService.PATH_WITH_FEATURE);
-        DataMap configToPut = putDataMapRequest.getDataMap();
-        configToPut.putAll(config);
-        Wearable.DataApi.putDataItem(mGoogleApiClient, putDataMapRequest.asPutDataRequest())
-                .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                    @Override
-                    public void onResult(DataApi.DataItemResult dataItemResult) {
-                        if (Log.isLoggable(TAG, Log.DEBUG)) {
-                            Log.d(TAG, "putDataItem result status: " + dataItemResult.getStatus());
-                        }
-                    }
-                });
     }
 
     @Override
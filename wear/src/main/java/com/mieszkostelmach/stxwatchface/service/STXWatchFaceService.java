@@ -7,12 +7,8 @@ import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.Path;
 import android.graphics.Rect;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
@@ -20,7 +16,6 @@ import android.os.Message;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
-import android.text.format.Time;
 import android.util.Log;
 import android.view.SurfaceHolder;
 
@@ -31,14 +26,29 @@ import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
-import com.google.android.gms.wearable.DataMap;
-import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.Wearable;
-import com.mieszkostelmach.stxwatchface.R;
-
+import com.mieszkostelmach.stxwatchface.BuildConfig;
+import com.mieszkostelmach.stxwatchface.clock.WatchClock;
+import com.mieszkostelmach.stxwatchface.config.WatchFaceConfig;
+import com.mieszkostelmach.stxwatchface.face.BackgroundFormat;
+import com.mieszkostelmach.stxwatchface.face.Face;
+import com.mieszkostelmach.stxwatchface.face.FaceRegistry;
+import com.mieszkostelmach.stxwatchface.metrics.WatchFaceMetrics;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigSchema;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigState;
+import com.mieszkostelmach.stxwatchface.render.DirtyRect;
+import com.mieszkostelmach.stxwatchface.render.DrawTarget;
+import com.mieszkostelmach.stxwatchface.render.HandGeometry;
+import com.mieszkostelmach.stxwatchface.render.LowBitAmbientRenderer;
+import com.mieszkostelmach.stxwatchface.render.WatchFaceRenderer;
+import com.mieszkostelmach.stxwatchface.schedule.FrameRateGovernor;
+import com.mieszkostelmach.stxwatchface.schedule.FrameScheduler;
+import com.mieszkostelmach.stxwatchface.sync.ConnectionManager;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author Mieszko Stelmach
@@ -47,21 +57,71 @@ import java.util.concurrent.TimeUnit;
 public class STXWatchFaceService extends CanvasWatchFaceService {
     private static final String TAG = "STXWatchFaceService";
 
-    public static final String KEY_WATCH_FACE = "WATCH_FACE";
-    public static final String PATH_WITH_FEATURE = "/watch_face_config/STXWatchFace";
+    /**
+     * Memory budget for the decoded backgrounds, enough for all the faces at 400x400 as the
+     * {@link BackgroundDecoder} decodes them: RGB_565, their backgrounds are all opaque.
+     */
+    private static final int BACKGROUND_CACHE_BYTES = FaceRegistry.getCount()
+            * BackgroundFormat.getByteCount(400, 400, true);
 
     /**
-     * Update rate in milliseconds for interactive mode. We update once a second to advance the
-     * second hand.
+     * How long the Data Layer connection is kept after the watch face goes invisible, long enough to
+     * cover a card peeking over it and going away.
      */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long CONNECTION_GRACE_MS = 60 * 1000;
+
+    private final BitmapCache mBackgroundCache = new BitmapCache(BACKGROUND_CACHE_BYTES);
+
+    private final WatchFaceMetrics mMetrics = new WatchFaceMetrics();
+
+    /**
+     * Background drawables of the {@link FaceRegistry} faces, indexed by the face id.
+     */
+    private int[] mFaceBackgrounds;
 
     @Override
     public Engine onCreateEngine() {
         return new STXEngine();
     }
 
-    private class STXEngine extends Engine implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener, DataApi.DataListener, ResultCallback<DataApi.DataItemResult> {
+    /**
+     * Returns the background drawable of the face, the drawables are looked up by name once.
+     */
+    int getFaceBackground(Face face) {
+        if (mFaceBackgrounds == null) {
+            int[] backgrounds = new int[FaceRegistry.getCount()];
+            for (int id = 0; id < backgrounds.length; id++) {
+                backgrounds[id] = getResources().getIdentifier(
+                        FaceRegistry.get(id).background, "drawable", getPackageName());
+            }
+            this.mFaceBackgrounds = backgrounds;
+        }
+        return mFaceBackgrounds[face.id];
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        mBackgroundCache.trimMemory(level);
+    }
+
+    /**
+     * Dumps the frame timing metrics, {@code adb shell dumpsys activity service STXWatchFaceService}.
+     * Pass {@code reset} to clear them afterwards.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(fd, writer, args);
+        writer.println("STXWatchFaceService metrics:");
+        mMetrics.dump("  ", writer);
+        writer.println("  background cache: " + mBackgroundCache.getStats());
+        if (args != null && args.length > 0 && "reset".equals(args[0])) {
+            mMetrics.clear();
+            writer.println("  metrics reset");
+        }
+    }
+
+    private class STXEngine extends Engine implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener, DataApi.DataListener, BackgroundDecoder.Callback {
         private static final int MSG_UPDATE_TIME = 0;
 
         Paint mCenterPaint;
@@ -71,14 +131,69 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
         Paint mSecondPaint;
         Paint mTickPaint;
         boolean mMute;
-        Time mTime;
-
-        Path mPath;
-        Matrix mMatrix;
+        WatchClock mClock;
 
+        Face mFace = FaceRegistry.get(FaceRegistry.DEFAULT_FACE);
         int backgroundBitmapId;
-        Bitmap mBackgroundBitmap;
-        Bitmap mBackgroundScaledBitmap;
+
+        /**
+         * Applied config, restored from {@link #mConfigSnapshot} when the engine is created, and the
+         * config last read from the Data Layer to reconcile it with.
+         */
+        final ConfigState mConfig = new ConfigState();
+        final ConfigState mDataLayerConfig = new ConfigState();
+        /**
+         * Id of this watch, whose config DataItem is the one to follow: the DataItems of the other
+         * watches paired with the phone are synced here too. Null until the first fetch looks it up.
+         */
+        String mLocalNodeId;
+        ConfigSnapshot mConfigSnapshot;
+        BackgroundDecoder mBackgroundDecoder;
+
+        final WatchFaceRenderer mRenderer = new WatchFaceRenderer();
+        CanvasDrawTarget mDrawTarget;
+
+        /**
+         * Logs the frames which allocate on the heap, in debug builds only.
+         */
+        final FrameAllocationTracker mAllocationTracker = new FrameAllocationTracker();
+
+        /**
+         * Whether the once a second ticks only redraw the part of the surface that changed (see
+         * {@link #drawPartialFrame()}) instead of invalidating the whole surface.
+         */
+        boolean mPartialRedraw = true;
+
+        /**
+         * Time shown on the surface and whether it's up to date with everything but the time, i.e.
+         * whether a partial redraw can be applied on top of it.
+         */
+        boolean mDrawnFrameValid;
+        int mDrawnHour;
+        int mDrawnMinute;
+        int mDrawnSecond;
+        int mDrawnMillis;
+        final DirtyRect mDirtyRect = new DirtyRect();
+        final Rect mDirtyBounds = new Rect();
+
+        /**
+         * Ambient frames of the low-bit displays without the burn-in protection, drawn from the
+         * pre-rasterized hands by {@link #mLowBitRenderer} and copied into {@link #mLowBitFrame}
+         * only where they changed. Built on the first such frame, dropped when the face or the
+         * surface size changes.
+         */
+        LowBitAmbientRenderer mLowBitRenderer;
+        Bitmap mLowBitFrame;
+        final DirtyRect mLowBitDirty = new DirtyRect();
+
+        /**
+         * Frames per second of the sweeping second hand, 0 for the ticking one. The requested rate
+         * comes from the config, {@link #mFrameRateGovernor} steps it down when the frames don't
+         * fit in the budget.
+         */
+        int mSweepFps;
+        FrameScheduler.Policy mSweepPolicy;
+        final FrameRateGovernor mFrameRateGovernor = new FrameRateGovernor(WatchFaceConfig.SWEEP_FPS_MIN);
 
         boolean mRegisteredTimeZoneReceiver;
 
@@ -91,7 +206,7 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
         boolean mBurnInProtectMode;
 
         /**
-         * Handler to update the time once a second in interactive mode.
+         * Handler to update the time in interactive mode, whenever {@link #mFrameScheduler} says so.
          */
         final Handler mUpdateTimeHandler = new Handler() {
             @Override
@@ -101,29 +216,87 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
                         if (Log.isLoggable(TAG, Log.VERBOSE)) {
                             Log.v(TAG, "updating time");
                         }
-                        invalidate();
-                        if (shouldTimerBeRunning()) {
-                            long timeMs = System.currentTimeMillis();
-                            long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                                    - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                            mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
+                        long deadlineMs = mFrameScheduler.getDeadline();
+                        if (deadlineMs != 0) {
+                            mMetrics.recordTimerWakeUp(deadlineMs, System.currentTimeMillis());
                         }
+                        if (mPartialRedraw && mDrawnFrameValid && !isInAmbientMode()) {
+                            drawPartialFrame();
+                        } else {
+                            invalidate();
+                        }
+                        mFrameScheduler.onAlarm();
                         break;
                 }
             }
         };
 
+        /**
+         * Keeps the single {@link #MSG_UPDATE_TIME} message scheduled for the next frame deadline.
+         */
+        final FrameScheduler mFrameScheduler = new FrameScheduler(FrameScheduler.SYSTEM_CLOCK,
+                new FrameScheduler.Alarm() {
+                    @Override
+                    public void set(long delayMillis) {
+                        mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+                        mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, Math.max(delayMillis, 0));
+                    }
+
+                    @Override
+                    public void cancel() {
+                        mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+                    }
+                });
+
         final GoogleApiClient mGoogleApiClient = new GoogleApiClient.Builder(STXWatchFaceService.this)
                 .addConnectionCallbacks(this)
                 .addOnConnectionFailedListener(this)
                 .addApi(Wearable.API)
                 .build();
 
+        /**
+         * Held while the watch face is visible.
+         */
+        final ConnectionManager mConnectionManager = new ConnectionManager(
+                new ConnectionManager.Connection() {
+                    @Override
+                    public void connect() {
+                        mGoogleApiClient.connect();
+                    }
+
+                    @Override
+                    public void disconnect() {
+                        if (mGoogleApiClient.isConnected()) {
+                            Wearable.DataApi.removeListener(mGoogleApiClient, STXEngine.this);
+                        }
+                        mGoogleApiClient.disconnect();
+                    }
+
+                    @Override
+                    public void fetch(int fetchId) {
+                        fetchData(mGoogleApiClient, fetchId);
+                    }
+                },
+                new ConnectionManager.Scheduler() {
+                    @Override
+                    public void schedule(Runnable task, long delayMillis) {
+                        mUpdateTimeHandler.postDelayed(task, delayMillis);
+                    }
+
+                    @Override
+                    public void cancel(Runnable task) {
+                        mUpdateTimeHandler.removeCallbacks(task);
+                    }
+                },
+                FrameScheduler.SYSTEM_CLOCK, mMetrics, CONNECTION_GRACE_MS);
+
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mTime.clear(intent.getStringExtra("time-zone"));
-                mTime.setToNow();
+                String timeZoneId = intent.getStringExtra("time-zone");
+                mClock.setTimeZone(timeZoneId != null
+                        ? TimeZone.getTimeZone(timeZoneId) : TimeZone.getDefault());
+                invalidate();
             }
         };
 
@@ -144,14 +317,11 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
                     .build());
 
             Resources resources = STXWatchFaceService.this.getResources();
-            Drawable backgroundDrawable = resources.getDrawable(R.drawable.superhero);
-            this.mBackgroundBitmap = ((BitmapDrawable) backgroundDrawable).getBitmap();
+            this.backgroundBitmapId = getFaceBackground(mFace);
+            this.mBackgroundDecoder = new BackgroundDecoder(resources, mBackgroundCache);
 
-            final int centerColor = resources.getColor(R.color.stx_color);
             this.mCenterPaint = new Paint();
-            mCenterPaint.setColor(centerColor);
             mCenterPaint.setStrokeWidth(2.f);
-            mCenterPaint.setStyle(Paint.Style.FILL);
             mCenterPaint.setAntiAlias(true);
 
             this.mCenterPaintBlack = new Paint();
@@ -159,37 +329,45 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
             mCenterPaintBlack.setStyle(Paint.Style.FILL);
             mCenterPaintBlack.setAntiAlias(true);
 
-            final int hourColor = resources.getColor(R.color.stx_color);
             this.mHourPaint = new Paint();
-            mHourPaint.setColor(hourColor);
-            mHourPaint.setStrokeWidth(8.f);
             mHourPaint.setAntiAlias(true);
             mHourPaint.setStrokeCap(Paint.Cap.ROUND);
 
-            final int minuteColor = resources.getColor(R.color.minute_color);
             this.mMinutePaint = new Paint();
-            mMinutePaint.setColor(minuteColor);
-            mMinutePaint.setStrokeWidth(5.f);
             mMinutePaint.setAntiAlias(true);
             mMinutePaint.setStrokeCap(Paint.Cap.ROUND);
 
-            final int secondColor = resources.getColor(R.color.second_color);
             this.mSecondPaint = new Paint();
-            mSecondPaint.setColor(secondColor);
-            mSecondPaint.setStrokeWidth(2.f);
             mSecondPaint.setAntiAlias(true);
             mSecondPaint.setStrokeCap(Paint.Cap.ROUND);
 
-            final int thickColor = resources.getColor(R.color.tick_color);
             this.mTickPaint = new Paint();
-            mTickPaint.setColor(thickColor);
-            mTickPaint.setStrokeWidth(2.f);
             mTickPaint.setAntiAlias(true);
+            applyFaceStyle(false);
+
+            this.mDrawTarget = new CanvasDrawTarget(mRenderer);
+            mDrawTarget.setPaint(DrawTarget.PAINT_HOUR, mHourPaint);
+            mDrawTarget.setPaint(DrawTarget.PAINT_MINUTE, mMinutePaint);
+            mDrawTarget.setPaint(DrawTarget.PAINT_SECOND, mSecondPaint);
+            mDrawTarget.setPaint(DrawTarget.PAINT_TICK, mTickPaint);
+            mDrawTarget.setPaint(DrawTarget.PAINT_CENTER, mCenterPaint);
+            mDrawTarget.setPaint(DrawTarget.PAINT_CENTER_BLACK, mCenterPaintBlack);
+
+            this.mClock = new WatchClock(TimeZone.getDefault());
+
+            // Apply the config the face had last time right away, the Data Layer takes a connection
+            // and a couple of round trips, and only overrides it if it's different.
+            this.mConfigSnapshot = new ConfigSnapshot(STXWatchFaceService.this);
+            if (mConfigSnapshot.load(mConfig)) {
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Config snapshot: " + mConfig);
+                }
+                setUpSettings(mConfig);
+            }
 
-            this.mPath = new Path();
-            this.mMatrix = new Matrix();
-
-            this.mTime = new Time();
+            if (BuildConfig.DEBUG) {
+                mAllocationTracker.start();
+            }
         }
 
         @Override
@@ -201,6 +379,18 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "onPropertiesChanged: low-bit ambient = " + mLowBitAmbient);
             }
+            mRenderer.setBurnInProtection(mBurnInProtectMode);
+            applyFaceStyle(isInAmbientMode());
+            mDrawTarget.invalidateStaticLayers();
+            mDrawnFrameValid = false;
+        }
+
+        @Override
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            super.onSurfaceChanged(holder, format, width, height);
+            // Allocate whatever depends on the surface size now rather than in onDraw.
+            updateSurfaceSize(width, height);
+            mDrawnFrameValid = false;
         }
 
         @Override
@@ -210,6 +400,9 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "onTimeTick: ambient = " + isInAmbientMode());
             }
+            if (isInAmbientMode()) {
+                mMetrics.recordAmbientTick(System.currentTimeMillis());
+            }
             invalidate();
         }
 
@@ -220,6 +413,8 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "onAmbientModeChanged: " + inAmbientMode);
             }
+            mRenderer.setAmbient(inAmbientMode);
+            mMetrics.resetAmbientTicks();
             if (mLowBitAmbient) {
                 boolean antiAlias = !inAmbientMode;
                 mCenterPaint.setAntiAlias(antiAlias);
@@ -228,31 +423,8 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
                 mSecondPaint.setAntiAlias(antiAlias);
                 mTickPaint.setAntiAlias(antiAlias);
             }
-            if (inAmbientMode) {
-                mCenterPaint.setColor(getResources().getColor(R.color.stx_ambient_color));
-                mHourPaint.setColor(getResources().getColor(R.color.hour_ambient_color));
-                mMinutePaint.setColor(getResources().getColor(R.color.minute_ambient_color));
-                mTickPaint.setColor(getResources().getColor(R.color.tick_ambient_color));
-                if (mBurnInProtectMode) {
-                    mHourPaint.setStyle(Paint.Style.STROKE);
-                    mHourPaint.setStrokeWidth(2f);
-                    mMinutePaint.setStyle(Paint.Style.STROKE);
-                    mMinutePaint.setStrokeWidth(1f);
-                    mCenterPaint.setStyle(Paint.Style.STROKE);
-                }
-            } else {
-                mCenterPaint.setColor(getResources().getColor(R.color.stx_color));
-                mHourPaint.setColor(getResources().getColor(R.color.hour_color));
-                mMinutePaint.setColor(getResources().getColor(R.color.minute_color));
-                mTickPaint.setColor(getResources().getColor(R.color.tick_color));
-                if (mBurnInProtectMode) {
-                    mHourPaint.setStyle(Paint.Style.FILL);
-                    mHourPaint.setStrokeWidth(8f);
-                    mMinutePaint.setStyle(Paint.Style.FILL);
-                    mMinutePaint.setStrokeWidth(5f);
-                    mCenterPaint.setStyle(Paint.Style.FILL);
-                }
-            }
+            applyFaceStyle(inAmbientMode);
+            mDrawnFrameValid = false;
             invalidate();
 
             // Whether the timer should be running depends on whether we're in ambient mode (as well
@@ -260,93 +432,185 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
             updateTimer();
         }
 
+        /**
+         * Sets the paints up with the colors and the hand widths of {@link #mFace} in the mode, the
+         * widths scaled to the surface. The hands are outlined in ambient mode with the burn-in
+         * protection.
+         */
+        private void applyFaceStyle(boolean ambient) {
+            Face face = mFace;
+            HandGeometry geometry = mRenderer.getGeometry();
+            float scale = geometry != null ? geometry.getScale() : 1f;
+            boolean outlined = ambient && mBurnInProtectMode;
+            Paint.Style handStyle = outlined ? Paint.Style.STROKE : Paint.Style.FILL;
+
+            mCenterPaint.setColor(ambient ? face.ambientCenterColor : face.centerColor);
+            mCenterPaint.setStyle(handStyle);
+            mHourPaint.setColor(ambient ? face.ambientHourColor : face.hourColor);
+            mHourPaint.setStyle(handStyle);
+            mHourPaint.setStrokeWidth(scale * (outlined ? face.hourOutlineWidth : face.hourWidth));
+            mMinutePaint.setColor(ambient ? face.ambientMinuteColor : face.minuteColor);
+            mMinutePaint.setStyle(handStyle);
+            mMinutePaint.setStrokeWidth(scale * (outlined ? face.minuteOutlineWidth : face.minuteWidth));
+            mSecondPaint.setColor(face.secondColor);
+            mSecondPaint.setStrokeWidth(scale * face.secondWidth);
+            mTickPaint.setColor(ambient ? face.ambientTickColor : face.tickColor);
+            mTickPaint.setStrokeWidth(scale * face.tickWidth);
+            if (mMute) {
+                // The colors come with their own alpha.
+                mHourPaint.setAlpha(100);
+                mMinutePaint.setAlpha(100);
+                mSecondPaint.setAlpha(80);
+            }
+        }
+
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
             /* draw your watch face */
-            mTime.setToNow();
+            if (BuildConfig.DEBUG) {
+                mAllocationTracker.beginFrame();
+            }
+            long startNanos = System.nanoTime();
+            mClock.setToNow();
 
-            int width = bounds.width();
-            int height = bounds.height();
+            updateSurfaceSize(bounds.width(), bounds.height());
+            if (isInAmbientMode() && mLowBitAmbient && !mBurnInProtectMode) {
+                drawLowBitFrame(canvas);
+            } else {
+                mDrawTarget.setCanvas(canvas);
+                mRenderer.drawFrame(mDrawTarget, mClock.hour, mClock.minute, mClock.second, mClock.millis);
+            }
+            onFrameDrawn();
+            recordFrame(System.nanoTime() - startNanos);
+            if (BuildConfig.DEBUG) {
+                mAllocationTracker.endFrame();
+            }
+        }
 
-            // Draw the background, scaled to fit.
-            if (!isInAmbientMode()) {
-                if (mBackgroundScaledBitmap == null
-                        || mBackgroundScaledBitmap.getWidth() != width
-                        || mBackgroundScaledBitmap.getHeight() != height) {
-                    mBackgroundScaledBitmap = Bitmap.createScaledBitmap(mBackgroundBitmap, width, height, true);
+        /**
+         * Draws the low-bit ambient frame, uploading only the pixels which changed since the last
+         * one into {@link #mLowBitFrame}. The hands are drawn in their own colors, so in mute mode
+         * the renderer dims them as the hand paints are dimmed.
+         */
+        private void drawLowBitFrame(Canvas canvas) {
+            HandGeometry geometry = mRenderer.getGeometry();
+            int width = geometry.getWidth();
+            if (mLowBitRenderer == null || mLowBitRenderer.getGeometry() != geometry) {
+                long startNanos = System.nanoTime();
+                this.mLowBitRenderer = new LowBitAmbientRenderer(geometry, mFace);
+                this.mLowBitFrame = Bitmap.createBitmap(width, geometry.getHeight(), Bitmap.Config.RGB_565);
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Low-bit ambient sprites: " + mLowBitRenderer.getSpriteByteCount() + " bytes in "
+                            + (System.nanoTime() - startNanos) / 1000000 + "ms");
                 }
-                canvas.drawBitmap(mBackgroundScaledBitmap, 0, 0, null);
-            } else {
-                canvas.drawRGB(0, 0, 0);
-            }
-
-            // Find the center. Ignore the window insets so that, on round watches with a
-            // "chin", the watch face is centered on the entire screen, not just the usable
-            // portion.
-            float centerX = width / 2f;
-            float centerY = height / 2f;
-
-            if (!isInAmbientMode() || !mBurnInProtectMode) {
-                // Draw the ticks.
-                float innerTickRadius = centerX - 15;
-                //noinspection UnnecessaryLocalVariable
-                float outerTickRadius = centerX;
-                for (int tickIndex = 0; tickIndex < 12; tickIndex++) {
-                    float tickRot = (float) (tickIndex * Math.PI * 2 / 12);
-                    float innerX = (float) Math.sin(tickRot) * innerTickRadius;
-                    float innerY = (float) -Math.cos(tickRot) * innerTickRadius;
-                    float outerX = (float) Math.sin(tickRot) * outerTickRadius;
-                    float outerY = (float) -Math.cos(tickRot) * outerTickRadius;
-                    canvas.drawLine(centerX + innerX, centerY + innerY,
-                            centerX + outerX, centerY + outerY, mTickPaint);
+            }
+            mLowBitRenderer.setMute(mMute);
+            DirtyRect dirty = mLowBitDirty;
+            if (mLowBitRenderer.draw(mClock.hour, mClock.minute, dirty)) {
+                mLowBitFrame.setPixels(mLowBitRenderer.getPixels(), dirty.top * width + dirty.left, width,
+                        dirty.left, dirty.top, dirty.right - dirty.left, dirty.bottom - dirty.top);
+            }
+            canvas.drawBitmap(mLowBitFrame, 0, 0, null);
+        }
+
+        /**
+         * Redraws only the hands that moved since the last frame, with the surface locked just for
+         * the area they cover. Falls back to {@link #invalidate()} if the surface can't be locked.
+         */
+        private void drawPartialFrame() {
+            mClock.setToNow();
+            if (!mRenderer.computeDirtyRect(mDrawnHour, mDrawnMinute, mDrawnSecond, mDrawnMillis,
+                    mClock.hour, mClock.minute, mClock.second, mClock.millis, mDirtyRect)) {
+                return;
+            }
+            mDirtyBounds.set(mDirtyRect.left, mDirtyRect.top, mDirtyRect.right, mDirtyRect.bottom);
+
+            SurfaceHolder holder = getSurfaceHolder();
+            Canvas canvas = holder.lockCanvas(mDirtyBounds);
+            if (canvas == null) {
+                invalidate();
+                return;
+            }
+            try {
+                if (BuildConfig.DEBUG) {
+                    mAllocationTracker.beginFrame();
                 }
+                long startNanos = System.nanoTime();
+                // The surface may have extended the dirty area, everything in it has to be redrawn.
+                canvas.clipRect(mDirtyBounds);
+                mDrawTarget.setCanvas(canvas);
+                mRenderer.drawFrame(mDrawTarget, mClock.hour, mClock.minute, mClock.second, mClock.millis);
+                onFrameDrawn();
+                recordFrame(System.nanoTime() - startNanos);
+                if (BuildConfig.DEBUG) {
+                    mAllocationTracker.endFrame();
+                }
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
             }
+        }
 
-            int minutes = mTime.minute;
-            float minRot = minutes / 30f * (float) Math.PI;
-            float hrRot = ((mTime.hour + (minutes / 60f)) / 6f) * (float) Math.PI;
+        private void onFrameDrawn() {
+            mDrawnFrameValid = true;
+            mDrawnHour = mClock.hour;
+            mDrawnMinute = mClock.minute;
+            mDrawnSecond = mClock.second;
+            mDrawnMillis = mClock.millis;
+        }
 
-            float minLength = centerX - 40;
-            float hrLength = centerX - 80;
+        /**
+         * Records the frame time and, while the second hand sweeps, steps the frame rate down if
+         * the frames don't fit in the budget.
+         */
+        private void recordFrame(long frameNanos) {
+            mMetrics.recordFrame(frameNanos);
+            if (mSweepFps > 0 && !isInAmbientMode() && mFrameRateGovernor.recordFrame(frameNanos)) {
+                if (Log.isLoggable(TAG, Log.INFO)) {
+                    Log.i(TAG, "Frames over " + mFrameRateGovernor.getBudgetNanos()
+                            + "ns budget, sweeping at " + mFrameRateGovernor.getFps() + " fps");
+                }
+                mSweepPolicy = FrameScheduler.sweep(mFrameRateGovernor.getFps());
+                if (!mMute) {
+                    mFrameScheduler.setPolicy(mSweepPolicy);
+                }
+            }
+        }
 
-            float hrX = (float) Math.sin(hrRot) * hrLength;
-            float hrY = (float) -Math.cos(hrRot) * hrLength;
-            if (!isInAmbientMode() || !mBurnInProtectMode) {
-                canvas.drawLine(centerX, centerY, centerX + hrX, centerY + hrY, mHourPaint);
-            } else {
-                mPath.reset();
-                mPath.addRect(centerX, centerY - 4, centerX + hrLength, centerY + 4, Path.Direction.CW);
-                mMatrix.reset();
-                mMatrix.postRotate((float) (Math.toDegrees(hrRot) - 90), centerX, centerY);
-                mPath.transform(mMatrix);
-                canvas.drawPath(mPath, mHourPaint);
-            }
-
-            float minX = (float) Math.sin(minRot) * minLength;
-            float minY = (float) -Math.cos(minRot) * minLength;
-            if (!isInAmbientMode() || !mBurnInProtectMode) {
-                canvas.drawLine(centerX, centerY, centerX + minX, centerY + minY, mMinutePaint);
-            } else {
-                mPath.reset();
-                mPath.addRect(centerX, centerY - 2, centerX + minLength, centerY + 2, Path.Direction.CW);
-                mMatrix.reset();
-                mMatrix.postRotate((float) (Math.toDegrees(minRot) - 90), centerX, centerY);
-                mPath.transform(mMatrix);
-                canvas.drawPath(mPath, mMinutePaint);
+        private void updateSurfaceSize(int width, int height) {
+            if (mRenderer.setSurfaceSize(width, height)) {
+                applyFaceStyle(isInAmbientMode());
+                mDrawTarget.setSurfaceSize(width, height);
+                mDrawTarget.invalidateStaticLayers();
+                if (!mDrawTarget.hasBackgroundBitmap()) {
+                    // Nothing to show yet, get the first frame right at the cost of decoding on
+                    // this thread.
+                    mDrawTarget.setBackgroundBitmap(mBackgroundDecoder.decodeNow(backgroundBitmapId, width, height));
+                } else {
+                    loadBackground();
+                }
             }
+        }
 
-            if (!isInAmbientMode()) {
-                float secLength = centerX - 20;
-                float secRot = mTime.second / 30f * (float) Math.PI;
-                float secX = (float) Math.sin(secRot) * secLength;
-                float secY = (float) -Math.cos(secRot) * secLength;
-                canvas.drawLine(centerX, centerY, centerX + secX, centerY + secY, mSecondPaint);
+        /**
+         * Starts decoding the selected background at the surface size. The current background
+         * stays on the surface until the new one is ready.
+         */
+        private void loadBackground() {
+            HandGeometry geometry = mRenderer.getGeometry();
+            if (geometry != null) {
+                mBackgroundDecoder.decode(backgroundBitmapId, geometry.getWidth(), geometry.getHeight(), this);
             }
+        }
 
-            if (isInAmbientMode() && mBurnInProtectMode) {
-                canvas.drawOval(centerY - 10, centerX - 10, centerY + 10, centerX + 10, mCenterPaintBlack);
+        @Override
+        public void onBackgroundDecoded(int drawableId, int width, int height, Bitmap bitmap) {
+            HandGeometry geometry = mRenderer.getGeometry();
+            if (bitmap == null || drawableId != backgroundBitmapId || !geometry.matches(width, height)) {
+                return;
             }
-            canvas.drawOval(centerY - 10, centerX - 10, centerY + 10, centerX + 10, mCenterPaint);
+            mDrawTarget.setBackgroundBitmap(bitmap);
+            mDrawnFrameValid = false;
+            invalidate();
         }
 
         @Override
@@ -356,22 +620,26 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "onVisibilityChanged: " + visible);
             }
+            mDrawnFrameValid = false;
 
             if (visible) {
-                mGoogleApiClient.connect();
+                mConnectionManager.acquire();
 
                 registerReceiver();
 
                 // Update time zone in case it changed while we weren't visible.
-                mTime.clear(TimeZone.getDefault().getID());
-                mTime.setToNow();
+                mClock.setTimeZone(TimeZone.getDefault());
+
+                // Give the requested sweep frame rate another chance, the frames that were over the
+                // budget may have been slowed down by something that's over by now.
+                if (mSweepFps > 0 && mFrameRateGovernor.getFps() != mSweepFps) {
+                    mFrameRateGovernor.reset(mSweepFps);
+                    mSweepPolicy = FrameScheduler.sweep(mSweepFps);
+                }
             } else {
                 unregisterReceiver();
 
-                if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
-                    Wearable.DataApi.removeListener(mGoogleApiClient, this);
-                    mGoogleApiClient.disconnect();
-                }
+                mConnectionManager.release();
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -388,13 +656,20 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
                 mHourPaint.setAlpha(inMuteMode ? 100 : 255);
                 mMinutePaint.setAlpha(inMuteMode ? 100 : 255);
                 mSecondPaint.setAlpha(inMuteMode ? 80 : 255);
+                // The timer drops to once a minute, so the second hand would show the wrong time.
+                mRenderer.setShowSeconds(!inMuteMode);
+                mDrawnFrameValid = false;
                 invalidate();
+                updateTimer();
             }
         }
 
         @Override
         public void onDestroy() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mFrameScheduler.stop();
+            mConnectionManager.shutdown();
+            mAllocationTracker.stop();
+            mBackgroundDecoder.quit();
             super.onDestroy();
         }
 
@@ -416,19 +691,35 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
         }
 
         /**
-         * Starts the {@link #mUpdateTimeHandler} timer if it should be running and isn't currently
-         * or stops it if it shouldn't be running but currently is.
+         * (Re)starts the {@link #mFrameScheduler} with the frame rate policy for the current state
+         * if the timer should be running or stops it if it shouldn't.
          */
         private void updateTimer() {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "updateTimer");
             }
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
             if (shouldTimerBeRunning()) {
-                mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
+                mFrameScheduler.setPolicy(selectFramePolicy());
+                mFrameScheduler.start();
+            } else {
+                mFrameScheduler.stop();
             }
         }
 
+        /**
+         * Once a minute in mute mode to save battery, the sweep rate for the sweeping second hand
+         * and once a second otherwise.
+         */
+        private FrameScheduler.Policy selectFramePolicy() {
+            if (mMute) {
+                return FrameScheduler.EVERY_MINUTE;
+            }
+            if (mSweepFps > 0) {
+                return mSweepPolicy;
+            }
+            return FrameScheduler.EVERY_SECOND;
+        }
+
         /**
          * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer should
          * only run when we're visible and in interactive mode.
@@ -443,7 +734,7 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
                 Log.d(TAG, "onConnected: " + bundle);
             }
             Wearable.DataApi.addListener(mGoogleApiClient, STXEngine.this);
-            fetchData(mGoogleApiClient);
+            mConnectionManager.onConnected();
         }
 
         @Override
@@ -451,6 +742,7 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "onConnectionSuspended: " + cause);
             }
+            mConnectionManager.onConnectionSuspended();
         }
 
         @Override
@@ -458,6 +750,7 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "onConnectionFailed: " + connectionResult);
             }
+            mConnectionManager.onConnectionFailed();
         }
 
         @Override
@@ -469,98 +762,121 @@ public class STXWatchFaceService extends CanvasWatchFaceService {
                     }
 
                     DataItem dataItem = dataEvent.getDataItem();
-                    if (!dataItem.getUri().getPath().equals(PATH_WITH_FEATURE)) {
+                    if (!dataItem.getUri().getPath().equals(WatchFaceConfig.PATH_WITH_FEATURE)) {
+                        continue;
+                    }
+                    // Until the local node is known the fetch that looks it up reads the config.
+                    if (!dataItem.getUri().getAuthority().equals(mLocalNodeId)) {
                         continue;
                     }
 
-                    DataMapItem dataMapItem = DataMapItem.fromDataItem(dataItem);
-                    DataMap config = dataMapItem.getDataMap();
+                    ConfigDataItems.read(dataItem.getData(), mDataLayerConfig);
                     if (Log.isLoggable(TAG, Log.DEBUG)) {
-                        Log.d(TAG, "Config DataItem updated:" + config);
+                        Log.d(TAG, "Config DataItem updated:" + mDataLayerConfig);
                     }
-                    setUpSettings(config);
+                    reconcileConfig();
                 }
             } finally {
                 dataEvents.close();
             }
         }
 
-        private void fetchData(final GoogleApiClient client) {
+        private void fetchData(final GoogleApiClient client, final int fetchId) {
             Wearable.NodeApi.getLocalNode(client).setResultCallback(
                     new ResultCallback<NodeApi.GetLocalNodeResult>() {
                         @Override
                         public void onResult(NodeApi.GetLocalNodeResult getLocalNodeResult) {
-                            String localNode = getLocalNodeResult.getNode().getId();
+                            if (!getLocalNodeResult.getStatus().isSuccess()) {
+                                mConnectionManager.onFetched(fetchId, false);
+                                return;
+                            }
+                            mLocalNodeId = getLocalNodeResult.getNode().getId();
                             Uri uri = new Uri.Builder()
                                     .scheme("wear")
-                                    .path(PATH_WITH_FEATURE)
-                                    .authority(localNode)
+                                    .path(WatchFaceConfig.PATH_WITH_FEATURE)
+                                    .authority(mLocalNodeId)
                                     .build();
-                            Wearable.DataApi.getDataItem(client, uri)
-                                    .setResultCallback(STXEngine.this);
+                            Wearable.DataApi.getDataItem(client, uri).setResultCallback(
+                                    new ResultCallback<DataApi.DataItemResult>() {
+                                        @Override
+                                        public void onResult(DataApi.DataItemResult dataItemResult) {
+                                            onConfigFetched(fetchId, dataItemResult);
+                                        }
+                                    });
                         }
                     }
             );
         }
 
-        @Override
-        public void onResult(DataApi.DataItemResult dataItemResult) {
+        /**
+         * Applies the fetched config, unless the connection was lost since the fetch started.
+         */
+        private void onConfigFetched(int fetchId, DataApi.DataItemResult dataItemResult) {
+            if (!mConnectionManager.onFetched(fetchId, dataItemResult.getStatus().isSuccess())) {
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Dropped the config of a fetch from before the connection was lost");
+                }
+                return;
+            }
             if (dataItemResult.getStatus().isSuccess()) {
                 if (dataItemResult.getDataItem() != null) {
                     DataItem configDataItem = dataItemResult.getDataItem();
-                    DataMapItem dataMapItem = DataMapItem.fromDataItem(configDataItem);
-                    DataMap config = dataMapItem.getDataMap();
-                    setUpSettings(config);
+                    ConfigDataItems.read(configDataItem.getData(), mDataLayerConfig);
                 } else {
-                    setUpSettings(null);
+                    mDataLayerConfig.clear();
                 }
+                reconcileConfig();
             }
         }
 
-        private void setUpSettings(DataMap config) {
-            boolean needBackgroundUpdate = false;
-            if (config == null || !config.containsKey(KEY_WATCH_FACE)) {
-                //select default
-                if (backgroundBitmapId != R.drawable.superhero) {
-                    this.backgroundBitmapId = R.drawable.superhero;
-                    needBackgroundUpdate = true;
-                }
-            } else {
-                String faceSelected = config.getString(KEY_WATCH_FACE);
-                switch (faceSelected) {
-                    case "superhero":
-                        if (backgroundBitmapId != R.drawable.superhero) {
-                            this.backgroundBitmapId = R.drawable.superhero;
-                            needBackgroundUpdate = true;
-                        }
-                        break;
-                    case "superwhero":
-                        if (backgroundBitmapId != R.drawable.superwhero) {
-                            this.backgroundBitmapId = R.drawable.superwhero;
-                            needBackgroundUpdate = true;
-                        }
-                        break;
-                    case "superhero_alpha":
-                        if (backgroundBitmapId != R.drawable.superhero_alpha) {
-                            this.backgroundBitmapId = R.drawable.superhero_alpha;
-                            needBackgroundUpdate = true;
-                        }
-                        break;
-                    case "superwhero_alpha":
-                        if (backgroundBitmapId != R.drawable.superwhero_alpha) {
-                            this.backgroundBitmapId = R.drawable.superwhero_alpha;
-                            needBackgroundUpdate = true;
-                        }
-                        break;
-                }
+        /**
+         * Applies the config read from the Data Layer and updates the snapshot, unless it's what's
+         * applied already.
+         */
+        private void reconcileConfig() {
+            if (mDataLayerConfig.equals(mConfig)) {
+                return;
+            }
+            mConfig.copyFrom(mDataLayerConfig);
+            setUpSettings(mConfig);
+            mConfigSnapshot.save(mConfig);
+        }
+
+        private void setUpSettings(ConfigState config) {
+            Face face = FaceRegistry.get(config.get(ConfigSchema.FIELD_FACE, FaceRegistry.DEFAULT_FACE));
+            if (face == null) {
+                // Picked in a newer version of the phone app.
+                return;
+            }
+            if (mFace != face) {
+                this.mFace = face;
+                mRenderer.setFace(face);
+                this.mLowBitRenderer = null;
+                applyFaceStyle(isInAmbientMode());
+                mDrawTarget.invalidateStaticLayers();
+                mDrawnFrameValid = false;
+                invalidate();
             }
-            if (needBackgroundUpdate) {
-                Resources resources = STXWatchFaceService.this.getResources();
-                Drawable backgroundDrawable = resources.getDrawable(backgroundBitmapId);
-                this.mBackgroundBitmap = ((BitmapDrawable) backgroundDrawable).getBitmap();
-                this.mBackgroundScaledBitmap = null;
-                postInvalidate();
+            int faceBackground = getFaceBackground(face);
+            if (backgroundBitmapId != faceBackground) {
+                this.backgroundBitmapId = faceBackground;
+                loadBackground();
             }
+            int sweepFps = WatchFaceConfig.parseSweepFps(
+                    config.get(ConfigSchema.FIELD_SWEEP_FPS, WatchFaceConfig.SWEEP_OFF));
+            if (mSweepFps != sweepFps) {
+                setSweepFps(sweepFps);
+            }
+        }
+
+        private void setSweepFps(int sweepFps) {
+            this.mSweepFps = sweepFps;
+            mFrameRateGovernor.reset(sweepFps);
+            mSweepPolicy = sweepFps > 0 ? FrameScheduler.sweep(sweepFps) : null;
+            mRenderer.setSweep(sweepFps > 0);
+            mDrawnFrameValid = false;
+            invalidate();
+            updateTimer();
         }
     }
 }
@@ -0,0 +1,144 @@
+package com.mieszkostelmach.stxwatchface.sync;
+
+import com.mieszkostelmach.stxwatchface.protocol.ConfigState;
+
+/**
+ * Merges bursts of config changes into a single config write. The changes offered within
+ * {@link #getWindowMillis()} of the first one are merged, keeping only the newest value of each
+ * field, and written together once the window closes. Each write carries the whole config, the
+ * previously written values merged with the changes, since the written config replaces the old one
+ * as a whole. Stale changes are dropped, and a write that wouldn't change anything is skipped. A
+ * change to the value a field already has is still written, for its newer revision: that's what
+ * tells the phone the change was applied.
+ * <p/>
+ * Changes can be offered from any thread, the writes happen on whatever thread the
+ * {@link Scheduler} runs them on. This class doesn't depend on the Android framework.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ConfigCoalescer {
+    /**
+     * Runs the flush once the window closes, e.g. a Handler on a background thread.
+     */
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    /**
+     * Where the config lives, e.g. a DataItem.
+     */
+    public interface Store {
+        /**
+         * Reads the config as it's currently stored into the state, leaves it empty if there's none.
+         * Returns whether the store could be read at all, if not nothing is written, as that would
+         * drop the stored fields the changes don't carry, and it's read again with the next flush.
+         * Called until it succeeds, before the first write.
+         */
+        boolean load(ConfigState config);
+
+        /**
+         * Replaces the stored config. Returns whether it succeeded, if not the config is written
+         * again with the next flush.
+         */
+        boolean write(ConfigState config);
+    }
+
+    private final Scheduler mScheduler;
+    private final Store mStore;
+    private final long mWindowMillis;
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Changes offered since the last flush, guarded by {@code this}.
+     */
+    private final ConfigState mPending = new ConfigState();
+    private boolean mFlushScheduled;
+    private int mOffered;
+
+    /**
+     * Changes being flushed and the config as last written, only touched by {@link #flush()}.
+     */
+    private final ConfigState mChanges = new ConfigState();
+    private final ConfigState mWritten = new ConfigState();
+    private final ConfigState mPrevious = new ConfigState();
+    private boolean mLoaded;
+    private boolean mWriteFailed;
+    /**
+     * Guarded by {@code this}.
+     */
+    private int mWrites;
+
+    public ConfigCoalescer(Scheduler scheduler, Store store, long windowMillis) {
+        this.mScheduler = scheduler;
+        this.mStore = store;
+        this.mWindowMillis = windowMillis;
+    }
+
+    public long getWindowMillis() {
+        return mWindowMillis;
+    }
+
+    /**
+     * Merges the changes into the pending ones and schedules a flush if there isn't one coming
+     * already.
+     */
+    public void offer(ConfigState changes) {
+        boolean schedule;
+        synchronized (this) {
+            mPending.merge(changes);
+            mOffered++;
+            schedule = !mFlushScheduled;
+            mFlushScheduled = true;
+        }
+        if (schedule) {
+            mScheduler.schedule(mFlushTask, mWindowMillis);
+        }
+    }
+
+    /**
+     * Writes the pending changes right away. Meant to be called on the thread the
+     * {@link Scheduler} runs on, the writes must not run concurrently.
+     */
+    public void flush() {
+        synchronized (this) {
+            mChanges.copyFrom(mPending);
+            mPending.clear();
+            mFlushScheduled = false;
+        }
+        if (!mLoaded) {
+            mWritten.clear();
+            if (!mStore.load(mWritten)) {
+                // Kept for the next flush, the newer changes offered in the meantime win.
+                synchronized (this) {
+                    mPending.merge(mChanges);
+                }
+                return;
+            }
+            mLoaded = true;
+        }
+        mPrevious.copyFrom(mWritten);
+        mWritten.merge(mChanges);
+        // Not only the values, the revisions which advanced without changing any value count too.
+        boolean changed = !mWritten.equals(mPrevious) || mWriteFailed;
+        if (!changed) {
+            return;
+        }
+        mWriteFailed = !mStore.write(mWritten);
+        synchronized (this) {
+            mWrites++;
+        }
+    }
+
+    /**
+     * Returns how many changes have been offered and how many writes they took, for the logs.
+     */
+    public synchronized String getStats() {
+        return "offered=" + mOffered + " writes=" + mWrites;
+    }
+}
@@ -0,0 +1,225 @@
+package com.mieszkostelmach.stxwatchface.sync;
+
+import com.mieszkostelmach.stxwatchface.metrics.WatchFaceMetrics;
+import com.mieszkostelmach.stxwatchface.schedule.FrameScheduler;
+
+/**
+ * Keeps the Data Layer connection, and the data listener registered with it, alive while anything
+ * holds it and for a grace period after the last holder lets go. The watch face goes invisible and
+ * visible again all the time as the cards peek, the grace period saves a reconnect and another
+ * config fetch on each of those wakes.
+ * <p/>
+ * The config is only fetched again when a change could have been missed: before the first fetch,
+ * after the connection has been closed or suspended, when the listener wasn't there to hear about
+ * the changes, and after a fetch that failed. While the listener is registered, the changes arrive
+ * through it and there's nothing to fetch.
+ * <p/>
+ * Not thread safe, all the calls are meant to come from the main thread, where the
+ * GoogleApiClient callbacks come in. This class doesn't depend on the Android framework.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ConnectionManager {
+    /**
+     * The Data Layer side, e.g. a GoogleApiClient with the data listener.
+     */
+    public interface Connection {
+        /**
+         * Starts connecting, {@link ConnectionManager#onConnected()} is called once it's done. Registers the
+         * listener once connected.
+         */
+        void connect();
+
+        /**
+         * Removes the listener and disconnects.
+         */
+        void disconnect();
+
+        /**
+         * Fetches the config, {@link ConnectionManager#onFetched(int, boolean)} is called with the
+         * fetch id once it arrives.
+         */
+        void fetch(int fetchId);
+    }
+
+    /**
+     * Runs the disconnect once the grace period is over, e.g. a Handler.
+     */
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+
+        void cancel(Runnable task);
+    }
+
+    private static final int DISCONNECTED = 0;
+    private static final int CONNECTING = 1;
+    private static final int CONNECTED = 2;
+
+    private final Connection mConnection;
+    private final Scheduler mScheduler;
+    private final FrameScheduler.Clock mClock;
+    private final WatchFaceMetrics mMetrics;
+    private final long mGraceMillis;
+
+    private final Runnable mDisconnectTask = new Runnable() {
+        @Override
+        public void run() {
+            if (mHolders == 0) {
+                disconnect();
+            }
+        }
+    };
+
+    private int mHolders;
+    private int mState = DISCONNECTED;
+    private boolean mConnectedBefore;
+    private long mConnectStartMillis;
+    /**
+     * Whether a change may have been missed since the last fetch.
+     */
+    private boolean mStale = true;
+    private boolean mFetching;
+    /**
+     * Bumped whenever the connection is lost, the fetches started before then may have missed the
+     * changes since and their results don't count.
+     */
+    private int mGeneration;
+
+    public ConnectionManager(Connection connection, Scheduler scheduler, FrameScheduler.Clock clock,
+                             WatchFaceMetrics metrics, long graceMillis) {
+        this.mConnection = connection;
+        this.mScheduler = scheduler;
+        this.mClock = clock;
+        this.mMetrics = metrics;
+        this.mGraceMillis = graceMillis;
+    }
+
+    public long getGraceMillis() {
+        return mGraceMillis;
+    }
+
+    /**
+     * Takes hold of the connection, connecting if it isn't connected already.
+     */
+    public void acquire() {
+        mHolders++;
+        mScheduler.cancel(mDisconnectTask);
+        if (mState == DISCONNECTED) {
+            connect();
+        } else if (mState == CONNECTED) {
+            fetchIfStale();
+        }
+    }
+
+    /**
+     * Lets go of the connection, it's closed once nothing has held it for the grace period.
+     */
+    public void release() {
+        if (mHolders == 0) {
+            return;
+        }
+        mHolders--;
+        if (mHolders == 0) {
+            mScheduler.schedule(mDisconnectTask, mGraceMillis);
+        }
+    }
+
+    /**
+     * Closes the connection right away, e.g. when the engine is destroyed.
+     */
+    public void shutdown() {
+        mHolders = 0;
+        mScheduler.cancel(mDisconnectTask);
+        disconnect();
+    }
+
+    public boolean isConnected() {
+        return mState == CONNECTED;
+    }
+
+    public int getHolders() {
+        return mHolders;
+    }
+
+    public void onConnected() {
+        if (mState != CONNECTING) {
+            return;
+        }
+        mState = CONNECTED;
+        mMetrics.recordConnected(mClock.currentTimeMillis() - mConnectStartMillis, mConnectedBefore);
+        mConnectedBefore = true;
+        // If it was let go while connecting, the disconnect is scheduled already.
+        if (mHolders > 0) {
+            fetchIfStale();
+        }
+    }
+
+    /**
+     * The client reconnects by itself, but the changes in the meantime may have been missed.
+     */
+    public void onConnectionSuspended() {
+        if (mState != CONNECTED) {
+            return;
+        }
+        mState = CONNECTING;
+        mConnectStartMillis = mClock.currentTimeMillis();
+        mStale = true;
+        mFetching = false;
+        mGeneration++;
+    }
+
+    /**
+     * Tried again with the next {@link #acquire()}.
+     */
+    public void onConnectionFailed() {
+        mState = DISCONNECTED;
+        mStale = true;
+        mFetching = false;
+        mGeneration++;
+    }
+
+    /**
+     * The config has been fetched, {@code success} being whether the fetch got a result. Returns
+     * false for a fetch started before the connection was lost, its result is to be dropped.
+     */
+    public boolean onFetched(int fetchId, boolean success) {
+        if (fetchId != mGeneration) {
+            return false;
+        }
+        mFetching = false;
+        if (success) {
+            mStale = false;
+        }
+        return true;
+    }
+
+    private void connect() {
+        mState = CONNECTING;
+        mConnectStartMillis = mClock.currentTimeMillis();
+        mConnection.connect();
+    }
+
+    private void disconnect() {
+        if (mState == DISCONNECTED) {
+            return;
+        }
+        mState = DISCONNECTED;
+        mStale = true;
+        mFetching = false;
+        mGeneration++;
+        mConnection.disconnect();
+    }
+
+    private void fetchIfStale() {
+        if (!mStale) {
+            mMetrics.recordFetchSkipped();
+            return;
+        }
+        if (mFetching) {
+            return;
+        }
+        mFetching = true;
+        mMetrics.recordFetch();
+        mConnection.fetch(mGeneration);
+    }
+}
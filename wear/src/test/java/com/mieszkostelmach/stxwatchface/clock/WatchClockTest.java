@@ -0,0 +1,156 @@
+package com.mieszkostelmach.stxwatchface.clock;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the clock against {@link Calendar} across DST transitions and time zone switches, and that
+ * it only looks the offset up when it has to.
+ *
+ * @author Mieszko Stelmach
+ */
+public class WatchClockTest {
+    private static final String[] TIME_ZONES = {
+            "UTC", "Europe/Warsaw", "America/New_York", "America/Sao_Paulo", "Australia/Sydney",
+            "Australia/Lord_Howe", "Asia/Kolkata", "Asia/Kathmandu", "Pacific/Chatham"
+    };
+
+    /**
+     * 2015-03-29 01:00:00 UTC, when Europe/Warsaw moves from 02:00 to 03:00.
+     */
+    private static final long WARSAW_SPRING_FORWARD = 1427590800000L;
+    /**
+     * 2015-10-25 01:00:00 UTC, when Europe/Warsaw moves from 03:00 back to 02:00.
+     */
+    private static final long WARSAW_FALL_BACK = 1445734800000L;
+
+    @Test
+    public void matchesCalendarAroundTheYear() {
+        Random random = new Random(11);
+        for (String id : TIME_ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            WatchClock clock = new WatchClock(timeZone);
+            Calendar calendar = Calendar.getInstance(timeZone);
+            // 2015-01-01 00:00 UTC, then forward by up to an hour at a time for a year.
+            long time = 1420070400000L;
+            long end = time + 365 * WatchClock.DAY_MILLIS;
+            while (time < end) {
+                clock.set(time);
+                assertMatches(calendar, time, clock);
+                time += random.nextInt((int) WatchClock.HOUR_MILLIS);
+            }
+        }
+    }
+
+    @Test
+    public void springForward() {
+        WatchClock clock = new WatchClock(TimeZone.getTimeZone("Europe/Warsaw"));
+        clock.set(WARSAW_SPRING_FORWARD - 1);
+        assertTime(1, 59, 59, 999, clock);
+        clock.set(WARSAW_SPRING_FORWARD);
+        assertTime(3, 0, 0, 0, clock);
+    }
+
+    @Test
+    public void fallBack() {
+        WatchClock clock = new WatchClock(TimeZone.getTimeZone("Europe/Warsaw"));
+        clock.set(WARSAW_FALL_BACK - 1);
+        assertTime(2, 59, 59, 999, clock);
+        clock.set(WARSAW_FALL_BACK);
+        assertTime(2, 0, 0, 0, clock);
+        clock.set(WARSAW_FALL_BACK + WatchClock.HOUR_MILLIS);
+        assertTime(3, 0, 0, 0, clock);
+    }
+
+    @Test
+    public void everySecondAcrossTransitionsMatchesCalendar() {
+        TimeZone timeZone = TimeZone.getTimeZone("Europe/Warsaw");
+        WatchClock clock = new WatchClock(timeZone);
+        Calendar calendar = Calendar.getInstance(timeZone);
+        for (long transition : new long[]{WARSAW_SPRING_FORWARD, WARSAW_FALL_BACK}) {
+            for (long time = transition - 2 * WatchClock.HOUR_MILLIS;
+                 time < transition + 2 * WatchClock.HOUR_MILLIS; time += WatchClock.SECOND_MILLIS) {
+                clock.set(time);
+                assertMatches(calendar, time, clock);
+            }
+        }
+    }
+
+    @Test
+    public void offsetIsLookedUpOnlyAtTransitions() {
+        WatchClock clock = new WatchClock(TimeZone.getTimeZone("Europe/Warsaw"));
+        // A frame every 50ms for a day across the spring transition.
+        long start = WARSAW_SPRING_FORWARD - 12 * WatchClock.HOUR_MILLIS;
+        for (long time = start; time < start + WatchClock.DAY_MILLIS; time += 50) {
+            clock.set(time);
+        }
+        // Once at the start and once at the transition.
+        assertEquals(2, clock.getOffsetLookups());
+        assertEquals(2 * WatchClock.HOUR_MILLIS, clock.getOffset());
+    }
+
+    @Test
+    public void offsetIsLookedUpOnceADayWithoutTransitions() {
+        WatchClock clock = new WatchClock(TimeZone.getTimeZone("Asia/Kolkata"));
+        long start = 1420070400000L;
+        for (long time = start; time < start + 10 * WatchClock.DAY_MILLIS; time += WatchClock.SECOND_MILLIS) {
+            clock.set(time);
+        }
+        assertEquals(10, clock.getOffsetLookups());
+    }
+
+    @Test
+    public void timeZoneSwitch() {
+        long time = 1420113600000L; // 2015-01-01 12:00:00 UTC
+        WatchClock clock = new WatchClock(TimeZone.getTimeZone("Europe/Warsaw"));
+        clock.set(time);
+        assertTime(13, 0, 0, 0, clock);
+
+        clock.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+        clock.set(time);
+        assertTime(7, 0, 0, 0, clock);
+
+        clock.setTimeZone(TimeZone.getTimeZone("Asia/Kathmandu"));
+        clock.set(time + 1);
+        assertTime(17, 45, 0, 1, clock);
+    }
+
+    @Test
+    public void timesBeforeTheEpoch() {
+        WatchClock clock = new WatchClock(TimeZone.getTimeZone("UTC"));
+        clock.set(-1);
+        assertTime(23, 59, 59, 999, clock);
+    }
+
+    @Test
+    public void goingBackInTimeLooksTheOffsetUpAgain() {
+        TimeZone timeZone = TimeZone.getTimeZone("Europe/Warsaw");
+        WatchClock clock = new WatchClock(timeZone);
+        clock.set(WARSAW_FALL_BACK + WatchClock.HOUR_MILLIS);
+        assertTime(3, 0, 0, 0, clock);
+        clock.set(WARSAW_FALL_BACK - WatchClock.HOUR_MILLIS);
+        assertTime(2, 0, 0, 0, clock);
+        assertEquals(2 * WatchClock.HOUR_MILLIS, clock.getOffset());
+    }
+
+    private static void assertMatches(Calendar calendar, long time, WatchClock clock) {
+        calendar.setTimeInMillis(time);
+        String message = calendar.getTimeZone().getID() + " at " + time;
+        assertEquals(message, calendar.get(Calendar.HOUR_OF_DAY), clock.hour);
+        assertEquals(message, calendar.get(Calendar.MINUTE), clock.minute);
+        assertEquals(message, calendar.get(Calendar.SECOND), clock.second);
+        assertEquals(message, calendar.get(Calendar.MILLISECOND), clock.millis);
+    }
+
+    private static void assertTime(int hour, int minute, int second, int millis, WatchClock clock) {
+        assertEquals(hour, clock.hour);
+        assertEquals(minute, clock.minute);
+        assertEquals(second, clock.second);
+        assertEquals(millis, clock.millis);
+    }
+}
@@ -0,0 +1,93 @@
+package com.mieszkostelmach.stxwatchface.metrics;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the percentiles of the sample windows and what the metrics dump.
+ *
+ * @author Mieszko Stelmach
+ */
+public class WatchFaceMetricsTest {
+    @Test
+    public void emptyWindowHasZeroPercentiles() {
+        SampleWindow window = new SampleWindow(8);
+        assertEquals(0, window.size());
+        assertEquals(0, window.percentile(50));
+        assertEquals(0, window.percentile(99));
+    }
+
+    @Test
+    public void percentilesUseTheNearestRank() {
+        SampleWindow window = new SampleWindow(100);
+        // Recorded out of order, 1 to 100.
+        for (int i = 0; i < 100; i++) {
+            window.record((i * 37) % 100 + 1);
+        }
+        assertEquals(1, window.percentile(0));
+        assertEquals(50, window.percentile(50));
+        assertEquals(95, window.percentile(95));
+        assertEquals(99, window.percentile(99));
+        assertEquals(100, window.percentile(100));
+    }
+
+    @Test
+    public void windowKeepsOnlyTheLatestSamples() {
+        SampleWindow window = new SampleWindow(4);
+        for (int i = 1; i <= 10; i++) {
+            window.record(i * 10);
+        }
+        window.record(5);
+        assertEquals(4, window.size());
+        assertEquals(11, window.getTotalCount());
+        assertEquals(100, window.getMax());
+        // 80, 90, 100 and 5 are left.
+        assertEquals(5, window.percentile(25));
+        assertEquals(90, window.percentile(75));
+
+        window.clear();
+        assertEquals(0, window.size());
+        assertEquals(0, window.getMax());
+        assertEquals(0, window.percentile(50));
+    }
+
+    @Test
+    public void dumpsFrameDurationsInMicroseconds() {
+        WatchFaceMetrics metrics = new WatchFaceMetrics();
+        metrics.recordFrame(1500000);
+        metrics.recordFrame(2500000);
+        metrics.recordTimerWakeUp(1000, 1003);
+        metrics.recordAmbientTick(60000);
+        metrics.recordAmbientTick(120010);
+        metrics.recordConnected(250, false);
+        metrics.recordConnected(150, true);
+        metrics.recordFetch();
+        metrics.recordFetchSkipped();
+
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        metrics.dump("  ", writer);
+        writer.flush();
+        String dump = out.toString();
+
+        assertTrue(dump, dump.contains("  frame duration (us): count=2 p50=1500 p95=2500 p99=2500 max=2500\n"));
+        assertTrue(dump, dump.contains("  timer lateness (ms): count=1 p50=3 p95=3 p99=3 max=3\n"));
+        assertTrue(dump, dump.contains("  ambient tick interval (ms): count=1 p50=60010"));
+        assertTrue(dump, dump.contains("  data layer connect (ms): count=2 p50=150 p95=250"));
+        assertTrue(dump, dump.contains("  data layer: reconnects=1 fetches=1 skipped fetches=1\n"));
+    }
+
+    @Test
+    public void dumpsAnEmptyMetrics() {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        new WatchFaceMetrics().dump("", writer);
+        writer.flush();
+        assertTrue(out.toString(), out.toString().contains("frame duration (us): count=0 p50=0 p95=0 p99=0 max=0"));
+    }
+}
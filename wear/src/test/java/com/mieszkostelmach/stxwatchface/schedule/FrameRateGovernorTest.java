@@ -0,0 +1,107 @@
+package com.mieszkostelmach.stxwatchface.schedule;
+
+import com.mieszkostelmach.stxwatchface.config.WatchFaceConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Feeds the governor with frame times and checks when it steps the sweep frame rate down.
+ *
+ * @author Mieszko Stelmach
+ */
+public class FrameRateGovernorTest {
+    private final FrameRateGovernor mGovernor = new FrameRateGovernor(WatchFaceConfig.SWEEP_FPS_MIN);
+
+    @Before
+    public void setUp() {
+        mGovernor.reset(60);
+    }
+
+    @Test
+    public void budgetIsHalfOfTheFrameInterval() {
+        assertEquals(8333333L, mGovernor.getBudgetNanos());
+        mGovernor.reset(15);
+        assertEquals(33333333L, mGovernor.getBudgetNanos());
+    }
+
+    @Test
+    public void framesWithinBudgetKeepTheRate() {
+        for (int i = 0; i < 100 * FrameRateGovernor.WINDOW_FRAMES; i++) {
+            assertFalse(mGovernor.recordFrame(mGovernor.getBudgetNanos()));
+        }
+        assertEquals(60, mGovernor.getFps());
+    }
+
+    @Test
+    public void occasionalSlowFramesKeepTheRate() {
+        for (int i = 0; i < 100 * FrameRateGovernor.WINDOW_FRAMES; i++) {
+            boolean slow = i % FrameRateGovernor.WINDOW_FRAMES < FrameRateGovernor.MAX_SLOW_FRAMES;
+            assertFalse(mGovernor.recordFrame(slow ? 50000000L : 1000000L));
+        }
+        assertEquals(60, mGovernor.getFps());
+    }
+
+    @Test
+    public void slowFramesStepDownToTheMinimum() {
+        assertEquals(30, recordUntilStepDown(10000000L));
+        assertEquals(15, recordUntilStepDown(20000000L));
+        for (int i = 0; i < 100 * FrameRateGovernor.WINDOW_FRAMES; i++) {
+            assertFalse(mGovernor.recordFrame(50000000L));
+        }
+        assertEquals(WatchFaceConfig.SWEEP_FPS_MIN, mGovernor.getFps());
+        assertEquals(2, mGovernor.getStepDowns());
+    }
+
+    @Test
+    public void frameRateFitsTheSlowFrames() {
+        // 12ms frames are over the budget at 60 fps but fit at 30 fps.
+        assertEquals(30, recordUntilStepDown(12000000L));
+        for (int i = 0; i < 100 * FrameRateGovernor.WINDOW_FRAMES; i++) {
+            assertFalse(mGovernor.recordFrame(12000000L));
+        }
+        assertEquals(30, mGovernor.getFps());
+    }
+
+    @Test
+    public void resetRestoresTheRequestedRate() {
+        recordUntilStepDown(50000000L);
+        mGovernor.reset(60);
+        assertEquals(60, mGovernor.getFps());
+    }
+
+    @Test
+    public void tickingSecondHandIsNotGoverned() {
+        mGovernor.reset(WatchFaceConfig.SWEEP_OFF);
+        for (int i = 0; i < 10 * FrameRateGovernor.WINDOW_FRAMES; i++) {
+            assertFalse(mGovernor.recordFrame(1000000000L));
+        }
+    }
+
+    @Test
+    public void sweepFpsIsParsedToTheSupportedRates() {
+        assertEquals(WatchFaceConfig.SWEEP_OFF, WatchFaceConfig.parseSweepFps(-1));
+        assertEquals(WatchFaceConfig.SWEEP_OFF, WatchFaceConfig.parseSweepFps(0));
+        assertEquals(15, WatchFaceConfig.parseSweepFps(1));
+        assertEquals(15, WatchFaceConfig.parseSweepFps(29));
+        assertEquals(30, WatchFaceConfig.parseSweepFps(30));
+        assertEquals(30, WatchFaceConfig.parseSweepFps(59));
+        assertEquals(60, WatchFaceConfig.parseSweepFps(60));
+        assertEquals(60, WatchFaceConfig.parseSweepFps(120));
+    }
+
+    private int recordUntilStepDown(long frameNanos) {
+        for (int i = 0; i < FrameRateGovernor.WINDOW_FRAMES; i++) {
+            if (mGovernor.recordFrame(frameNanos)) {
+                assertEquals(FrameRateGovernor.WINDOW_FRAMES - 1, i);
+                return mGovernor.getFps();
+            }
+        }
+        fail("no step down");
+        return 0;
+    }
+}
@@ -0,0 +1,136 @@
+package com.mieszkostelmach.stxwatchface.schedule;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the scheduler against a fake clock, waking up late and early, and checks that the deadlines
+ * don't drift.
+ *
+ * @author Mieszko Stelmach
+ */
+public class FrameSchedulerTest {
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    /**
+     * 2015-01-04 12:00:00.123 UTC, not aligned to anything.
+     */
+    private static final long START_MILLIS = 1420372800123L;
+
+    private final FakeClock mClock = new FakeClock();
+    private final FakeAlarm mAlarm = new FakeAlarm();
+    private final FrameScheduler mScheduler = new FrameScheduler(mClock, mAlarm);
+
+    @Test
+    public void everySecondDoesNotDriftOverADay() {
+        mScheduler.setPolicy(FrameScheduler.EVERY_SECOND);
+        long frames = simulateDay(40);
+        assertEquals(24 * 60 * 60, frames);
+    }
+
+    @Test
+    public void sweepDoesNotDriftOverADay() {
+        mScheduler.setPolicy(FrameScheduler.sweep(30));
+        long frames = simulateDay(10);
+        assertEquals(24 * 60 * 60 * 30, frames);
+    }
+
+    @Test
+    public void everyMinuteDoesNotDriftOverADay() {
+        mScheduler.setPolicy(FrameScheduler.EVERY_MINUTE);
+        long frames = simulateDay(500);
+        assertEquals(24 * 60, frames);
+    }
+
+    @Test
+    public void sweepDeadlinesIncludeWholeSeconds() {
+        FrameScheduler.Policy policy = FrameScheduler.sweep(15);
+        assertEquals(1000, policy.nextDeadline(999));
+        assertEquals(1067, policy.nextDeadline(1000));
+        assertEquals(2000, policy.nextDeadline(1934));
+    }
+
+    @Test
+    public void earlyWakeUpDoesNotRepeatTheDeadline() {
+        mClock.mNow = START_MILLIS;
+        mScheduler.start();
+        mScheduler.onAlarm();
+        long deadline = mScheduler.getDeadline();
+        mClock.mNow = deadline - 2;
+        mScheduler.onAlarm();
+        assertEquals(deadline + 1000, mScheduler.getDeadline());
+    }
+
+    @Test
+    public void switchingPolicyReschedules() {
+        mClock.mNow = START_MILLIS;
+        mScheduler.start();
+        mScheduler.onAlarm();
+        mScheduler.setPolicy(FrameScheduler.EVERY_MINUTE);
+        assertEquals(0, mScheduler.getDeadline() % (60 * 1000));
+        assertEquals(mScheduler.getDeadline() - START_MILLIS, mAlarm.mDelay);
+    }
+
+    @Test
+    public void stopCancelsTheAlarm() {
+        mScheduler.start();
+        mScheduler.stop();
+        assertTrue(mAlarm.mCancelled);
+        mScheduler.onAlarm();
+        assertEquals(0, mScheduler.getDeadline());
+    }
+
+    /**
+     * Runs the scheduler for 24 hours, each wake-up up to {@code maxLatenessMillis} late, and
+     * returns the number of frames. Checks that every deadline is exactly on the policy's grid.
+     */
+    private long simulateDay(int maxLatenessMillis) {
+        Random random = new Random(42);
+        FrameScheduler.Policy policy = mScheduler.getPolicy();
+        mClock.mNow = START_MILLIS;
+        mScheduler.start();
+        mScheduler.onAlarm();
+
+        long frames = 0;
+        long end = START_MILLIS + DAY_MILLIS;
+        long expectedDeadline = policy.nextDeadline(START_MILLIS);
+        while (mScheduler.getDeadline() <= end) {
+            long deadline = mScheduler.getDeadline();
+            assertEquals(expectedDeadline, deadline);
+            assertEquals(deadline - mClock.mNow, mAlarm.mDelay);
+            mClock.mNow = deadline + random.nextInt(maxLatenessMillis);
+            mScheduler.onAlarm();
+            frames++;
+            expectedDeadline = policy.nextDeadline(deadline);
+        }
+        return frames;
+    }
+
+    private static class FakeClock implements FrameScheduler.Clock {
+        long mNow;
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+
+    private static class FakeAlarm implements FrameScheduler.Alarm {
+        long mDelay = -1;
+        boolean mCancelled;
+
+        @Override
+        public void set(long delayMillis) {
+            mDelay = delayMillis;
+            mCancelled = false;
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled = true;
+        }
+    }
+}
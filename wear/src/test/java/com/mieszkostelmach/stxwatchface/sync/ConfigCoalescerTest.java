@@ -0,0 +1,257 @@
+package com.mieszkostelmach.stxwatchface.sync;
+
+import com.mieszkostelmach.stxwatchface.protocol.ConfigCodec;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigSchema;
+import com.mieszkostelmach.stxwatchface.protocol.ConfigState;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Feeds the coalescer with bursts of config messages and checks the writes that reach a fake
+ * DataApi.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ConfigCoalescerTest {
+    private static final int FACE = ConfigSchema.FIELD_FACE;
+    private static final int SWEEP_FPS = ConfigSchema.FIELD_SWEEP_FPS;
+
+    private final FakeScheduler mScheduler = new FakeScheduler();
+    private final FakeDataApi mDataApi = new FakeDataApi();
+    private final ConfigCoalescer mCoalescer = new ConfigCoalescer(mScheduler, mDataApi, 500);
+    private long mRevision;
+
+    @Test
+    public void burstIsWrittenOnceWithTheFinalState() {
+        for (int burst = 1; burst <= 20; burst++) {
+            mDataApi.mWrites.clear();
+            for (int i = 0; i < burst; i++) {
+                mCoalescer.offer(change(FACE, i % 4));
+                mScheduler.advance(10);
+            }
+            mCoalescer.offer(change(FACE, 3));
+            mScheduler.advance(500);
+
+            assertEquals(1, mDataApi.mWrites.size());
+            assertEquals(3, mDataApi.written(0).get(FACE, -1));
+            // Back to another face, so that the next burst changes something again.
+            mCoalescer.offer(change(FACE, 0));
+            mScheduler.advance(500);
+        }
+    }
+
+    @Test
+    public void latestValueOfEachFieldIsKept() {
+        mCoalescer.offer(change(FACE, 1));
+        mCoalescer.offer(change(SWEEP_FPS, 60));
+        mCoalescer.offer(change(FACE, 2));
+        mCoalescer.offer(change(SWEEP_FPS, 15));
+        mScheduler.advance(500);
+
+        assertEquals(1, mDataApi.mWrites.size());
+        ConfigState written = mDataApi.written(0);
+        assertEquals(2, written.get(FACE, -1));
+        assertEquals(15, written.get(SWEEP_FPS, -1));
+        assertEquals(mRevision, written.getRevision());
+    }
+
+    @Test
+    public void staleChangesAreDropped() {
+        ConfigState older = change(FACE, 1);
+        ConfigState newer = change(FACE, 2);
+        mCoalescer.offer(newer);
+        mCoalescer.offer(older);
+        mScheduler.advance(500);
+        assertEquals(2, mDataApi.written(0).get(FACE, -1));
+
+        // Stale against the stored config rather than within the burst.
+        mCoalescer.offer(older);
+        mScheduler.advance(500);
+        assertEquals(1, mDataApi.mWrites.size());
+    }
+
+    @Test
+    public void partialChangesKeepTheStoredFields() {
+        ConfigState stored = change(SWEEP_FPS, 30);
+        mDataApi.mStored = ConfigCodec.encode(stored);
+        mCoalescer.offer(change(FACE, 1));
+        mScheduler.advance(500);
+
+        ConfigState written = mDataApi.written(0);
+        assertEquals(1, written.get(FACE, -1));
+        assertEquals(30, written.get(SWEEP_FPS, -1));
+        assertEquals(1, mDataApi.mLoads);
+
+        mCoalescer.offer(change(SWEEP_FPS, 60));
+        mScheduler.advance(500);
+        written = mDataApi.written(1);
+        assertEquals(1, written.get(FACE, -1));
+        assertEquals(60, written.get(SWEEP_FPS, -1));
+        assertEquals(1, mDataApi.mLoads);
+    }
+
+    @Test
+    public void nothingIsWrittenBeforeTheWindowCloses() {
+        mCoalescer.offer(change(FACE, 1));
+        mScheduler.advance(499);
+        assertEquals(0, mDataApi.mWrites.size());
+        mScheduler.advance(1);
+        assertEquals(1, mDataApi.mWrites.size());
+    }
+
+    @Test
+    public void unchangedConfigIsNotWritten() {
+        ConfigState stored = change(FACE, 1);
+        mDataApi.mStored = ConfigCodec.encode(stored);
+        // Delivered again, e.g. when the phone retries.
+        mCoalescer.offer(stored);
+        mScheduler.advance(500);
+        assertEquals(0, mDataApi.mWrites.size());
+    }
+
+    @Test
+    public void changeOfOnlyTheRevisionIsWritten() {
+        mDataApi.mStored = ConfigCodec.encode(change(FACE, 1));
+        mCoalescer.offer(change(FACE, 0));
+        mCoalescer.offer(change(FACE, 1));
+        mScheduler.advance(500);
+
+        // The value is the same, the revision the phone waits for to see the change applied isn't.
+        assertEquals(1, mDataApi.mWrites.size());
+        ConfigState written = mDataApi.written(0);
+        assertEquals(1, written.get(FACE, -1));
+        assertEquals(mRevision, written.getFieldRevision(FACE));
+        assertEquals(mRevision, written.getRevision());
+    }
+
+    @Test
+    public void failedWriteIsRetriedWithTheNextFlush() {
+        mDataApi.mFail = true;
+        mCoalescer.offer(change(FACE, 1));
+        mScheduler.advance(500);
+        assertEquals(1, mDataApi.mWrites.size());
+
+        mDataApi.mFail = false;
+        mCoalescer.offer(change(FACE, 1));
+        mScheduler.advance(500);
+        assertEquals(2, mDataApi.mWrites.size());
+        assertEquals(1, mDataApi.written(1).get(FACE, -1));
+    }
+
+    @Test
+    public void nothingIsWrittenUntilTheStoredConfigIsRead() {
+        ConfigState stored = change(FACE, 2);
+        stored.setRevision(++mRevision);
+        stored.set(SWEEP_FPS, 30);
+        mDataApi.mStored = ConfigCodec.encode(stored);
+        mDataApi.mLoadFails = true;
+        mCoalescer.offer(change(SWEEP_FPS, 60));
+        mScheduler.advance(500);
+        // Written now, the config would be the change alone, without the stored face.
+        assertEquals(0, mDataApi.mWrites.size());
+
+        mDataApi.mLoadFails = false;
+        mCoalescer.flush();
+        assertEquals(1, mDataApi.mWrites.size());
+        ConfigState written = mDataApi.written(0);
+        assertEquals(2, written.get(FACE, -1));
+        assertEquals(60, written.get(SWEEP_FPS, -1));
+        assertEquals(2, mDataApi.mLoads);
+
+        mCoalescer.offer(change(FACE, 1));
+        mScheduler.advance(500);
+        assertEquals(60, mDataApi.written(1).get(SWEEP_FPS, -1));
+        assertEquals(2, mDataApi.mLoads);
+    }
+
+    @Test
+    public void separateBurstsAreWrittenSeparately() {
+        mCoalescer.offer(change(FACE, 1));
+        mScheduler.advance(1000);
+        mCoalescer.offer(change(FACE, 2));
+        mScheduler.advance(1000);
+        assertEquals(2, mDataApi.mWrites.size());
+        assertFalse(mDataApi.written(1).has(SWEEP_FPS));
+    }
+
+    /**
+     * A change as the phone sends it: one field in the next revision.
+     */
+    private ConfigState change(int field, int value) {
+        ConfigState change = new ConfigState();
+        change.setRevision(++mRevision);
+        change.set(field, value);
+        return change;
+    }
+
+    private static class FakeScheduler implements ConfigCoalescer.Scheduler {
+        private final List<Runnable> mTasks = new ArrayList<>();
+        private final List<Long> mDeadlines = new ArrayList<>();
+        private long mNow;
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            mTasks.add(task);
+            mDeadlines.add(mNow + delayMillis);
+        }
+
+        void advance(long millis) {
+            mNow += millis;
+            for (int i = 0; i < mTasks.size(); ) {
+                if (mDeadlines.get(i) <= mNow) {
+                    Runnable task = mTasks.remove(i);
+                    mDeadlines.remove(i);
+                    task.run();
+                } else {
+                    i++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stands in for the DataApi calls of the listener service: the DataItem lookup and
+     * {@code putDataItem}, with the config encoded as in the DataItem.
+     */
+    private static class FakeDataApi implements ConfigCoalescer.Store {
+        final List<byte[]> mWrites = new ArrayList<>();
+        byte[] mStored;
+        int mLoads;
+        boolean mFail;
+        boolean mLoadFails;
+
+        @Override
+        public boolean load(ConfigState config) {
+            mLoads++;
+            if (mLoadFails) {
+                return false;
+            }
+            if (mStored != null) {
+                ConfigCodec.decode(mStored, config);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean write(ConfigState config) {
+            byte[] data = ConfigCodec.encode(config);
+            mWrites.add(data);
+            if (!mFail) {
+                mStored = data;
+            }
+            return !mFail;
+        }
+
+        ConfigState written(int index) {
+            ConfigState config = new ConfigState();
+            ConfigCodec.decode(mWrites.get(index), config);
+            return config;
+        }
+    }
+}
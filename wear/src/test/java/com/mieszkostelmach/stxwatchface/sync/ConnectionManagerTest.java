@@ -0,0 +1,256 @@
+package com.mieszkostelmach.stxwatchface.sync;
+
+import com.mieszkostelmach.stxwatchface.metrics.WatchFaceMetrics;
+import com.mieszkostelmach.stxwatchface.schedule.FrameScheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Flaps the visibility against a fake GoogleApiClient and counts the connects and the fetches.
+ *
+ * @author Mieszko Stelmach
+ */
+public class ConnectionManagerTest {
+    private static final long GRACE_MILLIS = 60 * 1000;
+    private static final long CONNECT_MILLIS = 120;
+
+    private final FakeScheduler mScheduler = new FakeScheduler();
+    private final FakeClient mClient = new FakeClient();
+    private final WatchFaceMetrics mMetrics = new WatchFaceMetrics();
+    private final ConnectionManager mManager = new ConnectionManager(mClient, mScheduler, mScheduler,
+            mMetrics, GRACE_MILLIS);
+
+    @Test
+    public void visibilityFlapsKeepTheConnection() {
+        becomeVisible();
+        for (int i = 0; i < 100; i++) {
+            mManager.release();
+            mScheduler.advance(5000);
+            becomeVisible();
+        }
+        assertEquals(1, mClient.mConnects);
+        assertEquals(0, mClient.mDisconnects);
+        assertEquals(1, mClient.mFetches);
+        assertEquals(100, mMetrics.getSkippedFetches());
+    }
+
+    @Test
+    public void disconnectsOnceTheGracePeriodIsOver() {
+        becomeVisible();
+        mManager.release();
+        mScheduler.advance(GRACE_MILLIS - 1);
+        assertTrue(mManager.isConnected());
+        mScheduler.advance(1);
+        assertFalse(mManager.isConnected());
+        assertEquals(1, mClient.mDisconnects);
+
+        // Changes may have been missed while disconnected.
+        becomeVisible();
+        assertEquals(2, mClient.mConnects);
+        assertEquals(2, mClient.mFetches);
+        assertEquals(1, mMetrics.getReconnects());
+    }
+
+    @Test
+    public void staysConnectedWhileAnyHolderIsLeft() {
+        becomeVisible();
+        mManager.acquire();
+        mManager.release();
+        mScheduler.advance(2 * GRACE_MILLIS);
+        assertTrue(mManager.isConnected());
+        assertEquals(1, mManager.getHolders());
+        mManager.release();
+        mScheduler.advance(GRACE_MILLIS);
+        assertFalse(mManager.isConnected());
+    }
+
+    @Test
+    public void suspensionRefetches() {
+        becomeVisible();
+        mManager.onConnectionSuspended();
+        mScheduler.advance(CONNECT_MILLIS);
+        mManager.onConnected();
+        mClient.completeFetch(true);
+        assertEquals(2, mClient.mFetches);
+        assertEquals(1, mMetrics.getReconnects());
+
+        mManager.release();
+        becomeVisible();
+        assertEquals(2, mClient.mFetches);
+    }
+
+    @Test
+    public void fetchStartedBeforeSuspensionDoesNotCount() {
+        mManager.acquire();
+        mScheduler.advance(CONNECT_MILLIS);
+        mManager.onConnected();
+        mManager.onConnectionSuspended();
+        // The result of the fetch from before comes in late, the changes since may be missing.
+        assertFalse(mClient.completeFetch(true));
+        mScheduler.advance(CONNECT_MILLIS);
+        mManager.onConnected();
+        assertEquals(2, mClient.mFetches);
+        assertTrue(mClient.completeFetch(true));
+
+        mManager.release();
+        becomeVisible();
+        assertEquals(2, mClient.mFetches);
+    }
+
+    @Test
+    public void fetchStartedBeforeDisconnectDoesNotCount() {
+        mManager.acquire();
+        mScheduler.advance(CONNECT_MILLIS);
+        mManager.onConnected();
+        mManager.release();
+        mScheduler.advance(GRACE_MILLIS);
+        assertFalse(mClient.completeFetch(true));
+
+        becomeVisible();
+        assertEquals(2, mClient.mFetches);
+    }
+
+    @Test
+    public void failedFetchIsRetriedWithTheNextWake() {
+        mManager.acquire();
+        mScheduler.advance(CONNECT_MILLIS);
+        mManager.onConnected();
+        mClient.completeFetch(false);
+        mManager.release();
+
+        becomeVisible();
+        assertEquals(2, mClient.mFetches);
+        assertEquals(1, mClient.mConnects);
+    }
+
+    @Test
+    public void failedConnectionIsRetriedWithTheNextWake() {
+        mManager.acquire();
+        mManager.onConnectionFailed();
+        mManager.release();
+        becomeVisible();
+        assertEquals(2, mClient.mConnects);
+        assertEquals(1, mClient.mFetches);
+    }
+
+    @Test
+    public void releasedWhileConnecting() {
+        mManager.acquire();
+        mManager.release();
+        mScheduler.advance(CONNECT_MILLIS);
+        mManager.onConnected();
+        assertEquals(0, mClient.mFetches);
+        mScheduler.advance(GRACE_MILLIS);
+        assertFalse(mManager.isConnected());
+        assertEquals(1, mClient.mDisconnects);
+    }
+
+    @Test
+    public void shutdownDisconnectsRightAway() {
+        becomeVisible();
+        mManager.shutdown();
+        assertFalse(mManager.isConnected());
+        assertEquals(1, mClient.mDisconnects);
+        mScheduler.advance(GRACE_MILLIS);
+        assertEquals(1, mClient.mDisconnects);
+    }
+
+    @Test
+    public void connectLatencyIsRecorded() {
+        becomeVisible();
+        assertEquals(1, mMetrics.getConnectLatencyMillis().getTotalCount());
+        assertEquals(CONNECT_MILLIS, mMetrics.getConnectLatencyMillis().getMax());
+    }
+
+    /**
+     * Acquires the connection and completes the connect and the fetch it starts, if any.
+     */
+    private void becomeVisible() {
+        mManager.acquire();
+        if (!mManager.isConnected()) {
+            mScheduler.advance(CONNECT_MILLIS);
+            mManager.onConnected();
+        }
+        if (mClient.mFetchPending) {
+            mClient.completeFetch(true);
+        }
+    }
+
+    private class FakeClient implements ConnectionManager.Connection {
+        int mConnects;
+        int mDisconnects;
+        int mFetches;
+        int mFetchId;
+        boolean mFetchPending;
+
+        @Override
+        public void connect() {
+            mConnects++;
+        }
+
+        @Override
+        public void disconnect() {
+            mDisconnects++;
+            mFetchPending = false;
+        }
+
+        @Override
+        public void fetch(int fetchId) {
+            mFetches++;
+            mFetchId = fetchId;
+            mFetchPending = true;
+        }
+
+        boolean completeFetch(boolean success) {
+            mFetchPending = false;
+            return mManager.onFetched(mFetchId, success);
+        }
+    }
+
+    private static class FakeScheduler implements ConnectionManager.Scheduler, FrameScheduler.Clock {
+        private final List<Runnable> mTasks = new ArrayList<>();
+        private final List<Long> mDeadlines = new ArrayList<>();
+        private long mNow;
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            mTasks.add(task);
+            mDeadlines.add(mNow + delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            for (int i = mTasks.size() - 1; i >= 0; i--) {
+                if (mTasks.get(i) == task) {
+                    mTasks.remove(i);
+                    mDeadlines.remove(i);
+                }
+            }
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+
+        void advance(long millis) {
+            mNow += millis;
+            for (int i = 0; i < mTasks.size(); ) {
+                if (mDeadlines.get(i) <= mNow) {
+                    Runnable task = mTasks.remove(i);
+                    mDeadlines.remove(i);
+                    task.run();
+                } else {
+                    i++;
+                }
+            }
+        }
+    }
+}